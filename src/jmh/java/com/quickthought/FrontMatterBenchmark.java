@@ -0,0 +1,58 @@
+package com.quickthought;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header parsing: the hand-written scanner behind YAMLParse.parse against the previous
+ * regex split + new Yaml() per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontMatterBenchmark {
+
+    private YAMLParse parser;
+    private String serializedNote;
+
+    @Setup
+    public void setUp() {
+        parser = new YAMLParse();
+        Note note = new Note(UUID.randomUUID(), "Weekly planning", "Agenda\n- review\n- plan\n".repeat(20),
+                List.of("work", "planning", "weekly"), LocalDateTime.now(), LocalDateTime.now());
+        serializedNote = parser.serialize(note);
+    }
+
+    @Benchmark
+    public Note scanner() {
+        return parser.parse(serializedNote);
+    }
+
+    @Benchmark
+    public Map<String, Object> snakeYamlPerCall() {
+        String[] parts = serializedNote.split("---\\s*", 3);
+        Yaml yaml = new Yaml();
+        Map<String, Object> yamlMap = yaml.load(new StringReader(parts[1]));
+        yamlMap.put("content", parts[2].trim());
+        return yamlMap;
+    }
+}
@@ -0,0 +1,85 @@
+package com.quickthought;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search scan over 2000 notes: CaseInsensitiveMatcher on the strings and on their UTF-8 bytes
+ * against the previous toLowerCase().contains(query.toLowerCase()) per note.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubstringMatchBenchmark {
+
+    private static final String QUERY = "Quarterly Review";
+
+    private final List<String> titles = new ArrayList<>();
+    private final List<String> contents = new ArrayList<>();
+    private final List<ByteBuffer> contentBytes = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 2000; i++) {
+            titles.add("Meeting notes " + i);
+            String content = "Discussed the roadmap, hiring and the budget for the next sprint.\n".repeat(30)
+                    + (i % 100 == 0 ? "Prepare the QUARTERLY review slides.\n" : "");
+            contents.add(content);
+            contentBytes.add(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Benchmark
+    public int toLowerCaseContains() {
+        int found = 0;
+        for (int i = 0; i < titles.size(); i++) {
+            if (titles.get(i).toLowerCase().contains(QUERY.toLowerCase())
+                    || contents.get(i).toLowerCase().contains(QUERY.toLowerCase())) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int matcher() {
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(QUERY);
+        int found = 0;
+        for (int i = 0; i < titles.size(); i++) {
+            if (matcher.matches(titles.get(i)) || matcher.matches(contents.get(i))) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int matcherOnBytes() {
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(QUERY);
+        int found = 0;
+        for (int i = 0; i < titles.size(); i++) {
+            ByteBuffer bytes = contentBytes.get(i);
+            if (matcher.matches(titles.get(i)) || matcher.indexIn(bytes, 0, bytes.limit()) >= 0) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
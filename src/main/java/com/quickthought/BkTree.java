@@ -0,0 +1,154 @@
+package com.quickthought;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree of terms under the Levenshtein distance, for finding every term within
+ * a few edits of a misspelled one without comparing it against the whole dictionary.
+ *
+ * Each child hangs off its parent at their distance; by the triangle inequality a search for
+ * terms within maxEdits of the query only descends into children whose edge is within maxEdits
+ * of the query's distance to the node. Terms cannot be removed, see SearchIndex for how stale
+ * terms are dealt with.
+ */
+public class BkTree {
+    private Node root;
+    private int size = 0;
+    // Distance rows reused by add, which is never called concurrently
+    private final int[][] rows = new int[2][];
+
+    /** Adds the term unless it is in the tree already. */
+    public void add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term, Integer.MAX_VALUE, rows);
+            if (distance == 0) {
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(term));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /** Every term within maxEdits of the query, with its distance, nearest first. */
+    public Map<String, Integer> search(String query, int maxEdits) {
+        Map<String, Integer> found = new LinkedHashMap<>();
+        if (root == null) {
+            return found;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        int[][] searchRows = new int[2][];
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            // Beyond the longest edge plus maxEdits no child can qualify, the exact value is moot
+            int distance = distance(query, node.term, node.maxDistance + maxEdits, searchRows);
+            if (distance <= maxEdits) {
+                found.put(node.term, distance);
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.distances[i] - distance) <= maxEdits) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        found.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+            .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Levenshtein distance of the two strings, or some value above limit as soon as it is
+     * certain to exceed it.
+     */
+    static int distance(String a, String b, int limit) {
+        return distance(a, b, limit, new int[2][]);
+    }
+
+    // Same, with the two rows kept in rows between calls
+    private static int distance(String a, String b, int limit, int[][] rows) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        if (rows[0] == null || rows[0].length <= b.length()) {
+            rows[0] = new int[b.length() + 1];
+            rows[1] = new int[b.length() + 1];
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // Children in small parallel arrays, most nodes only have a handful
+    private static final class Node {
+        final String term;
+        int[] distances = new int[0];
+        Node[] children = new Node[0];
+        int childCount = 0;
+        int maxDistance = 0;
+
+        Node(String term) {
+            this.term = term;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                distances = Arrays.copyOf(distances, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            distances[childCount] = distance;
+            children[childCount] = child;
+            childCount++;
+            maxDistance = Math.max(maxDistance, distance);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.quickthought;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts or decrypts many notes at once (encrypt --all, decrypt --tag work, ...).
+ *
+ * Every note goes read -> convert -> write to a temporary file -> atomic rename (or an atomic
+ * note store write) -> delete the source, and the notes are spread over the loader pool so
+ * reading, encryption and writing of different notes overlap. A note is therefore always
+ * either its old form or its new one.
+ *
+ * Before the first note is touched the run is recorded in .quickthought/.quickthought_bulk. A crash can
+ * leave a note in both forms (converted but source not yet deleted) or a stray temporary file;
+ * recover() finishes those swaps and is run before the next bulk run and when the CLI starts.
+ */
+public class BulkConverter {
+    static final String JOURNAL_FILE = ".quickthought_bulk";
+
+    private static final String ENCRYPT = "encrypt";
+    private static final String DECRYPT = "decrypt";
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    /** Receives the number of converted notes now and then while a run is going. */
+    public interface ProgressListener {
+        void progress(int done, int total, long elapsedNanos);
+    }
+
+    private final Path directory;
+    private final NoteStore store;
+    private final Path journal;
+
+    public BulkConverter(Path directory, NoteStore store) {
+        this.directory = directory;
+        this.store = store;
+        adoptLegacyJournal(directory);
+        this.journal = SidecarJournal.sidecarFile(directory, JOURNAL_FILE);
+    }
+
+    // A run interrupted before sidecars moved to their directory still has to be recovered
+    private static void adoptLegacyJournal(Path directory) {
+        Path legacy = directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(legacy)) {
+            return;
+        }
+        Path target = directory.resolve(SidecarJournal.DIRECTORY).resolve(JOURNAL_FILE);
+        try {
+            SidecarJournal.createDirectory(target);
+            Files.move(legacy, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not move " + JOURNAL_FILE + ": " + e.getMessage());
+        }
+    }
+
+    /** Encrypts the given plain notes into .md.enc files. */
+    public Result encrypt(EncryptionSession session, List<UUID> ids, ProgressListener listener)
+            throws IOException {
+        return run(ENCRYPT, ids, listener, id -> {
+            encryptNote(session, store, id, encryptedPath(id));
+            // Only once the encrypted file is in place does the plain note go
+            store.delete(id);
+        });
+    }
+
+    /** Decrypts the given encrypted notes back into plain notes. */
+    public Result decrypt(EncryptionSession session, List<UUID> ids, ProgressListener listener)
+            throws IOException {
+        return run(DECRYPT, ids, listener, id -> {
+            Path source = encryptedPath(id);
+            Path target = store.fileOf(id);
+            if (target != null) {
+                // Streamed straight into the note file
+                Path temp = temporaryPath(target);
+                Files.createDirectories(target.getParent());
+                try {
+                    writeDecrypted(session, source, temp);
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                // The rename has to survive a crash before the encrypted copy goes
+                EncryptedNoteFile.syncDirectory(target.getParent());
+            } else {
+                store.write(id, EncryptedNoteFile.decrypt(session, source).getBytes(StandardCharsets.UTF_8));
+            }
+            Files.delete(source);
+        });
+    }
+
+    /** Encrypts one plain note into the target file, streaming it when the note is a file. */
+    static void encryptNote(EncryptionSession session, NoteStore store, UUID id, Path target)
+            throws IOException, GeneralSecurityException {
+        Path source = store.fileOf(id);
+        if (source != null) {
+            EncryptedNoteFile.encrypt(session, source, target);
+            return;
+        }
+        byte[] content = store.read(id);
+        if (content == null) {
+            throw new NoSuchFileException(id.toString());
+        }
+        EncryptedNoteFile.encrypt(session, new ByteArrayInputStream(content), target);
+    }
+
+    Path encryptedPath(UUID id) {
+        return directory.resolve(id + ".md.enc");
+    }
+
+    /**
+     * Completes a run that was interrupted: for every note of the journal that exists in both
+     * forms, the converted file (which was renamed into place whole) wins. Returns the number
+     * of notes that were fixed up.
+     */
+    public int recover() throws IOException {
+        if (!Files.exists(journal)) {
+            return 0;
+        }
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        boolean encrypting = !lines.isEmpty() && ENCRYPT.equals(lines.get(0));
+        int recovered = 0;
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            UUID id = UUID.fromString(line);
+            Path encrypted = encryptedPath(id);
+            Files.deleteIfExists(temporaryPath(encrypted));
+            if (store.fileOf(id) != null) {
+                Files.deleteIfExists(temporaryPath(store.fileOf(id)));
+            }
+            if (!Files.exists(encrypted) || !store.contains(id)) {
+                continue;
+            }
+            if (encrypting) {
+                store.delete(id);
+            } else {
+                Files.delete(encrypted);
+            }
+            recovered++;
+        }
+        Files.delete(journal);
+        return recovered;
+    }
+
+    private Result run(String mode, List<UUID> sources, ProgressListener listener, Conversion conversion)
+            throws IOException {
+        recover();
+        if (sources.isEmpty()) {
+            return new Result(0, Collections.emptyList(), 0);
+        }
+        writeJournal(mode, sources);
+
+        long start = System.nanoTime();
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong lastReport = new AtomicLong(start);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ParallelNoteLoader.load(sources, source -> {
+            try {
+                conversion.convert(source);
+            } catch (Exception e) {
+                failures.add(source + ": " + e.getMessage());
+            }
+            int count = done.incrementAndGet();
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            if (listener != null && now - last >= PROGRESS_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+                listener.progress(count, sources.size(), now - start);
+            }
+            return null;
+        });
+
+        long elapsed = System.nanoTime() - start;
+        if (listener != null) {
+            listener.progress(sources.size(), sources.size(), elapsed);
+        }
+        Files.deleteIfExists(journal);
+
+        List<String> sortedFailures = new ArrayList<>(failures);
+        Collections.sort(sortedFailures);
+        return new Result(sources.size() - sortedFailures.size(), sortedFailures, elapsed);
+    }
+
+    private void writeJournal(String mode, List<UUID> sources) throws IOException {
+        List<String> lines = new ArrayList<>(sources.size() + 1);
+        lines.add(mode);
+        for (UUID source : sources) {
+            lines.add(source.toString());
+        }
+        SidecarJournal.createDirectory(journal);
+        Path temp = temporaryPath(journal);
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        EncryptedNoteFile.syncDirectory(journal.getParent());
+        EncryptedNoteFile.syncDirectory(directory);
+    }
+
+    private static void writeDecrypted(EncryptionSession session, Path source, Path target) throws Exception {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            if (EncryptedNoteFile.isChunked(source)) {
+                EncryptedNoteFile.read(session, source, out);
+            } else {
+                out.write(EncryptedNoteFile.decrypt(session, source).getBytes(StandardCharsets.UTF_8));
+            }
+            channel.force(true);
+        }
+    }
+
+    private static Path temporaryPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private interface Conversion {
+        void convert(UUID id) throws Exception;
+    }
+
+    /** Outcome of one run. */
+    public static class Result {
+        private final int converted;
+        private final List<String> failures;
+        private final long elapsedNanos;
+
+        Result(int converted, List<String> failures, long elapsedNanos) {
+            this.converted = converted;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getConverted() {
+            return converted;
+        }
+
+        /** "note id: reason" for every note that was left as it was. */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getNotesPerSecond() {
+            return elapsedNanos == 0 ? 0 : converted * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+}
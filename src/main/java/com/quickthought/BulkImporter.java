@@ -0,0 +1,398 @@
+package com.quickthought;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports many markdown notes at once from a directory (recursively), a glob such as
+ * "export/**.md", or a .zip, .tar, .tar.gz or .tgz archive.
+ *
+ * Entries are streamed in chunks of CHUNK_SIZE: the files of a chunk are read and their
+ * front matter parsed on the loader pool, then the whole chunk is written through
+ * NoteManager.saveNotes (one sync to disk, one index append). Archives are read sequentially,
+ * only their parsing is spread out. Entries that cannot be read or parsed end up in the
+ * failure list, the rest is imported regardless.
+ */
+public class BulkImporter {
+    static final int CHUNK_SIZE = 512;
+
+    private static final String ZIP = "zip";
+    private static final String TAR = "tar";
+    private static final String TAR_GZ = "tar.gz";
+
+    /** Receives the number of imported notes after every chunk. */
+    public interface ProgressListener {
+        void progress(int imported, long elapsedNanos);
+    }
+
+    private final NoteManager noteManager;
+
+    public BulkImporter(NoteManager noteManager) {
+        this.noteManager = noteManager;
+    }
+
+    /** True when the source is an archive or names more than one file (a directory or a glob). */
+    public static boolean isBulkSource(String source) {
+        if (isGlob(source)) {
+            return true;
+        }
+        Path path = Paths.get(source);
+        return Files.isDirectory(path) || archiveType(path) != null;
+    }
+
+    public Result importFrom(String source, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        Importer importer = new Importer(start, listener);
+        if (isGlob(source)) {
+            importFiles(globFiles(source), importer);
+        } else {
+            Path path = Paths.get(source);
+            if (Files.isDirectory(path)) {
+                importFiles(directoryFiles(path), importer);
+            } else if (!Files.exists(path)) {
+                throw new NoSuchFileException(source);
+            } else if (ZIP.equals(archiveType(path))) {
+                importZip(path, importer);
+            } else if (archiveType(path) != null) {
+                importTar(path, importer);
+            } else {
+                importFiles(List.of(path), importer);
+            }
+        }
+        importer.flush();
+
+        List<String> failures = new ArrayList<>(importer.failures);
+        Collections.sort(failures);
+        return new Result(importer.imported, failures, System.nanoTime() - start);
+    }
+
+    private void importFiles(List<Path> files, Importer importer) {
+        for (Path file : files) {
+            importer.add(new Entry(file.toString(), file, null));
+        }
+    }
+
+    private void importZip(Path archive, Importer importer) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive)))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && isNoteName(entry.getName())) {
+                    importer.add(new Entry(entry.getName(), null, zip.readAllBytes()));
+                }
+            }
+        }
+    }
+
+    private void importTar(Path archive, Importer importer) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive));
+        if (TAR_GZ.equals(archiveType(archive))) {
+            in = new GZIPInputStream(in);
+        }
+        try (TarReader tar = new TarReader(in)) {
+            Entry entry;
+            while ((entry = tar.next()) != null) {
+                if (isNoteName(entry.name)) {
+                    importer.add(entry);
+                }
+            }
+        }
+    }
+
+    private static List<Path> directoryFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(path -> isNoteName(path.getFileName().toString()) && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // "notes/2023/*.md" walks notes/2023 and matches the rest against the relative paths
+    private static List<Path> globFiles(String glob) throws IOException {
+        String normalized = glob.replace('\\', '/');
+        String[] parts = normalized.split("/");
+        StringBuilder base = new StringBuilder();
+        int first = 0;
+        while (first < parts.length - 1 && !isGlob(parts[first])) {
+            base.append(parts[first]).append('/');
+            first++;
+        }
+        Path root = Paths.get(base.length() == 0 ? "." : base.toString());
+        String rest = String.join("/", List.of(parts).subList(first, parts.length));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        if (!Files.isDirectory(root)) {
+            throw new NoSuchFileException(root.toString());
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(path -> Files.isRegularFile(path) && matcher.matches(root.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isGlob(String source) {
+        return source.indexOf('*') >= 0 || source.indexOf('?') >= 0
+                || source.indexOf('[') >= 0 || source.indexOf('{') >= 0;
+    }
+
+    private static boolean isNoteName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".md") || lower.endsWith(".markdown");
+    }
+
+    private static String archiveType(Path path) {
+        String name = path.getFileName() == null ? "" : path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return TAR_GZ;
+        }
+        return name.endsWith(".tar") ? TAR : null;
+    }
+
+    // Collects entries into chunks and imports each chunk as a whole
+    private class Importer {
+        private final long start;
+        private final ProgressListener listener;
+        private final List<Entry> chunk = new ArrayList<>(CHUNK_SIZE);
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        private int imported = 0;
+
+        Importer(long start, ProgressListener listener) {
+            this.start = start;
+            this.listener = listener;
+        }
+
+        void add(Entry entry) {
+            chunk.add(entry);
+            if (chunk.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<ParsedEntry> parsed = ParallelNoteLoader.load(chunk, entry -> {
+                try {
+                    return new ParsedEntry(entry.name, noteManager.parseNoteFromYaml(entry.text()));
+                } catch (IOException | RuntimeException e) {
+                    // Unreadable file, missing or broken front matter
+                    failures.add(entry.name + ": " + e.getMessage());
+                    return null;
+                }
+            });
+            chunk.clear();
+
+            List<Note> notes = new ArrayList<>(parsed.size());
+            for (ParsedEntry entry : parsed) {
+                notes.add(entry.note);
+            }
+            Map<UUID, String> notSaved = noteManager.saveNotes(notes);
+            for (ParsedEntry entry : parsed) {
+                String reason = notSaved.get(entry.note.getId());
+                if (reason != null) {
+                    failures.add(entry.name + ": " + reason);
+                }
+            }
+            imported += notes.size() - notSaved.size();
+            if (listener != null) {
+                listener.progress(imported, System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Either a file read on the worker that parses it, or bytes already read from an archive
+    private static class Entry {
+        final String name;
+        final Path file;
+        final byte[] data;
+
+        Entry(String name, Path file, byte[] data) {
+            this.name = name;
+            this.file = file;
+            this.data = data;
+        }
+
+        String text() throws IOException {
+            return file != null ? Files.readString(file, StandardCharsets.UTF_8) : new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class ParsedEntry {
+        final String name;
+        final Note note;
+
+        ParsedEntry(String name, Note note) {
+            this.name = name;
+            this.note = note;
+        }
+    }
+
+    /**
+     * Minimal reader for ustar/GNU/pax tar streams: regular files with their full names
+     * (ustar prefix, GNU long names and pax paths), everything else is skipped.
+     */
+    private static class TarReader implements AutoCloseable {
+        private static final int BLOCK = 512;
+
+        private final DataInputStream in;
+        private final byte[] header = new byte[BLOCK];
+
+        TarReader(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        Entry next() throws IOException {
+            String longName = null;
+            while (true) {
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    return null;
+                }
+                if (isZeroBlock()) {
+                    return null;
+                }
+                long size = parseOctal(124, 12);
+                byte type = header[156];
+                if (type == 'L' || type == 'x') {
+                    String value = new String(readData(size), StandardCharsets.UTF_8);
+                    longName = type == 'L' ? trimNul(value) : paxPath(value, longName);
+                    continue;
+                }
+                if (type != '0' && type != 0) {
+                    // Directories, links, global pax headers...
+                    skipData(size);
+                    continue;
+                }
+                String name = longName != null ? longName : headerName();
+                return new Entry(name, null, readData(size));
+            }
+        }
+
+        private byte[] readData(long size) throws IOException {
+            if (size > Integer.MAX_VALUE - BLOCK) {
+                throw new IOException("Tar entry too large: " + size + " bytes");
+            }
+            byte[] data = new byte[(int) size];
+            in.readFully(data);
+            in.skipNBytes(padding(size));
+            return data;
+        }
+
+        private void skipData(long size) throws IOException {
+            in.skipNBytes(size + padding(size));
+        }
+
+        private static long padding(long size) {
+            return (BLOCK - size % BLOCK) % BLOCK;
+        }
+
+        private boolean isZeroBlock() {
+            for (byte b : header) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String headerName() {
+            String name = field(0, 100);
+            boolean ustar = field(257, 5).equals("ustar");
+            String prefix = ustar ? field(345, 155) : "";
+            return prefix.isEmpty() ? name : prefix + "/" + name;
+        }
+
+        private long parseOctal(int offset, int length) throws IOException {
+            String value = field(offset, length).trim();
+            try {
+                return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt tar header: size " + value);
+            }
+        }
+
+        private String field(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        // Records of "<length> <key>=<value>\n"
+        private static String paxPath(String records, String fallback) {
+            for (String record : records.split("\n")) {
+                int space = record.indexOf(' ');
+                if (space > 0 && record.startsWith("path=", space + 1)) {
+                    return record.substring(space + 1 + "path=".length());
+                }
+            }
+            return fallback;
+        }
+
+        private static String trimNul(String value) {
+            int nul = value.indexOf('\0');
+            return nul >= 0 ? value.substring(0, nul) : value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Outcome of one import. */
+    public static class Result {
+        private final int imported;
+        private final List<String> failures;
+        private final long elapsedNanos;
+
+        Result(int imported, List<String> failures, long elapsedNanos) {
+            this.imported = imported;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        /** "entry name: reason" for every file that was not imported. */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getNotesPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+}
@@ -8,26 +8,85 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.UUID;
 import java.util.Set;
+import java.util.Comparator;
 import java.util.stream.Collectors;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.io.Console;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.Path;
 import java.io.IOException; 
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 
 public class CLIHandler {
 
     private final String workingDirectory;
     private final NoteManager noteManager;
-    private String masterPassword = null;
-    private boolean encryptionEnabled = false;
+    private final EncryptedSearchIndex encryptedIndex;
+    // Key of the unlocked session, null while locked
+    private volatile EncryptionSession session = null;
+    private LiveNoteCache liveCache = null;
+    private IdPrefixIndex idIndex = null;
+    // Set by enableTitleShortcuts
+    private boolean titleShortcuts = false;
+
+    private static final int MAX_AMBIGUOUS_MATCHES = 10;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int DEFAULT_FUZZY_EDITS = 2;
 
     public CLIHandler(String workingDirectory) {
         this.workingDirectory = workingDirectory;
         this.noteManager = new NoteManager(workingDirectory);
+        this.encryptedIndex = new EncryptedSearchIndex(workingDirectory);
+        recoverBulkConversion();
+    }
+
+    /**
+     * Keeps every note in memory for the rest of the session (used by the REPL). Files changed
+     * outside the app are picked up through a directory watch.
+     */
+    public void enableLiveCache() {
+        if (liveCache != null) {
+            return;
+        }
+        liveCache = new LiveNoteCache(Paths.get(workingDirectory),
+                path -> path.toString().endsWith(".md") || path.toString().endsWith(".md.enc"),
+                this::loadNoteSafely);
+        liveCache.start();
+    }
+
+    /**
+     * Lets read find a note by its title in another case or by a unique title prefix (used by
+     * the REPL). Commands that change a note always need the exact title.
+     */
+    public void enableTitleShortcuts() {
+        titleShortcuts = true;
+    }
+
+    /**
+     * Writes created and imported notes in the background so the prompt returns right away
+     * (used by the REPL); close() writes out whatever is still queued.
+     */
+    public void enableWriteBehind(int capacity) {
+        noteManager.enableWriteBehind(capacity);
+    }
+
+    public void close() {
+        if (liveCache != null) {
+            liveCache.close();
+            liveCache = null;
+        }
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        encryptedIndex.lock();
+        noteManager.close();
     }
 
     public ParsedCommand parseArgs(String[] args) {
@@ -64,7 +123,12 @@ public class CLIHandler {
     }
 
     public boolean execute(ParsedCommand parsedCommand) {
-        switch (parsedCommand.getCommand()) {
+        String command = parsedCommand.getCommand();
+        if (!"create".equals(command) && !"import".equals(command)) {
+            // Only these go through the write-behind queue, everything else may read note files
+            noteManager.flushWrites();
+        }
+        switch (command) {
             case "create":
                 return executeCreate(parsedCommand.getOptions());
             case "list":
@@ -81,6 +145,10 @@ public class CLIHandler {
                 return executeEdit(parsedCommand.getOptions());
             case "encrypt":
                 return executeEncrypt(parsedCommand.getOptions());
+            case "decrypt":
+                return executeDecrypt(parsedCommand.getOptions());
+            case "migrate":
+                return executeMigrate(parsedCommand.getOptions());
             case "lock":
                 return executeLock();
             case "unlock":
@@ -117,13 +185,48 @@ public class CLIHandler {
         List<String> tagList = tags.isEmpty() ? new ArrayList<>() : Arrays.asList(tags.split(","));
 
         Note note = noteManager.createNote(title, content, tagList);
+        noteChanged(note.getId());
 
         System.out.println("Thought created successfully with ID: " + note.getId());
         return true;
     }
 
     private boolean executeList(Map<String, String> options) {
-        List<Note> notes = getAllNotesIncludingEncrypted();  
+        // --tags must all be present, --any-tags needs one of them, --exclude none of them
+        TagIndex.Query tagQuery = TagIndex.Query.parse(
+                options.get("tags"), options.get("any-tags"), options.get("exclude"));
+
+        if (options.containsKey("verbose")) {
+            return executeVerboseList(tagQuery);
+        }
+
+        // Plain notes come from the catalog (or the tag index), no note bodies are read
+        List<NoteSummary> summaries = tagQuery.isEmpty() ? getPlainSummaries()
+                                                          : noteManager.findNotesByTags(tagQuery);
+        List<Note> encryptedNotes = getEncryptedHeaders().stream()
+                .filter(note -> tagQuery.matches(note.getTags()))
+                .collect(Collectors.toList());
+        int total = summaries.size() + encryptedNotes.size();
+
+        if (total == 0) {
+            System.out.println("No notes found.");
+            return true;
+        }
+
+        System.out.println("Found " + total + " note(s):");
+        for (NoteSummary summary : summaries) {
+            System.out.println("- [" + summary.getId().toString().substring(0, 8) + "] " + summary.getTitle());
+        }
+        for (Note note : encryptedNotes) {
+            System.out.println("- [" + note.getId().toString().substring(0, 8) + "] " + note.getTitle());
+        }
+        return true;
+    }
+
+    private boolean executeVerboseList(TagIndex.Query tagQuery) {
+        List<Note> notes = getAllNotesIncludingEncrypted().stream()
+                .filter(note -> tagQuery.matches(note.getTags()))
+                .collect(Collectors.toList());
 
         if (notes.isEmpty()) {
             System.out.println("No notes found.");
@@ -133,11 +236,9 @@ public class CLIHandler {
         System.out.println("Found " + notes.size() + " note(s):");
         for (Note note : notes) {
             System.out.println("- [" + note.getId().toString().substring(0, 8) + "] " + note.getTitle());
-            if (options.containsKey("verbose")) {
-                System.out.println("  Content: " + note.getContent());
-                System.out.println("  Tags: " + note.getTags());
-                System.out.println("  Created: " + note.getCreatedAt());
-            }
+            System.out.println("  Content: " + note.getContent());
+            System.out.println("  Tags: " + note.getTags());
+            System.out.println("  Created: " + note.getCreatedAt());
         }
         return true;
     }
@@ -163,8 +264,8 @@ public class CLIHandler {
                 // Find note by ID (supports partial matching)
                 note = findNoteById(id);
             } else {
-                // Find note by exact title
-                note = findNoteByTitle(title);
+                // Find note by exact title, or a looser match in the REPL
+                note = findNoteByTitle(title, titleShortcuts);
             }
 
             if (note == null) {
@@ -193,41 +294,133 @@ public class CLIHandler {
     }
 
     private boolean executeSearch(Map<String, String> options) {
-        String query = options.get("query");
+        // "search --exact 'a, b'" or "search 'a, b' --exact"
+        String exact = options.get("exact");
+        String query = exact != null && !"true".equals(exact) ? exact : options.get("query");
+        // "search --regex 'colou?r'" or "search 'colou?r' --regex"
+        String regex = options.get("regex");
+        if (regex != null && !"true".equals(regex)) {
+            query = regex;
+        }
+        // "search --fuzzy 2 hamlett", "search hamlett --fuzzy" or "search --fuzzy hamlett"
+        String fuzzy = options.get("fuzzy");
+        int maxEdits = DEFAULT_FUZZY_EDITS;
+        if (fuzzy != null && fuzzy.matches("\\d{1,2}")) {
+            maxEdits = Integer.parseInt(fuzzy);
+        } else if (fuzzy != null && !"true".equals(fuzzy) && query == null) {
+            query = fuzzy;
+        }
         if (query == null) {
             System.out.println("Error: --query required for search command");
             return false;
         }
+        Integer offset = parseCount(options, "offset", 0);
+        Integer limit = parseCount(options, "limit", DEFAULT_SEARCH_LIMIT);
+        if (offset == null || limit == null) {
+            return false;
+        }
 
-        // Change this line:
-        List<Note> allNotes = getAllNotesIncludingEncrypted();  
-        List<Note> results = allNotes.stream()
-            .filter(note -> note.getTitle().toLowerCase().contains(query.toLowerCase()) ||
-                           note.getContent().toLowerCase().contains(query.toLowerCase()))
-            .collect(Collectors.toList());
+        SearchPage page;
+        List<NoteSummary> encryptedResults;
+        Pattern pattern = null;
+        if (regex != null) {
+            try {
+                pattern = Pattern.compile(query);
+            } catch (PatternSyntaxException e) {
+                System.out.println("Error: Invalid regex: " + e.getDescription());
+                return false;
+            }
+            page = noteManager.regexSearchNotes(query, offset, limit);
+            encryptedResults = null;
+        } else if (exact != null) {
+            // The text as typed, punctuation and all: no index answers that, it is a scan
+            page = noteManager.scanNotes(query, offset, limit);
+            encryptedResults = null;
+        } else if (fuzzy != null) {
+            // Encrypted notes are looked up in the encrypted index's own term dictionary
+            page = noteManager.fuzzySearchNotes(query, maxEdits, offset, limit);
+            encryptedResults = encryptedIndex.searchFuzzy(query, maxEdits, this::decryptNote);
+        } else {
+            // Plain notes are ranked by the search index, encrypted ones found by it while unlocked
+            page = noteManager.searchNotes(query, offset, limit);
+            encryptedResults = encryptedIndex.search(query, this::decryptNote);
+        }
+        List<String> encryptedLines = new ArrayList<>();
+        if (pattern != null) {
+            Pattern compiled = pattern;
+            getEncryptedNotes().stream()
+                .filter(note -> find(compiled, note.getTitle()) || find(compiled, note.getContent()))
+                .forEach(note -> encryptedLines.add(resultLine(note.getId(), note.getTitle())));
+        } else if (encryptedResults == null) {
+            // Locked (only the placeholders can match) or nothing indexable in the query
+            CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(query);
+            getEncryptedNotes().stream()
+                .filter(note -> matcher.matches(note.getTitle()) || matcher.matches(note.getContent()))
+                .forEach(note -> encryptedLines.add(resultLine(note.getId(), note.getTitle())));
+        } else {
+            for (NoteSummary summary : encryptedResults) {
+                encryptedLines.add(resultLine(summary.getId(), summary.getTitle()));
+            }
+        }
 
-        if (results.isEmpty()) {
+        int total = page.getTotal() + encryptedLines.size();
+        if (total == 0) {
             System.out.println("No notes found matching: " + query);
             return true;
         }
 
-        System.out.println("Found " + results.size() + " note(s) matching '" + query + "':");
-        for (Note note : results) {
-            System.out.println("- [" + note.getId().toString().substring(0, 8) + "] " + note.getTitle());
+        System.out.println("Found " + total + " note(s) matching '" + query + "':");
+        for (Note note : page.getNotes()) {
+            System.out.println(resultLine(note.getId(), note.getTitle()));
+        }
+        // Encrypted matches are not ranked, they follow the first page
+        if (offset == 0) {
+            encryptedLines.forEach(System.out::println);
+        }
+        if (page.hasMore()) {
+            int next = offset + page.getNotes().size();
+            System.out.println("Showing " + (offset + 1) + "-" + next + " of " + page.getTotal()
+                    + " plain notes, next page: --offset " + next);
         }
 
         return true;
     }
 
+    private static boolean find(Pattern pattern, String text) {
+        return text != null && pattern.matcher(text).find();
+    }
+
+    private static String resultLine(UUID id, String title) {
+        return "- [" + id.toString().substring(0, 8) + "] " + title;
+    }
+
+    // A non-negative number option, the default when absent, null (and an error) when invalid
+    private static Integer parseCount(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.out.println("Error: --" + name + " must be a number of 0 or more");
+        return null;
+    }
+
     private boolean executeStats(Map<String, String> options) {
-        List<Note> notes = noteManager.getAllNotes();
+        List<NoteSummary> notes = getPlainSummaries();
 
         System.out.println("=== QuickThought Statistics ===");
         System.out.println("Total notes: " + notes.size());
 
         if (!notes.isEmpty()) {
             int totalContent = notes.stream()
-                    .mapToInt(note -> note.getContent().length())
+                    .mapToInt(NoteSummary::getContentLength)
                     .sum();
 
             System.out.println("Average content length: " + (totalContent / notes.size()) + " characters");
@@ -240,6 +433,12 @@ public class CLIHandler {
             System.out.println("Unique tags: " + allTags.size());
             System.out.println("Working directory: " + workingDirectory);
         }
+        System.out.println("Note store: " + noteManager.getStore().getName());
+        List<Note> encryptedNotes = getEncryptedHeaders();
+        if (!encryptedNotes.isEmpty()) {
+            System.out.println("Encrypted notes: " + encryptedNotes.size());
+        }
+        System.out.println("Note cache: " + noteManager.getCacheStats());
 
         return true;
     }
@@ -249,6 +448,16 @@ public class CLIHandler {
         System.out.println(" Encryption Commands:");
         System.out.println("  encrypt abc123                              # Encrypt note by ID");
         System.out.println("  encrypt \"My Note\"                          # Encrypt note by title");
+        System.out.println("  encrypt --tag work                           # Encrypt every note tagged work");
+        System.out.println("  encrypt --query budget                       # Encrypt every note matching a search");
+        System.out.println("  encrypt --all                                # Encrypt all plain notes");
+        System.out.println("  decrypt abc123                               # Decrypt note back to plain text");
+        System.out.println("  decrypt --all                                # Also --tag and --query");
+        System.out.println();
+        System.out.println(" Storage Commands:");
+        System.out.println("  migrate --to sharded                         # Fan .md files out into ab/cd/ subdirectories");
+        System.out.println("  migrate --to segments                        # Keep notes in an append-only segment log");
+        System.out.println("  migrate --to markdown                        # Back to one .md file per note");
         System.out.println("  unlock                                       # Enter master password");
         System.out.println("  lock                                         # Clear password from memory");
         System.out.println();
@@ -269,6 +478,9 @@ public class CLIHandler {
         System.out.println("  find \"important stuff\"                      # Search for text");
         System.out.println("  search \"meeting notes\"                     # Same as find");
         System.out.println("  locate \"project ideas\"                     # Same as find");
+        System.out.println("  search --exact \"v1.2, final\"               # Text as typed, punctuation included");
+        System.out.println("  search --fuzzy 2 hamlett                     # Tolerate up to 2 typos per word");
+        System.out.println("  search --regex \"colou?r|hue\"                 # Java regex, (?i) to ignore case");
         System.out.println();
         System.out.println("  list all                                     # List with details");
         System.out.println("  ls verbose                                   # Same as list all");
@@ -276,6 +488,9 @@ public class CLIHandler {
         System.out.println();
         System.out.println("  load myfile.md                               # Import a file");
         System.out.println("  import myfile.md                             # Same as load");
+        System.out.println("  import export/                               # Every .md file below a directory");
+        System.out.println("  import \"export/**.md\"                        # Files matching a glob");
+        System.out.println("  import notes.zip                             # Also .tar, .tar.gz and .tgz");
         System.out.println();
         System.out.println("  stats                                        # Show statistics");
         System.out.println("  info                                         # Same as stats");
@@ -284,9 +499,12 @@ public class CLIHandler {
         System.out.println("  create --title \"Title\" --content \"Content\"");
         System.out.println("  edit --id abc123 | --title \"Note Title\"");
         System.out.println("  read --id abc123");
-        System.out.println("  search --query \"text\"");
+        System.out.println("  search --query \"text\" | --exact \"text\" | --regex \"pattern\"");
+        System.out.println("  search \"text\" --limit 20 --offset 20          # Best matches first, one page at a time");
         System.out.println("  list --verbose");
+        System.out.println("  list --tags work,urgent --any-tags a,b --exclude archived");
         System.out.println("  import --file myfile.md");
+        System.out.println("  import --dir export | --glob \"*.md\" | --archive notes.tgz");
         System.out.println();
         System.out.println(" Quick Examples:");
         System.out.println("  quickthought new \"Shopping\" \"Buy groceries\"");
@@ -300,11 +518,20 @@ public class CLIHandler {
 
     private boolean executeImport(Map<String, String> options) {
         String filePath = options.get("file");
+        for (String key : List.of("dir", "glob", "archive")) {
+            if (filePath == null) {
+                filePath = options.get(key);
+            }
+        }
         if (filePath == null) {
             System.out.println("Error: --file required for import");
             System.out.println("Usage: import --file path/to/note.md");
+            System.out.println("       import --dir path/to/notes | --glob \"export/**.md\" | --archive notes.zip");
             return false;
         }
+        if (BulkImporter.isBulkSource(filePath)) {
+            return executeBulkImport(filePath);
+        }
 
         try {
             java.nio.file.Path sourceFile = java.nio.file.Paths.get(filePath);
@@ -315,6 +542,7 @@ public class CLIHandler {
 
             String content = java.nio.file.Files.readString(sourceFile);
             Note note = noteManager.parseAndCreateNote(content);
+            noteChanged(note.getId());
 
             System.out.println("Note imported successfully!");
             System.out.println("Title: " + note.getTitle());
@@ -329,6 +557,36 @@ public class CLIHandler {
         }
     }
 
+    /** import of a directory, glob or archive: parsed on the loader pool, written in batches. */
+    private boolean executeBulkImport(String source) {
+        BulkImporter importer = new BulkImporter(noteManager);
+        BulkImporter.Result result;
+        try {
+            result = importer.importFrom(source, (imported, elapsed) -> System.out.print(String.format(
+                    "\r Importing %d notes (%.0f notes/s)", imported, imported * 1e9 / Math.max(1, elapsed))));
+        } catch (IOException e) {
+            System.out.println();
+            System.out.println(" Import failed: " + e.getMessage());
+            return false;
+        } finally {
+            idIndex = null;
+            if (liveCache != null) {
+                liveCache.invalidate(path -> path.toString().endsWith(".md"));
+            }
+        }
+        System.out.println();
+
+        System.out.println(String.format(" Imported %d note(s) in %.2fs (%.0f notes/s)",
+                result.getImported(), result.getElapsedNanos() / 1e9, result.getNotesPerSecond()));
+        if (!result.getFailures().isEmpty()) {
+            System.out.println(" " + result.getFailures().size() + " file(s) not imported:");
+            for (String failure : result.getFailures()) {
+                System.out.println("   " + failure);
+            }
+        }
+        return result.getFailures().isEmpty();
+    }
+
     private boolean executeEdit(Map<String, String> options) {
         String id = options.get("id");
         String title = options.get("title");
@@ -357,14 +615,18 @@ public class CLIHandler {
                 return false;
             }
 
-            // Get the file path
-            String filePath = workingDirectory + "/" + noteToEdit.getId() + ".md";
-
             System.out.println("Opening note for editing: " + noteToEdit.getTitle());
             System.out.println("File: " + noteToEdit.getId().toString().substring(0, 8) + ".md");
 
-            // Open in nano editor
-            EditorTest.manualTestNanoEditor(filePath);
+            Path noteFile = noteManager.getStore().fileOf(noteToEdit.getId());
+            if (noteFile != null) {
+                // Open in nano editor
+                EditorTest.manualTestNanoEditor(noteFile.toString());
+                noteManager.reindexNote(noteToEdit.getId());
+            } else {
+                editStoredNote(noteToEdit.getId());
+            }
+            noteChanged(noteToEdit.getId());
 
             System.out.println("Edit session completed");
             System.out.println("Note: Changes are automatically saved");
@@ -377,42 +639,119 @@ public class CLIHandler {
         }
     }
 
+    // Notes without a file of their own are edited through a temporary copy
+    private void editStoredNote(UUID id) throws IOException {
+        byte[] content = noteManager.getStore().read(id);
+        if (content == null) {
+            throw new IOException("Note is gone: " + id);
+        }
+        Path temp = Files.createTempFile("quickthought-", ".md");
+        try {
+            Files.write(temp, content);
+            EditorTest.manualTestNanoEditor(temp.toString());
+            noteManager.replaceNoteText(id, Files.readString(temp));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
     private Note findNoteById(String id) {
-        List<Note> notes = getAllNotesIncludingEncrypted();
-        
-        
-        for (Note note : notes) {
-            String noteId = note.getId().toString();
-            System.out.println("  - " + noteId.substring(0, Math.min(8, noteId.length())) + " : " + note.getTitle());
+        // Resolved from file names alone; only the matching note is opened
+        List<String> matches;
+        try {
+            matches = getIdIndex().find(id, MAX_AMBIGUOUS_MATCHES + 1);
+        } catch (IOException e) {
+            System.out.println(" Error reading notes directory: " + e.getMessage());
+            return null;
         }
-        
-        // Try partial match
-        Optional<Note> match = notes.stream()
-            .filter(note -> {
-                String noteId = note.getId().toString().toLowerCase();
-                String searchId = id.toLowerCase();
-                boolean matches = noteId.startsWith(searchId);
-                if (matches) {
-                    System.out.println(" Found match: " + noteId);
-                }
-                return matches;
-            })
-            .findFirst();
-        
-        if (match.isPresent()) {
-            return match.get();
-        } else {
+
+        if (matches.isEmpty()) {
             System.out.println(" No note found starting with: " + id);
             return null;
         }
+        if (matches.size() > 1) {
+            System.out.println(" Ambiguous ID '" + id + "', it matches several notes:");
+            for (String fileName : matches.subList(0, Math.min(matches.size(), MAX_AMBIGUOUS_MATCHES))) {
+                System.out.println("  - " + IdPrefixIndex.stripExtension(fileName));
+            }
+            if (matches.size() > MAX_AMBIGUOUS_MATCHES) {
+                System.out.println("  ...");
+            }
+            return null;
+        }
+
+        String fileName = matches.get(0);
+        System.out.println(" Found match: " + IdPrefixIndex.stripExtension(fileName));
+        if (fileName.endsWith(".md.enc")) {
+            return liveCache != null ? liveCache.getNote(Paths.get(fileName))
+                                     : loadNoteSafely(Paths.get(workingDirectory, fileName));
+        }
+        try {
+            return getPlainNote(UUID.fromString(IdPrefixIndex.stripExtension(fileName)));
+        } catch (IllegalArgumentException e) {
+            // File not named after a UUID
+            return loadNoteSafely(Paths.get(workingDirectory, fileName));
+        }
+    }
+
+    private IdPrefixIndex getIdIndex() throws IOException {
+        if (idIndex == null || !idIndex.isCurrent()) {
+            idIndex = noteManager.hasFlatNoteFiles()
+                ? IdPrefixIndex.build(Paths.get(workingDirectory))
+                : IdPrefixIndex.build(Paths.get(workingDirectory), noteManager.getStore().list());
+        }
+        return idIndex;
     }
 
     private Note findNoteByTitle(String title) {
-        List<Note> notes = getAllNotesIncludingEncrypted();  
-        return notes.stream()
-                .filter(note -> note.getTitle().equals(title))
-                .findFirst()
-                .orElse(null);
+        return findNoteByTitle(title, false);
+    }
+
+    // Exact title first; when loose, then the same title in another case, then a unique title prefix
+    private Note findNoteByTitle(String title, boolean loose) {
+        List<Note> matches = noteManager.findNotesByTitle(title, false);
+        if (matches.isEmpty()) {
+            // Only the headers of encrypted notes are decrypted to compare titles
+            Note encrypted = getEncryptedHeaders().stream()
+                    .filter(note -> note.getTitle().equals(title))
+                    .findFirst()
+                    .orElse(null);
+            if (encrypted != null) {
+                return liveCache != null ? encrypted
+                        : loadNoteSafely(Paths.get(workingDirectory, encrypted.getId() + ".md.enc"));
+            }
+            if (!loose) {
+                return null;
+            }
+            matches = noteManager.findNotesByTitle(title, true);
+        }
+        if (matches.isEmpty()) {
+            matches = noteManager.findNotesByTitlePrefix(title, MAX_AMBIGUOUS_MATCHES + 1);
+            if (matches.size() > 1) {
+                System.out.println(" Several titles start with '" + title + "':");
+                printCandidates(matches);
+                return null;
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+
+        if (matches.size() > 1) {
+            System.out.println(" " + matches.size() + " notes are titled '" + matches.get(0).getTitle()
+                    + "', using the oldest. Pass --id to pick another:");
+            printCandidates(matches);
+        }
+        return getPlainNote(matches.get(0).getId());
+    }
+
+    private void printCandidates(List<Note> notes) {
+        for (Note note : notes.subList(0, Math.min(notes.size(), MAX_AMBIGUOUS_MATCHES))) {
+            System.out.println("  - " + note.getId().toString().substring(0, 8) + "  " + note.getTitle());
+        }
+        if (notes.size() > MAX_AMBIGUOUS_MATCHES) {
+            System.out.println("  ...");
+        }
     }
 
     private String normalizeCommand(String command) {
@@ -468,6 +807,7 @@ public class CLIHandler {
             case "read":
             case "edit":
             case "encrypt":
+            case "decrypt":
                 if (!options.containsKey("id") && !options.containsKey("title") && !positionalArgs.isEmpty()) {
                     String firstArg = positionalArgs.get(0);
                     // If it looks like an ID (starts with alphanumeric), treat as ID
@@ -506,23 +846,26 @@ public class CLIHandler {
 
 
     // Add this method to CLIHandler
-    private boolean verifyPassword(String password) {
+    private boolean verifyPassword(EncryptionSession candidate) {
         try {
             File passwordTestFile = new File(workingDirectory + "/.quickthought_auth");
 
             if (passwordTestFile.exists()) {
                 // Existing setup - verify password
                 String testData = new String(java.nio.file.Files.readAllBytes(passwordTestFile.toPath()));
-                return NoteEncryption.testPassword(testData, password);
+                candidate.decrypt(testData);
+                return true;
             } else {
                 // First time setup - create password verification file
                 String testString = "QuickThought_Password_Test_" + System.currentTimeMillis();
-                String encryptedTest = NoteEncryption.encrypt(testString, password);
+                String encryptedTest = candidate.encrypt(testString);
                 java.nio.file.Files.write(passwordTestFile.toPath(), encryptedTest.getBytes());
 
                 System.out.println(" Master password set successfully!");
                 return true;
             }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
         } catch (Exception e) {
             System.err.println("Password verification error: " + e.getMessage());
             return false;
@@ -531,12 +874,19 @@ public class CLIHandler {
 
     // Add this method to clear password from memory
     private void lockSession() {
-        masterPassword = null;
-        encryptionEnabled = false;
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        encryptedIndex.lock();
+        encryptedNotesChanged();
         System.out.println(" Session locked - password cleared from memory");
     }
 
     private boolean executeEncrypt(Map<String, String> options) {
+        if (isBulk(options)) {
+            return executeBulkConversion(true, options);
+        }
         String noteId = options.get("id");
         String noteTitle = options.get("title");
 
@@ -563,19 +913,15 @@ public class CLIHandler {
                 return false;
             }
 
-            // Read the original file
-            String originalPath = workingDirectory + "/" + note.getId() + ".md";
-            String content = new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(originalPath)));
-
-            // Encrypt the content
-            String encryptedContent = NoteEncryption.encrypt(content, masterPassword);
+            // Stream the original note into the chunked encrypted format
+            Path encryptedPath = Paths.get(workingDirectory, note.getId() + ".md.enc");
+            BulkConverter.encryptNote(session, noteManager.getStore(), note.getId(), encryptedPath);
 
-            // Save as encrypted file
-            String encryptedPath = workingDirectory + "/" + note.getId() + ".md.enc";
-            java.nio.file.Files.write(java.nio.file.Paths.get(encryptedPath), encryptedContent.getBytes());
-
-            // Delete original file
-            java.nio.file.Files.delete(java.nio.file.Paths.get(originalPath));
+            // Delete original file (through NoteManager so it leaves the search index too)
+            noteManager.deleteNote(note.getId());
+            noteManager.purgeDeletedNotes();
+            noteChanged(note.getId());
+            encryptedIndex.update(encryptedPath, note);
 
             System.out.println(" Note encrypted successfully");
             System.out.println(" File: " + note.getId().toString().substring(0, 8) + ".md.enc");
@@ -588,67 +934,327 @@ public class CLIHandler {
         }
     }
 
+    private boolean executeDecrypt(Map<String, String> options) {
+        if (isBulk(options)) {
+            return executeBulkConversion(false, options);
+        }
+        String noteId = options.get("id");
+        String noteTitle = options.get("title");
+
+        if (noteId == null && noteTitle == null) {
+            System.out.println(" Error: Specify --id, --title, --tag, --query or --all");
+            System.out.println(" Usage: decrypt --id <note-id> OR decrypt --all");
+            return false;
+        }
+
+        if (!promptForPassword()) {
+            return false;
+        }
+
+        Note note = noteId != null ? findNoteById(noteId) : findNoteByTitle(noteTitle);
+        Path encryptedPath = note != null ? Paths.get(workingDirectory, note.getId() + ".md.enc") : null;
+        if (encryptedPath == null || !Files.exists(encryptedPath)) {
+            System.out.println(" Encrypted note not found");
+            return false;
+        }
+        return runBulkConversion(false, List.of(note.getId()));
+    }
+
+    private static boolean isBulk(Map<String, String> options) {
+        return options.containsKey("all") || options.containsKey("tag") || options.containsKey("query");
+    }
+
+    /** encrypt/decrypt --tag, --query or --all: every selected note is converted in one pooled run. */
+    private boolean executeBulkConversion(boolean encrypting, Map<String, String> options) {
+        if (!promptForPassword()) {
+            return false;
+        }
+
+        List<UUID> ids;
+        try {
+            ids = selectForConversion(encrypting, options);
+        } catch (IOException e) {
+            System.out.println(" Error reading notes directory: " + e.getMessage());
+            return false;
+        }
+        if (ids.isEmpty()) {
+            System.out.println(" No " + (encrypting ? "plain" : "encrypted") + " notes match");
+            return true;
+        }
+        return runBulkConversion(encrypting, ids);
+    }
+
+    private List<UUID> selectForConversion(boolean encrypting, Map<String, String> options) throws IOException {
+        Path directory = Paths.get(workingDirectory);
+        if (options.containsKey("all") && encrypting) {
+            return noteManager.getStore().list();
+        }
+
+        List<UUID> ids;
+        String tag = options.get("tag");
+        if (options.containsKey("all")) {
+            ids = new ArrayList<>();
+            for (Path file : ParallelNoteLoader.listFiles(directory, path -> path.toString().endsWith(".md.enc"))) {
+                try {
+                    ids.add(UUID.fromString(IdPrefixIndex.stripExtension(file.getFileName().toString())));
+                } catch (IllegalArgumentException e) {
+                    // Not named after a note id
+                }
+            }
+            return ids;
+        }
+        String query = options.get("query");
+        if (tag != null) {
+            TagIndex.Query tagQuery = TagIndex.Query.parse(tag, null, null);
+            ids = encrypting
+                ? noteManager.findNotesByTags(tagQuery).stream().map(NoteSummary::getId).collect(Collectors.toList())
+                : getEncryptedHeaders().stream()
+                    .filter(note -> tagQuery.matches(note.getTags()))
+                    .map(Note::getId)
+                    .collect(Collectors.toList());
+        } else if (encrypting) {
+            ids = noteManager.searchNotes(query).stream().map(Note::getId).collect(Collectors.toList());
+        } else {
+            List<NoteSummary> found = encryptedIndex.search(query, this::decryptNote);
+            CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(query);
+            ids = found != null
+                ? found.stream().map(NoteSummary::getId).collect(Collectors.toList())
+                : getEncryptedNotes().stream()
+                    .filter(note -> matcher.matches(note.getTitle()) || matcher.matches(note.getContent()))
+                    .map(Note::getId)
+                    .collect(Collectors.toList());
+        }
+
+        List<UUID> selected = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            if (encrypting ? noteManager.getStore().contains(id) : Files.exists(directory.resolve(id + ".md.enc"))) {
+                selected.add(id);
+            }
+        }
+        selected.sort(Comparator.comparing(UUID::toString));
+        return selected;
+    }
+
+    private boolean runBulkConversion(boolean encrypting, List<UUID> ids) {
+        String verb = encrypting ? "Encrypting" : "Decrypting";
+        BulkConverter converter = new BulkConverter(Paths.get(workingDirectory), noteManager.getStore());
+        BulkConverter.ProgressListener progress = (done, total, elapsed) -> System.out.print(String.format(
+                "\r %s %d/%d notes (%.0f notes/s)", verb, done, total, done * 1e9 / Math.max(1, elapsed)));
+
+        BulkConverter.Result result;
+        try {
+            result = encrypting
+                ? converter.encrypt(session, ids, progress)
+                : converter.decrypt(session, ids, progress);
+        } catch (IOException e) {
+            System.out.println();
+            System.out.println((encrypting ? " Encryption" : " Decryption") + " failed: " + e.getMessage());
+            return false;
+        } finally {
+            bulkConversionFinished(encrypting);
+        }
+        System.out.println();
+
+        System.out.println(String.format(" %s %d note(s) in %.2fs (%.0f notes/s)",
+                encrypting ? "Encrypted" : "Decrypted", result.getConverted(),
+                result.getElapsedNanos() / 1e9, result.getNotesPerSecond()));
+        if (!result.getFailures().isEmpty()) {
+            System.out.println(" " + result.getFailures().size() + " note(s) left unchanged:");
+            for (String failure : result.getFailures()) {
+                System.out.println("   " + failure);
+            }
+        }
+        return result.getFailures().isEmpty();
+    }
+
+    // Notes moved between the plain and encrypted sets wholesale
+    private void bulkConversionFinished(boolean encrypting) {
+        noteManager.invalidateIndexes();
+        if (encrypting) {
+            noteManager.purgeDeletedNotes();
+        }
+        idIndex = null;
+        if (liveCache != null) {
+            liveCache.invalidate(path -> true);
+        }
+    }
+
+    private void recoverBulkConversion() {
+        try {
+            if (new BulkConverter(Paths.get(workingDirectory), noteManager.getStore()).recover() > 0) {
+                noteManager.invalidateIndexes();
+                noteManager.purgeDeletedNotes();
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not finish interrupted encrypt/decrypt run: " + e.getMessage());
+        }
+    }
+
+    private boolean executeMigrate(Map<String, String> options) {
+        String target = options.get("to");
+        if (target == null) {
+            System.out.println(" Error: Specify the target store with --to (markdown, sharded or segments)");
+            System.out.println(" Current store: " + noteManager.getStore().getName());
+            return false;
+        }
+        String source = noteManager.getStore().getName();
+        try {
+            long start = System.nanoTime();
+            int moved = noteManager.migrateStore(target);
+            if (moved == 0 && source.equalsIgnoreCase(target)) {
+                System.out.println(" Notes are already kept in the " + source + " store");
+                return true;
+            }
+            System.out.println(String.format(" Moved %d note(s) from %s to %s in %.2fs",
+                    moved, source, noteManager.getStore().getName(), (System.nanoTime() - start) / 1e9));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(" Migration failed: " + e.getMessage());
+            return false;
+        } finally {
+            idIndex = null;
+            if (liveCache != null) {
+                liveCache.invalidate(path -> true);
+            }
+        }
+        return true;
+    }
+
     private boolean executeLock() {
         lockSession();
         return true;
     }
 
     private boolean executeUnlock() {
-        masterPassword = null; // Clear existing password
+        // Ask again even when already unlocked
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        encryptedIndex.lock();
         return promptForPassword();
     }
 
+    private List<NoteSummary> getPlainSummaries() {
+        if (liveCache != null && noteManager.hasFlatNoteFiles()) {
+            return liveCache.getNotes(path -> path.toString().endsWith(".md")).stream()
+                .map(note -> NoteSummary.of(note, 0, 0))
+                .collect(Collectors.toList());
+        }
+        return noteManager.getNoteSummaries();
+    }
+
+    private Note getPlainNote(UUID id) {
+        if (liveCache != null && noteManager.hasFlatNoteFiles()) {
+            return liveCache.getNote(Paths.get(id + ".md"));
+        }
+        return noteManager.getNote(id);
+    }
+
+    // Writes made by this session must be visible before the watch event arrives
+    private void noteChanged(UUID id) {
+        idIndex = null;
+        if (liveCache != null) {
+            liveCache.invalidate(Paths.get(id + ".md"));
+            liveCache.invalidate(Paths.get(id + ".md.enc"));
+        }
+    }
+
+    // Encrypted notes look different once the session is locked or unlocked
+    private void encryptedNotesChanged() {
+        if (liveCache != null) {
+            liveCache.invalidate(path -> path.toString().endsWith(".md.enc"));
+        }
+    }
+
     private List<Note> getAllNotesIncludingEncrypted() {
-        List<Note> allNotes = new ArrayList<>();
-        
+        if (!noteManager.hasFlatNoteFiles()) {
+            List<Note> notes = new ArrayList<>(noteManager.getAllNotes());
+            notes.addAll(getEncryptedNotes());
+            notes.sort(Comparator.comparing(note -> note.getId().toString()));
+            return notes;
+        }
+        return loadNotes(path -> path.toString().endsWith(".md") || 
+                                 path.toString().endsWith(".md.enc"));
+    }
+
+    private List<Note> getEncryptedNotes() {
+        return loadNotes(path -> path.toString().endsWith(".md.enc"));
+    }
+
+    /**
+     * Encrypted notes with only their front matter decrypted, enough for titles and tags.
+     * The live cache already holds full notes, and locked notes are placeholders anyway.
+     */
+    private List<Note> getEncryptedHeaders() {
+        if (liveCache != null || session == null) {
+            return getEncryptedNotes();
+        }
+        try {
+            List<Path> files = ParallelNoteLoader.listFiles(Paths.get(workingDirectory),
+                    path -> path.toString().endsWith(".md.enc"));
+            return ParallelNoteLoader.load(files, this::loadHeaderSafely);
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private Note loadHeaderSafely(Path encryptedFile) {
+        EncryptionSession current = session;
+        if (current == null) {
+            return createEncryptedPlaceholder(encryptedFile);
+        }
+        try {
+            return parseNoteFromYaml(EncryptedNoteFile.decryptFrontMatter(current, encryptedFile), encryptedFile);
+        } catch (Exception e) {
+            System.err.println("Failed to decrypt content: " + e.getMessage());
+            return createEncryptedPlaceholder(encryptedFile);
+        }
+    }
+
+    private List<Note> loadNotes(Predicate<Path> fileFilter) {
+        if (liveCache != null) {
+            return liveCache.getNotes(fileFilter);
+        }
         try {
             Path workingPath = Paths.get(workingDirectory);
             
             if (!Files.exists(workingPath)) {
-                return allNotes;
+                return new ArrayList<>();
             }
             
-            Files.list(workingPath)
-                .filter(path -> path.toString().endsWith(".md") || 
-                               path.toString().endsWith(".md.enc")) 
-                .forEach(path -> {
-                    try {
-                        Note note = loadNoteFromFile(path);
-                        if (note != null) {
-                            allNotes.add(note);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Warning: Could not load note from " + path.getFileName());
-                    }
-                });
+            // Reads, decryption and parsing fan out over the loader pool
+            List<Path> files = ParallelNoteLoader.listFiles(workingPath, fileFilter);
+            return ParallelNoteLoader.load(files, this::loadNoteSafely);
             
         } catch (IOException e) {
             System.err.println("Error reading notes directory: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private Note loadNoteSafely(Path path) {
+        try {
+            return loadNoteFromFile(path);
+        } catch (Exception e) {
+            System.err.println("Warning: Could not load note from " + path.getFileName());
+            return null;
         }
-        
-        return allNotes;
     }
 
     private Note loadNoteFromFile(Path filePath) {
         try {
-            String content = Files.readString(filePath);
             String fileName = filePath.getFileName().toString();
             
             // Check if this is an encrypted file by extension
             if (fileName.endsWith(".md.enc")) {
-                if (!encryptionEnabled || masterPassword == null) {
-                    // Return a placeholder note for encrypted files when locked
-                    return createEncryptedPlaceholder(filePath);
-                }
-                // Decrypt the content if we have the password
-                content = decryptContent(content);
-                if (content == null) {
-                    return createEncryptedPlaceholder(filePath); // Decryption failed
-                }
+                // Placeholder while locked or when decryption failed
+                Note note = decryptNote(filePath);
+                return note != null ? note : createEncryptedPlaceholder(filePath);
             }
             
             // Parse the YAML content to create a Note object
-            return parseNoteFromYaml(content, filePath);
+            return parseNoteFromYaml(Files.readString(filePath), filePath);
             
         } catch (IOException e) {
             System.err.println("Error reading file: " + filePath);
@@ -673,19 +1279,35 @@ public class CLIHandler {
         String idString = fileName.replace(".md.enc", "").replace(".md", "");
         
         try {
-            // Create a placeholder note that shows it's encrypted
+            // Create a placeholder note that shows it's encrypted, keeping the file's ID
             Note placeholder = new Note("[ENCRYPTED] " + idString.substring(0, 8), 
                                   "This note is encrypted. Use 'unlock' command to access.", 
                                   Arrays.asList("encrypted", "locked"));
+            try {
+                placeholder = new Note(UUID.fromString(idString), placeholder.getTitle(), placeholder.getContent(),
+                                       placeholder.getTags(), placeholder.getCreatedAt(), placeholder.getUpdatedAt());
+            } catch (IllegalArgumentException e) {
+                // Not named after a UUID, keep the generated one
+            }
             return placeholder;
         } catch (Exception e) {
             return null; // Invalid filename format
         }
     }
 
-    private String decryptContent(String encryptedContent) {
+    private Note decryptNote(Path encryptedFile) {
+        EncryptionSession current = session;
+        if (current == null) {
+            return null;
+        }
+        String content = decryptContent(current, encryptedFile);
+        return content != null ? parseNoteFromYaml(content, encryptedFile) : null;
+    }
+
+    // Reads both the chunked format and the older Base64 files
+    private String decryptContent(EncryptionSession current, Path encryptedFile) {
         try {
-            return NoteEncryption.decrypt(encryptedContent, masterPassword);
+            return EncryptedNoteFile.decrypt(current, encryptedFile);
         } catch (Exception e) {
             System.err.println("Failed to decrypt content: " + e.getMessage());
             return null;
@@ -702,7 +1324,7 @@ public class CLIHandler {
     }
 
     private boolean promptForPassword() {
-        if (masterPassword != null) {
+        if (session != null) {
             return true;
         }
 
@@ -726,12 +1348,23 @@ public class CLIHandler {
         String password = new String(passwordArray);
         Arrays.fill(passwordArray, ' '); // Clear from memory
 
-        if (verifyPassword(password)) {
-            masterPassword = password;
-            encryptionEnabled = true;
+        // The key is derived once here and reused for every note of the session
+        EncryptionSession candidate;
+        try {
+            candidate = EncryptionSession.unlock(password);
+        } catch (Exception e) {
+            System.err.println("Password verification error: " + e.getMessage());
+            return false;
+        }
+
+        if (verifyPassword(candidate)) {
+            session = candidate;
+            encryptedIndex.unlock(candidate);
+            encryptedNotesChanged();
             System.out.println(" Authentication successful");
             return true;
         } else {
+            candidate.close();
             System.out.println(" Incorrect password");
             return false;
         }
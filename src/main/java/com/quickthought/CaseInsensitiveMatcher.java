@@ -0,0 +1,144 @@
+package com.quickthought;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Case-insensitive substring search for scans that cannot use an index: the query is folded
+ * and compiled once into a Boyer-Moore-Horspool shift table, every text is then searched in
+ * place, folding one character at a time, so nothing is allocated per note (unlike
+ * text.toLowerCase().contains(query.toLowerCase())).
+ *
+ * Folding is per character with Character.toLowerCase, which agrees with String.toLowerCase
+ * except for the few characters that lower-case into two (e.g. a dotted capital I).
+ *
+ * Raw UTF-8 bytes (e.g. a mapped file) can be searched too when the query has no cased
+ * characters outside ASCII, see canMatchBytes: ASCII letters are folded, every other byte has
+ * to match exactly.
+ */
+public final class CaseInsensitiveMatcher {
+    // Shifts are kept per low byte of the folded character; characters sharing a slot get the
+    // smallest of their shifts, which is always safe
+    private static final int TABLE_SIZE = 256;
+
+    private final char[] pattern;
+    private final int[] shifts = new int[TABLE_SIZE];
+    private final byte[] bytePattern;
+    private final int[] byteShifts;
+
+    public CaseInsensitiveMatcher(String query) {
+        pattern = new char[query.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = fold(query.charAt(i));
+        }
+        fillShifts(shifts, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+
+        if (hasCasedNonAscii(pattern)) {
+            bytePattern = null;
+            byteShifts = null;
+        } else {
+            bytePattern = new String(pattern).getBytes(StandardCharsets.UTF_8);
+            byteShifts = new int[TABLE_SIZE];
+            fillShifts(byteShifts, bytePattern.length);
+            for (int i = 0; i < bytePattern.length - 1; i++) {
+                byteShifts[bytePattern[i] & 0xFF] = bytePattern.length - 1 - i;
+            }
+        }
+    }
+
+    /** True when the text contains the query, ignoring case. */
+    public boolean matches(CharSequence text) {
+        return text != null && indexIn(text) >= 0;
+    }
+
+    /** Position of the first occurrence of the query in the text, ignoring case, or -1. */
+    public int indexIn(CharSequence text) {
+        int length = pattern.length;
+        if (length == 0) {
+            return 0;
+        }
+        int last = length - 1;
+        char lastChar = pattern[last];
+        int end = text.length() - length;
+        int i = 0;
+        while (i <= end) {
+            char c = fold(text.charAt(i + last));
+            if (c == lastChar) {
+                int j = last - 1;
+                while (j >= 0 && fold(text.charAt(i + j)) == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shifts[c & 0xFF];
+        }
+        return -1;
+    }
+
+    /** False when the query has cased letters outside ASCII, which indexIn on bytes cannot fold. */
+    public boolean canMatchBytes() {
+        return bytePattern != null;
+    }
+
+    /**
+     * Position of the first occurrence of the query among the UTF-8 bytes from..to (absolute
+     * positions, the buffer's position is not used), or -1. Only valid when canMatchBytes.
+     */
+    public int indexIn(ByteBuffer bytes, int from, int to) {
+        if (bytePattern == null) {
+            throw new IllegalStateException("Query cannot be matched on raw bytes");
+        }
+        int length = bytePattern.length;
+        if (length == 0) {
+            return from;
+        }
+        int last = length - 1;
+        byte lastByte = bytePattern[last];
+        int end = to - length;
+        int i = from;
+        while (i <= end) {
+            byte b = foldAscii(bytes.get(i + last));
+            if (b == lastByte) {
+                int j = last - 1;
+                while (j >= 0 && foldAscii(bytes.get(i + j)) == bytePattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += byteShifts[b & 0xFF];
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static byte foldAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static void fillShifts(int[] table, int length) {
+        Arrays.fill(table, Math.max(1, length));
+    }
+
+    private static boolean hasCasedNonAscii(char[] folded) {
+        for (char c : folded) {
+            if (c >= 128 && (Character.toUpperCase(c) != c || Character.toLowerCase(c) != c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,346 @@
+package com.quickthought;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary .md.enc format: a short header, the note's front matter sealed on its own, then the
+ * body in fixed-size chunks, each encrypted and authenticated on its own with AES-GCM.
+ *
+ * Layout: "QTE\0", version byte, chunk size (int), 8-byte random file nonce, length of the
+ * sealed front matter (int), the sealed front matter, then the body chunks. Every chunk but
+ * the last holds exactly chunk size bytes of plaintext plus a 16-byte tag, so chunk offsets
+ * follow from the file size. A chunk's IV is the file nonce plus its index, and its associated
+ * data is the file header plus a flag (last chunk or front matter), so sections cannot be
+ * reordered, swapped between files or cut off without failing authentication.
+ *
+ * Because the front matter is separate, list and title lookups decrypt a few hundred bytes per
+ * note instead of the whole body. Version 1 files (no front matter section) and files written
+ * before this format (one Base64 AES blob) are still read.
+ */
+public final class EncryptedNoteFile {
+    static final byte[] MAGIC = {'Q', 'T', 'E', 0};
+    static final byte VERSION = 2;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final int NONCE_LENGTH = 8;
+    private static final int NONCE_OFFSET = MAGIC.length + 1 + Integer.BYTES;
+    private static final int V1_HEADER_LENGTH = NONCE_OFFSET + NONCE_LENGTH;
+    private static final int HEADER_LENGTH = V1_HEADER_LENGTH + Integer.BYTES;
+    private static final int TAG_LENGTH = 16;
+    private static final int MIN_PARALLEL_CHUNKS = 4;
+    // Front matter larger than this is left in the body
+    private static final int MAX_FRONT_MATTER = 64 * 1024;
+    private static final int FRONT_MATTER_INDEX = -1;
+    private static final byte FLAG_CHUNK = 0;
+    private static final byte FLAG_LAST_CHUNK = 1;
+    private static final byte FLAG_FRONT_MATTER = 2;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Shared so that notes encrypted in parallel share their directory syncs
+    private static final GroupCommit DIRECTORY_SYNC = new GroupCommit(0);
+
+    private EncryptedNoteFile() {
+    }
+
+    /** True when the file starts with the chunked format's magic bytes (legacy files are Base64 text). */
+    public static boolean isChunked(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until the magic is complete or the file ends
+            }
+            return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+        }
+    }
+
+    /**
+     * Encrypts a note file, sealing its front matter separately from the body. The target is
+     * written under a temporary name, forced to disk and moved into place, and the directory
+     * is synced before this returns: the source can be deleted right after.
+     */
+    public static void encrypt(EncryptionSession session, Path source, Path target)
+            throws IOException, GeneralSecurityException {
+        try (InputStream in = Files.newInputStream(source)) {
+            encrypt(session, in, target);
+        }
+    }
+
+    /** Same as encrypt(session, Path, Path) for a note that is not a file of its own. */
+    public static void encrypt(EncryptionSession session, InputStream in, Path target)
+            throws IOException, GeneralSecurityException {
+        byte[] prefix = in.readNBytes(MAX_FRONT_MATTER);
+        int frontLength = Math.max(0, YAMLParse.frontMatterLength(prefix, prefix.length,
+                prefix.length < MAX_FRONT_MATTER));
+        InputStream body = new SequenceInputStream(
+                new ByteArrayInputStream(prefix, frontLength, prefix.length - frontLength), in);
+        writeAtomically(session, Arrays.copyOf(prefix, frontLength), body, target);
+    }
+
+    /** Encrypts text held in memory (no front matter section); the plaintext never touches the disk. */
+    public static void write(EncryptionSession session, byte[] plaintext, Path target)
+            throws IOException, GeneralSecurityException {
+        writeAtomically(session, new byte[0], new ByteArrayInputStream(plaintext), target);
+    }
+
+    /** Decrypts a note file in any format into its full text. */
+    public static String decrypt(EncryptionSession session, Path file) throws IOException, GeneralSecurityException {
+        if (!isChunked(file)) {
+            return session.decrypt(Files.readString(file));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Layout layout = Layout.read(channel);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(layout.decryptFrontMatter(session, channel));
+            if (layout.chunkCount < MIN_PARALLEL_CHUNKS) {
+                for (int index = 0; index < layout.chunkCount; index++) {
+                    out.write(layout.decryptChunk(session, channel, index));
+                }
+            } else {
+                for (byte[] chunk : decryptParallel(session, channel, layout)) {
+                    out.write(chunk);
+                }
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Decrypts only the front matter block ("---" lines included) of a note file. Files without
+     * a separate front matter section are decrypted in full, so the result always starts with
+     * the note's header.
+     */
+    public static String decryptFrontMatter(EncryptionSession session, Path file)
+            throws IOException, GeneralSecurityException {
+        if (isChunked(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                byte[] frontMatter = Layout.read(channel).decryptFrontMatter(session, channel);
+                if (frontMatter.length > 0) {
+                    return new String(frontMatter, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return decrypt(session, file);
+    }
+
+    /**
+     * Streams a front matter block and a body into the format, holding at most two body chunks
+     * in memory.
+     */
+    static void write(EncryptionSession session, byte[] frontMatter, InputStream body, Path target, int chunkSize)
+            throws IOException, GeneralSecurityException {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC).put(VERSION).putInt(chunkSize).put(nonce)
+                .putInt(frontMatter.length + TAG_LENGTH);
+        Layout layout = new Layout(header.array(), chunkSize, 0);
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(layout.header));
+            writeFully(out, ByteBuffer.wrap(
+                    layout.init(session, Cipher.ENCRYPT_MODE, FRONT_MATTER_INDEX, FLAG_FRONT_MATTER).doFinal(frontMatter)));
+
+            // Read one chunk ahead: a chunk is the last one when nothing follows it
+            byte[] current = body.readNBytes(chunkSize);
+            for (int index = 0; ; index++) {
+                byte[] next = current.length == chunkSize ? body.readNBytes(chunkSize) : new byte[0];
+                boolean last = next.length == 0;
+                byte[] sealed = layout.init(session, Cipher.ENCRYPT_MODE, index, last ? FLAG_LAST_CHUNK : FLAG_CHUNK)
+                        .doFinal(current);
+                writeFully(out, ByteBuffer.wrap(sealed));
+                if (last) {
+                    break;
+                }
+                current = next;
+            }
+        }
+    }
+
+    /** Streams a chunked file's plaintext to the output, one chunk at a time. */
+    static void read(EncryptionSession session, Path file, OutputStream out) throws IOException, GeneralSecurityException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Layout layout = Layout.read(channel);
+            out.write(layout.decryptFrontMatter(session, channel));
+            for (int index = 0; index < layout.chunkCount; index++) {
+                out.write(layout.decryptChunk(session, channel, index));
+            }
+        }
+    }
+
+    private static void writeAtomically(EncryptionSession session, byte[] frontMatter, InputStream body, Path target)
+            throws IOException, GeneralSecurityException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            write(session, frontMatter, body, temp, DEFAULT_CHUNK_SIZE);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /** Makes renames into the directory durable, sharing the fsync with concurrent callers. */
+    static void syncDirectory(Path directory) throws IOException {
+        DIRECTORY_SYNC.sync(directory);
+    }
+
+    // Positional reads on one channel are safe from several threads
+    private static List<byte[]> decryptParallel(EncryptionSession session, FileChannel channel, Layout layout)
+            throws IOException, GeneralSecurityException {
+        List<Integer> indexes = new ArrayList<>(layout.chunkCount);
+        for (int index = 0; index < layout.chunkCount; index++) {
+            indexes.add(index);
+        }
+        try {
+            return ParallelNoteLoader.load(indexes, index -> {
+                try {
+                    return layout.decryptChunk(session, channel, index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (GeneralSecurityException e) {
+                    throw new ChunkFailure(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (ChunkFailure e) {
+            throw (GeneralSecurityException) e.getCause();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** Header fields of one file and the section arithmetic that follows from them. */
+    private static final class Layout {
+        final byte[] header;
+        final int chunkSize;
+        final int frontMatterLength;
+        final long bodyOffset;
+        final int chunkCount;
+        final long fileSize;
+
+        Layout(byte[] header, int chunkSize, long fileSize) {
+            this.header = header;
+            this.chunkSize = chunkSize;
+            this.fileSize = fileSize;
+            this.frontMatterLength = header.length == HEADER_LENGTH
+                    ? ByteBuffer.wrap(header).getInt(V1_HEADER_LENGTH) : 0;
+            this.bodyOffset = (long) header.length + frontMatterLength;
+            long stride = (long) chunkSize + TAG_LENGTH;
+            long body = fileSize - bodyOffset;
+            this.chunkCount = body <= 0 ? 0 : (int) ((body + stride - 1) / stride);
+        }
+
+        static Layout read(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(V1_HEADER_LENGTH);
+            readFully(channel, buffer, 0);
+            byte[] header = buffer.array();
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+                throw new IOException("Not a chunked encrypted note");
+            }
+            byte version = header[MAGIC.length];
+            if (version == 2) {
+                ByteBuffer frontLength = ByteBuffer.allocate(Integer.BYTES);
+                readFully(channel, frontLength, V1_HEADER_LENGTH);
+                if (frontLength.getInt(0) < TAG_LENGTH) {
+                    throw new IOException("Invalid encrypted note front matter length");
+                }
+                header = ByteBuffer.allocate(HEADER_LENGTH).put(header).put(frontLength.array()).array();
+            } else if (version != 1) {
+                throw new IOException("Unsupported encrypted note version " + version);
+            }
+            int chunkSize = buffer.getInt(MAGIC.length + 1);
+            if (chunkSize <= 0) {
+                throw new IOException("Invalid encrypted note chunk size " + chunkSize);
+            }
+            Layout layout = new Layout(header, chunkSize, channel.size());
+            if (layout.chunkCount == 0 || layout.chunkLength(layout.chunkCount - 1) < TAG_LENGTH) {
+                throw new IOException("Truncated encrypted note");
+            }
+            return layout;
+        }
+
+        long chunkOffset(int index) {
+            return bodyOffset + (long) index * (chunkSize + TAG_LENGTH);
+        }
+
+        long chunkLength(int index) {
+            return Math.min((long) chunkSize + TAG_LENGTH, fileSize - chunkOffset(index));
+        }
+
+        byte[] decryptFrontMatter(EncryptionSession session, FileChannel channel)
+                throws IOException, GeneralSecurityException {
+            if (frontMatterLength == 0) {
+                return new byte[0];
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(frontMatterLength);
+            readFully(channel, buffer, header.length);
+            return init(session, Cipher.DECRYPT_MODE, FRONT_MATTER_INDEX, FLAG_FRONT_MATTER).doFinal(buffer.array());
+        }
+
+        byte[] decryptChunk(EncryptionSession session, FileChannel channel, int index)
+                throws IOException, GeneralSecurityException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) chunkLength(index));
+            readFully(channel, buffer, chunkOffset(index));
+            byte flag = index == chunkCount - 1 ? FLAG_LAST_CHUNK : FLAG_CHUNK;
+            return init(session, Cipher.DECRYPT_MODE, index, flag).doFinal(buffer.array());
+        }
+
+        Cipher init(EncryptionSession session, int mode, int index, byte flag) throws GeneralSecurityException {
+            byte[] iv = ByteBuffer.allocate(NONCE_LENGTH + Integer.BYTES)
+                    .put(header, NONCE_OFFSET, NONCE_LENGTH)
+                    .putInt(index)
+                    .array();
+            Cipher cipher = session.gcmCipher();
+            cipher.init(mode, session.key(), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            cipher.updateAAD(header);
+            cipher.updateAAD(new byte[] {flag});
+            return cipher;
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IOException("Truncated encrypted note");
+                }
+            }
+        }
+    }
+
+    // Carries a GeneralSecurityException out of a parallel worker
+    private static final class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkFailure(GeneralSecurityException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Search index for the encrypted notes: titles, tags and terms of every .md.enc file.
+ *
+ * The index file (.quickthought_secure_index) is itself encrypted with the session key. It is
+ * decrypted into memory the first time an unlocked session needs it and dropped on lock, so
+ * searching protected notes does not decrypt them one by one and no plaintext is written to
+ * disk. Entries remember the mtime and size of their note file; when the directory changed,
+ * only notes whose file no longer matches are decrypted again.
+ */
+public class EncryptedSearchIndex {
+    static final String INDEX_FILE = ".quickthought_secure_index";
+
+    // Placeholder for notes that could not be decrypted, keeps parallel results aligned with their paths
+    private static final Note MISSING = new Note("", "", null);
+
+    private final Path directory;
+    private final Path indexFile;
+    private final Map<String, NoteSummary> summaries = new HashMap<>();
+    private final Map<String, Set<String>> documents = new HashMap<>();
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    // Term dictionary for fuzzy queries, as in SearchIndex; holds plaintext terms, so dropped on lock
+    private BkTree dictionary;
+    private EncryptionSession session;
+    private FileTime directoryModified;
+
+    public EncryptedSearchIndex(String workingDirectory) {
+        this.directory = Paths.get(workingDirectory);
+        this.indexFile = SidecarJournal.sidecarFile(directory, INDEX_FILE);
+    }
+
+    /** Makes the index usable with the given session; nothing is decrypted until the first search. */
+    public synchronized void unlock(EncryptionSession session) {
+        clear();
+        this.session = session;
+    }
+
+    /** Drops everything that was decrypted. */
+    public synchronized void lock() {
+        clear();
+        session = null;
+    }
+
+    /**
+     * Summaries of the encrypted notes containing every term of the query, in file name order.
+     * Returns null when the session is locked or the query has no indexable terms. The loader
+     * decrypts a single note and returns null when it cannot.
+     */
+    public synchronized List<NoteSummary> search(String query, Function<Path, Note> loader) {
+        return find(query, loader, queryTerm -> {
+            List<String> terms = new ArrayList<>();
+            for (String term : postings.keySet()) {
+                if (term.contains(queryTerm)) {
+                    terms.add(term);
+                }
+            }
+            return terms;
+        });
+    }
+
+    /**
+     * Same as search, but every query term matches the terms within maxEdits edits of it, with
+     * the same allowance for short terms as SearchIndex.rankFuzzy.
+     */
+    public synchronized List<NoteSummary> searchFuzzy(String query, int maxEdits, Function<Path, Note> loader) {
+        return find(query, loader, queryTerm -> {
+            if (dictionary == null || dictionary.size() > 2 * postings.size() + 1024) {
+                dictionary = new BkTree();
+                for (String term : postings.keySet()) {
+                    dictionary.add(term);
+                }
+            }
+            int edits = Math.min(maxEdits, (queryTerm.length() + 2) / 3);
+            return dictionary.search(queryTerm, edits).keySet();
+        });
+    }
+
+    // Notes having one of the terms a query term expands to, for every query term
+    private List<NoteSummary> find(String query, Function<Path, Note> loader,
+                                   Function<String, Collection<String>> expand) {
+        List<String> queryTerms = SearchIndex.tokenize(query);
+        if (session == null || queryTerms.isEmpty()) {
+            return null;
+        }
+        ensureCurrent(loader);
+
+        Set<String> result = null;
+        for (String queryTerm : new LinkedHashSet<>(queryTerms)) {
+            Set<String> matches = new HashSet<>();
+            for (String term : expand.apply(queryTerm)) {
+                // The dictionary still holds terms of removed notes
+                Set<String> fileNames = postings.get(term);
+                if (fileNames != null) {
+                    matches.addAll(fileNames);
+                }
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+
+        List<String> fileNames = new ArrayList<>(result);
+        fileNames.sort(null);
+        List<NoteSummary> found = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            found.add(summaries.get(fileName));
+        }
+        return found;
+    }
+
+    /** Records a note that was just encrypted into the given file. */
+    public synchronized void update(Path file, Note note) {
+        if (directoryModified == null) {
+            // Not loaded in this session: the next search picks the file up as changed
+            return;
+        }
+        try {
+            put(file.getFileName().toString(), note, Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            directoryModified = null;
+            return;
+        }
+        save();
+    }
+
+    /** Forgets an encrypted note file that is gone. */
+    public synchronized void remove(Path file) {
+        if (directoryModified != null && removeEntry(file.getFileName().toString())) {
+            save();
+        }
+    }
+
+    public synchronized int size() {
+        return summaries.size();
+    }
+
+    private void ensureCurrent(Function<Path, Note> loader) {
+        FileTime modified = readDirectoryModified();
+        if (directoryModified != null && directoryModified.equals(modified)) {
+            return;
+        }
+        if (directoryModified == null) {
+            clearEntries();
+            readIndexFile();
+        }
+        // Read the mtime first: anything changed while syncing makes the index look stale
+        directoryModified = modified;
+
+        List<Path> stale = new ArrayList<>();
+        List<BasicFileAttributes> staleAttributes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        try {
+            for (Path path : ParallelNoteLoader.listFiles(directory, p -> p.toString().endsWith(".md.enc"))) {
+                String fileName = path.getFileName().toString();
+                seen.add(fileName);
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                NoteSummary summary = summaries.get(fileName);
+                if (summary == null || summary.getFileModified() != toNanos(attributes.lastModifiedTime())
+                        || summary.getFileSize() != attributes.size()) {
+                    stale.add(path);
+                    staleAttributes.add(attributes);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+            directoryModified = null;
+            return;
+        }
+
+        boolean changed = false;
+        for (String fileName : new ArrayList<>(summaries.keySet())) {
+            if (!seen.contains(fileName)) {
+                changed |= removeEntry(fileName);
+            }
+        }
+
+        // Only notes that changed since they were indexed are decrypted, in one parallel pass
+        List<Note> loaded = ParallelNoteLoader.load(stale, path -> {
+            Note note = loader.apply(path);
+            return note != null ? note : MISSING;
+        });
+        for (int i = 0; i < stale.size(); i++) {
+            String fileName = stale.get(i).getFileName().toString();
+            if (loaded.get(i) == MISSING) {
+                changed |= removeEntry(fileName);
+            } else {
+                put(fileName, loaded.get(i), staleAttributes.get(i));
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            save();
+        }
+    }
+
+    private void readIndexFile() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            String text = EncryptedNoteFile.decrypt(session, indexFile);
+            for (String line : text.split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                Set<String> terms = new HashSet<>();
+                if (!fields[10].isEmpty()) {
+                    terms.addAll(List.of(fields[10].split(" ")));
+                }
+                addEntry(SidecarJournal.unescape(fields[1]), NoteCatalog.parseRecord(fields), terms);
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Encrypted search index unreadable, rebuilding: " + e.getMessage());
+            clearEntries();
+        }
+    }
+
+    private void save() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, NoteSummary> entry : summaries.entrySet()) {
+            text.append(NoteCatalog.addRecord(entry.getKey(), entry.getValue()))
+                .append('\t')
+                .append(String.join(" ", documents.get(entry.getKey())))
+                .append('\n');
+        }
+        try {
+            SidecarJournal.createDirectory(indexFile);
+            EncryptedNoteFile.write(session, text.toString().getBytes(StandardCharsets.UTF_8), indexFile);
+        } catch (Exception e) {
+            System.err.println("Warning: Could not write encrypted search index: " + e.getMessage());
+        }
+    }
+
+    private void put(String fileName, Note note, BasicFileAttributes attributes) {
+        removeEntry(fileName);
+        Set<String> terms = new HashSet<>(SearchIndex.tokenize(note.getTitle()));
+        terms.addAll(SearchIndex.tokenize(note.getContent()));
+        addEntry(fileName, NoteSummary.of(note, toNanos(attributes.lastModifiedTime()), attributes.size()), terms);
+    }
+
+    private void addEntry(String fileName, NoteSummary summary, Set<String> terms) {
+        summaries.put(fileName, summary);
+        documents.put(fileName, terms);
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> {
+                if (dictionary != null) {
+                    dictionary.add(t);
+                }
+                return new HashSet<>();
+            }).add(fileName);
+        }
+    }
+
+    private boolean removeEntry(String fileName) {
+        summaries.remove(fileName);
+        Set<String> terms = documents.remove(fileName);
+        if (terms == null) {
+            return false;
+        }
+        for (String term : terms) {
+            Set<String> fileNames = postings.get(term);
+            if (fileNames != null) {
+                fileNames.remove(fileName);
+                if (fileNames.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void clearEntries() {
+        summaries.clear();
+        documents.clear();
+        postings.clear();
+        dictionary = null;
+    }
+
+    private void clear() {
+        clearEntries();
+        directoryModified = null;
+    }
+
+    private FileTime readDirectoryModified() {
+        try {
+            return Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,193 @@
+package com.quickthought;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Key material of an unlocked session.
+ *
+ * The key is derived from the master password once, on unlock, instead of once per note.
+ * Every thread keeps its own initialised Cipher per session, so the loader pool can decrypt
+ * notes side by side without going through Cipher.getInstance for each of them. The session
+ * remembers every cipher it hands out, so that locking it re-keys the ciphers of the pool
+ * threads as well, not just the caller's, and it zeroes its own copy of the key bytes.
+ */
+public class EncryptionSession implements AutoCloseable {
+    // Marks notes that failed to decrypt, keeps parallel results aligned with their inputs
+    private static final String FAILED = new String("");
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    // The only long-lived copy of the key bytes; key hands them to providers without copying
+    private final byte[] keyBytes;
+    private final SecretKey key;
+    // Every thread's slot of every kind, close empties them on whichever thread they live
+    private final Set<Cipher[]> slots = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Cipher[]> encryptCiphers = ThreadLocal.withInitial(this::newSlot);
+    private final ThreadLocal<Cipher[]> decryptCiphers = ThreadLocal.withInitial(this::newSlot);
+    private final ThreadLocal<Cipher[]> gcmCiphers = ThreadLocal.withInitial(this::newSlot);
+    private volatile boolean closed = false;
+
+    private EncryptionSession(byte[] keyBytes) {
+        this.keyBytes = keyBytes;
+        this.key = new SessionKey(keyBytes);
+    }
+
+    /** Derives the session key from the master password. */
+    public static EncryptionSession unlock(String password) throws Exception {
+        return new EncryptionSession(NoteEncryption.getKeyBytes(password));
+    }
+
+    public String encrypt(String plainText) throws GeneralSecurityException {
+        byte[] encryptedBytes = cipher(encryptCiphers, () -> newCipher(Cipher.ENCRYPT_MODE)).doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encryptedBytes);
+    }
+
+    public String decrypt(String encryptedText) throws GeneralSecurityException {
+        byte[] decryptedBytes = cipher(decryptCiphers, () -> newCipher(Cipher.DECRYPT_MODE)).doFinal(Base64.getDecoder().decode(encryptedText.trim()));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decrypts many notes on the loader pool. The result lines up with the input; entries that
+     * could not be decrypted are null.
+     */
+    public List<String> decryptAll(List<String> encryptedTexts) {
+        List<String> decrypted = ParallelNoteLoader.load(encryptedTexts, text -> {
+            try {
+                return decrypt(text);
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                return FAILED;
+            }
+        });
+        List<String> results = new ArrayList<>(decrypted.size());
+        for (String text : decrypted) {
+            results.add(text == FAILED ? null : text);
+        }
+        return results;
+    }
+
+    /**
+     * Locks the session; it cannot encrypt or decrypt anything afterwards. The ciphers of all
+     * threads are re-keyed with a blank key and dropped, since a Cipher cannot be destroyed,
+     * and the key bytes are zeroed. Copies a provider made while initialising a cipher are
+     * out of reach.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        SecretKeySpec blank = new SecretKeySpec(new byte[keyBytes.length], key.getAlgorithm());
+        for (Cipher[] slot : slots) {
+            Cipher cipher = slot[0];
+            slot[0] = null;
+            if (cipher != null) {
+                try {
+                    cipher.init(Cipher.ENCRYPT_MODE, blank);
+                } catch (GeneralSecurityException e) {
+                    // Dropped either way, the blank key only overwrites what the cipher still holds
+                }
+            }
+        }
+        slots.clear();
+        encryptCiphers.remove();
+        decryptCiphers.remove();
+        gcmCiphers.remove();
+        Arrays.fill(keyBytes, (byte) 0);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    SecretKey key() {
+        if (closed) {
+            throw new IllegalStateException("Encryption session is locked");
+        }
+        return key;
+    }
+
+    /** This thread's AES-GCM cipher; every message needs its own IV, so callers init it each time. */
+    Cipher gcmCipher() {
+        return cipher(gcmCiphers, () -> {
+            try {
+                return Cipher.getInstance(GCM_TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot create cipher: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /** Number of ciphers the threads of this session still hold. */
+    int cipherCount() {
+        int count = 0;
+        for (Cipher[] slot : slots) {
+            if (slot[0] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // doFinal leaves the cipher ready for the next message, so it is initialised only once per thread
+    private Cipher cipher(ThreadLocal<Cipher[]> ciphers, Supplier<Cipher> factory) {
+        if (closed) {
+            throw new IllegalStateException("Encryption session is locked");
+        }
+        Cipher[] slot = ciphers.get();
+        if (slot[0] == null) {
+            slot[0] = factory.get();
+        }
+        return slot[0];
+    }
+
+    private Cipher[] newSlot() {
+        Cipher[] slot = new Cipher[1];
+        slots.add(slot);
+        return slot;
+    }
+
+    private Cipher newCipher(int mode) {
+        try {
+            Cipher cipher = Cipher.getInstance(NoteEncryption.TRANSFORMATION);
+            cipher.init(mode, key);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise cipher: " + e.getMessage(), e);
+        }
+    }
+
+    // A SecretKeySpec would keep a clone of the bytes that close cannot reach
+    private static final class SessionKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] bytes;
+
+        SessionKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return bytes.clone();
+        }
+    }
+}
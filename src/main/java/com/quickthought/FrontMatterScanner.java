@@ -0,0 +1,479 @@
+package com.quickthought;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single-pass scanner for the fixed QuickThought header schema (id, title, tags,
+ * created/created_at, updated/updated_at/modified).
+ *
+ * It works directly on the header characters, one line at a time, and fills a FrontMatter
+ * without building a YAML tree or Map. Whenever the header steps outside what it understands
+ * (other keys, block lists, anchors, escapes it does not know, scalars SnakeYAML would type as
+ * numbers or booleans, ...) scan returns null and the caller falls back to SnakeYAML, so both
+ * paths always agree. Timestamps are cut to milliseconds, like the Date SnakeYAML makes of them.
+ */
+final class FrontMatterScanner {
+
+    /** Header fields of one note. Timestamps are LocalDateTime, String or (from SnakeYAML) Date. */
+    static final class FrontMatter {
+        String id;
+        String title;
+        Object tags;
+        Object createdAt;
+        Object created;
+        Object updatedAt;
+        Object updated;
+        Object modified;
+
+        Object getCreated() {
+            return createdAt != null ? createdAt : created;
+        }
+
+        Object getUpdated() {
+            if (updatedAt != null) {
+                return updatedAt;
+            }
+            return updated != null ? updated : modified;
+        }
+    }
+
+    private FrontMatterScanner() {
+    }
+
+    static FrontMatter scan(CharSequence text) {
+        return scan(text, 0, text.length());
+    }
+
+    /** Scans text[start, end). Returns null if the header needs the full YAML parser. */
+    static FrontMatter scan(CharSequence text, int start, int end) {
+        FrontMatter header = new FrontMatter();
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (!scanLine(text, lineStart, trimEnd(text, lineStart, lineEnd), header)) {
+                return null;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return header;
+    }
+
+    private static boolean scanLine(CharSequence text, int from, int to, FrontMatter header) {
+        if (from == to || text.charAt(from) == '#') {
+            return true;
+        }
+        char first = text.charAt(from);
+        if (first == ' ' || first == '\t' || first == '-') {
+            // Indented continuation or block sequence
+            return false;
+        }
+
+        int colon = from;
+        while (colon < to && text.charAt(colon) != ':') {
+            colon++;
+        }
+        if (colon == to || (colon + 1 < to && text.charAt(colon + 1) != ' ')) {
+            return false;
+        }
+        int valueStart = skipSpaces(text, colon + 1, to);
+
+        String key = key(text, from, colon);
+        switch (key) {
+            case "id":
+            case "title": {
+                String value = stringValue(text, valueStart, to);
+                if (value == INVALID) {
+                    return false;
+                }
+                if (key.equals("id")) {
+                    header.id = value;
+                } else {
+                    header.title = value;
+                }
+                return true;
+            }
+            case "tags":
+                return scanTags(text, valueStart, to, header);
+            case "created_at":
+            case "created":
+            case "updated_at":
+            case "updated":
+            case "modified": {
+                Object value = timestampValue(text, valueStart, to);
+                if (value == INVALID) {
+                    return false;
+                }
+                switch (key) {
+                    case "created_at": header.createdAt = value; break;
+                    case "created": header.created = value; break;
+                    case "updated_at": header.updatedAt = value; break;
+                    case "updated": header.updated = value; break;
+                    default: header.modified = value;
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Identity sentinel for "not understood, fall back to SnakeYAML"
+    private static final String INVALID = new String("");
+
+    private static String stringValue(CharSequence text, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        int[] end = new int[1];
+        String value = scalar(text, from, to, end, false);
+        if (value == null || end[0] != to) {
+            return INVALID;
+        }
+        return value;
+    }
+
+    private static Object timestampValue(CharSequence text, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        char first = text.charAt(from);
+        if (first == '"' || first == '\'') {
+            // Quoted timestamps stay strings, exactly like SnakeYAML leaves them
+            return stringValue(text, from, to);
+        }
+        int valueEnd = plainEnd(text, from, to);
+        if (valueEnd != to) {
+            return INVALID;
+        }
+        try {
+            return LocalDateTime.parse(text.subSequence(from, valueEnd).toString().replace("Z", ""))
+                .truncatedTo(ChronoUnit.MILLIS);
+        } catch (DateTimeParseException e) {
+            // Offsets, date-only values, ... are converted by SnakeYAML
+            return INVALID;
+        }
+    }
+
+    private static boolean scanTags(CharSequence text, int from, int to, FrontMatter header) {
+        if (from == to) {
+            header.tags = null;
+            return true;
+        }
+        if (text.charAt(from) != '[') {
+            int[] end = new int[1];
+            String value = scalar(text, from, to, end, false);
+            if (value == null || end[0] != to) {
+                return false;
+            }
+            header.tags = value;
+            return true;
+        }
+
+        List<String> tags = new ArrayList<>();
+        int position = skipSpaces(text, from + 1, to);
+        if (position < to && text.charAt(position) == ']') {
+            header.tags = tags;
+            return skipSpaces(text, position + 1, to) == to;
+        }
+        while (position < to) {
+            int[] end = new int[1];
+            String tag = scalar(text, position, to, end, true);
+            if (tag == null) {
+                return false;
+            }
+            tags.add(tag);
+            position = skipSpaces(text, end[0], to);
+            if (position < to && text.charAt(position) == ',') {
+                position = skipSpaces(text, position + 1, to);
+            } else if (position < to && text.charAt(position) == ']') {
+                header.tags = tags;
+                return skipSpaces(text, position + 1, to) == to;
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads one scalar starting at from. end[0] receives the position after it (trailing
+     * spaces and comments skipped). Returns null for anything SnakeYAML would not read as a
+     * plain string.
+     */
+    private static String scalar(CharSequence text, int from, int to, int[] end, boolean inFlow) {
+        char first = text.charAt(from);
+        StringBuilder value = new StringBuilder();
+        int position;
+        if (first == '"') {
+            position = from + 1;
+            while (true) {
+                if (position >= to) {
+                    return null;
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    break;
+                }
+                if (c == '\\') {
+                    if (position >= to) {
+                        return null;
+                    }
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case '"': value.append('"'); break;
+                        case '\\': value.append('\\'); break;
+                        case '/': value.append('/'); break;
+                        case 'n': value.append('\n'); break;
+                        case 't': value.append('\t'); break;
+                        default: return null;
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        } else if (first == '\'') {
+            position = from + 1;
+            while (true) {
+                if (position >= to) {
+                    return null;
+                }
+                char c = text.charAt(position++);
+                if (c == '\'') {
+                    if (position < to && text.charAt(position) == '\'') {
+                        value.append('\'');
+                        position++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        } else {
+            if ("[]{}&*!|>%@`".indexOf(first) >= 0 || first == '#' || first == ',') {
+                return null;
+            }
+            position = inFlow ? flowPlainEnd(text, from, to) : plainEnd(text, from, to);
+            String plain = text.subSequence(from, position).toString();
+            if (plain.contains(": ") || !isPlainString(plain)) {
+                return null;
+            }
+            value.append(plain);
+        }
+
+        position = skipSpaces(text, position, to);
+        if (!inFlow && position < to && text.charAt(position) == '#') {
+            position = to;
+        }
+        end[0] = position;
+        return value.toString();
+    }
+
+    // End of a plain scalar: before a " #" comment, trailing spaces trimmed
+    private static int plainEnd(CharSequence text, int from, int to) {
+        int position = from;
+        while (position < to) {
+            if (text.charAt(position) == '#' && position > from && text.charAt(position - 1) == ' ') {
+                break;
+            }
+            position++;
+        }
+        return trimEnd(text, from, position);
+    }
+
+    private static int flowPlainEnd(CharSequence text, int from, int to) {
+        int position = from;
+        while (position < to && text.charAt(position) != ',' && text.charAt(position) != ']') {
+            position++;
+        }
+        return trimEnd(text, from, position);
+    }
+
+    // Plain scalars SnakeYAML reads as booleans, null, a merge key, a YAML marker, infinity or NaN
+    private static final Set<String> KEYWORDS = Set.of(
+            "yes", "Yes", "YES", "no", "No", "NO", "true", "True", "TRUE", "false", "False", "FALSE",
+            "on", "On", "ON", "off", "Off", "OFF", "~", "null", "Null", "NULL", " ", "<<", "!", "&", "*",
+            ".inf", ".Inf", ".INF", "+.inf", "+.Inf", "+.INF", "-.inf", "-.Inf", "-.INF", ".nan", ".NaN", ".NAN");
+    private static final String DECIMAL = "0123456789";
+
+    /**
+     * False for plain scalars that SnakeYAML resolves to null, booleans, numbers or dates. The
+     * YAML 1.1 implicit types of its Resolver, checked by hand instead of by a regex per type.
+     */
+    static boolean isPlainString(String plain) {
+        return !plain.isEmpty() && !KEYWORDS.contains(plain) && !isNumber(plain) && !isTimestamp(plain);
+    }
+
+    // Ints in base 2, 8, 10, 16 or 60 and floats with an optional exponent, '_' allowed between digits
+    private static boolean isNumber(String plain) {
+        int length = plain.length();
+        int from = plain.charAt(0) == '-' || plain.charAt(0) == '+' ? 1 : 0;
+        if (from == length) {
+            return false;
+        }
+        char first = plain.charAt(from);
+        if (first == '.') {
+            int end = span(plain, from + 1, DECIMAL + "_");
+            return end > from + 1 && isExponent(plain, end);
+        }
+        if (DECIMAL.indexOf(first) < 0) {
+            return false;
+        }
+        if (first == '0' && from + 1 < length && plain.charAt(from + 1) == 'b') {
+            return isDigits(plain, from + 2, "01");
+        }
+        if (first == '0' && from + 1 < length && plain.charAt(from + 1) == 'x') {
+            return isDigits(plain, from + 2, "0123456789abcdefABCDEF");
+        }
+        int end = span(plain, from + 1, DECIMAL + "_");
+        if (end == length) {
+            // A leading zero makes it octal
+            return first != '0' || end == from + 1 || isDigits(plain, from + 1, "01234567");
+        }
+        switch (plain.charAt(end)) {
+            case '.':
+                return isExponent(plain, span(plain, end + 1, DECIMAL + "_"));
+            case 'e':
+            case 'E':
+                return isExponent(plain, end);
+            case ':': {
+                int position = sexagesimalEnd(plain, end);
+                if (position == length) {
+                    return first != '0';
+                }
+                return position > 0 && plain.charAt(position) == '.'
+                        && span(plain, position + 1, DECIMAL + "_") == length;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Nothing left, or an exponent that ends the scalar
+    private static boolean isExponent(String plain, int from) {
+        if (from == plain.length()) {
+            return true;
+        }
+        if (plain.charAt(from) != 'e' && plain.charAt(from) != 'E') {
+            return false;
+        }
+        from++;
+        if (from < plain.length() && (plain.charAt(from) == '-' || plain.charAt(from) == '+')) {
+            from++;
+        }
+        int end = span(plain, from, DECIMAL);
+        return end > from && end == plain.length();
+    }
+
+    // The rest is digits and underscores, with at least one digit
+    private static boolean isDigits(String plain, int from, String digits) {
+        int underscores = span(plain, from, "_");
+        return underscores < plain.length() && span(plain, underscores, digits + "_") == plain.length();
+    }
+
+    // End of the ":59" groups starting at from, -1 if one of them is not a valid group
+    private static int sexagesimalEnd(String plain, int from) {
+        int position = from;
+        while (position < plain.length() && plain.charAt(position) == ':') {
+            int end = span(plain, position + 1, DECIMAL);
+            if (end == position + 1 || end > position + 3 || (end == position + 3 && plain.charAt(position + 1) > '5')) {
+                return -1;
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    // 2025-07-31, or 2025-7-31 10:00:00.5 +02:00 with 'T' or spaces between date and time
+    private static boolean isTimestamp(String plain) {
+        int length = plain.length();
+        if (length > 50) {
+            return false;
+        }
+        int year = digits(plain, 0, 4, 4);
+        int month = expect(plain, year, '-') ? digits(plain, year + 1, 1, 2) : -1;
+        int day = expect(plain, month, '-') ? digits(plain, month + 1, 1, 2) : -1;
+        if (day < 0) {
+            return false;
+        }
+        if (day == length) {
+            return month == year + 3 && day == month + 3;
+        }
+        int position = day;
+        if (plain.charAt(position) == 'T' || plain.charAt(position) == 't') {
+            position++;
+        } else {
+            position = span(plain, position, " \t");
+            if (position == day) {
+                return false;
+            }
+        }
+        int hour = digits(plain, position, 1, 2);
+        int minute = expect(plain, hour, ':') ? digits(plain, hour + 1, 2, 2) : -1;
+        position = expect(plain, minute, ':') ? digits(plain, minute + 1, 2, 2) : -1;
+        if (expect(plain, position, '.')) {
+            position = span(plain, position + 1, DECIMAL);
+        }
+        if (position < 0 || position == length) {
+            return position == length;
+        }
+        position = span(plain, position, " \t");
+        if (expect(plain, position, 'Z')) {
+            return position + 1 == length;
+        }
+        if (!expect(plain, position, '-') && !expect(plain, position, '+')) {
+            return false;
+        }
+        position = digits(plain, position + 1, 1, 2);
+        if (expect(plain, position, ':')) {
+            position = digits(plain, position + 1, 2, 2);
+        }
+        return position == length;
+    }
+
+    // Position after min to max digits at from, -1 if there are fewer
+    private static int digits(String plain, int from, int min, int max) {
+        if (from < 0) {
+            return -1;
+        }
+        int end = Math.min(span(plain, from, DECIMAL), from + max);
+        return end - from >= min ? end : -1;
+    }
+
+    private static boolean expect(String plain, int position, char c) {
+        return position >= 0 && position < plain.length() && plain.charAt(position) == c;
+    }
+
+    private static int span(String plain, int from, String chars) {
+        while (from < plain.length() && chars.indexOf(plain.charAt(from)) >= 0) {
+            from++;
+        }
+        return from;
+    }
+
+    private static String key(CharSequence text, int from, int to) {
+        return text.subSequence(from, trimEnd(text, from, to)).toString();
+    }
+
+    private static int skipSpaces(CharSequence text, int from, int to) {
+        while (from < to && (text.charAt(from) == ' ' || text.charAt(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(CharSequence text, int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+}
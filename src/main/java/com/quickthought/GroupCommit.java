@@ -0,0 +1,255 @@
+package com.quickthought;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Crash-safe note writes without an fsync of the directory per note.
+ *
+ * A write goes to a temporary file that is forced to disk and then renamed over the note, so
+ * after a crash the note is either the old or the new version. The rename itself is only
+ * durable once the directory is synced, and that sync is shared: the first writer to ask
+ * waits a short window, then syncs every directory (or file) requested so far while the
+ * others wait for it; writers arriving during that sync are covered by the next round.
+ *
+ * Inside a batch (see begin) writes do not wait at all; closing the batch runs one round for
+ * everything written meanwhile. A batch only covers the thread that began it and work run
+ * through Batch.wrap, writes of other threads stay durable on return.
+ */
+public class GroupCommit {
+    static final long DEFAULT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final long windowNanos;
+    private final Object lock = new Object();
+    private Round next = new Round();
+    private boolean syncing = false;
+    private long rounds = 0;
+    // Batch the calling thread writes in, if any
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+    public GroupCommit() {
+        this(DEFAULT_WINDOW_NANOS);
+    }
+
+    GroupCommit(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /** Atomically replaces the file and returns once the new version survives a crash. */
+    public void write(Path file, byte[] content) throws IOException {
+        writeFile(file, content);
+        sync(file.getParent());
+    }
+
+    /** Temporary file, force, rename; the directory entry is not synced. */
+    static void writeFile(Path file, byte[] content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Syncs the given directories or files to disk, sharing the fsync with every other caller
+     * of the same round. Inside a batch this only records them for the end of the batch.
+     */
+    public void sync(Path... paths) throws IOException {
+        Batch batch = currentBatch.get();
+        if (batch != null) {
+            batch.defer(paths);
+            return;
+        }
+        syncNow(paths);
+    }
+
+    /**
+     * Starts a batch on the calling thread: until it is closed, writes of this thread (and of
+     * work run through Batch.wrap) return without waiting for their sync. Closing it makes
+     * everything written in it durable with a single round. Batches nest; an inner one hands
+     * its syncs to the outer one.
+     */
+    public Batch begin() {
+        Batch batch = new Batch(currentBatch.get());
+        currentBatch.set(batch);
+        return batch;
+    }
+
+    /** Number of sync rounds run so far. */
+    long getRounds() {
+        synchronized (lock) {
+            return rounds;
+        }
+    }
+
+    private void syncNow(Path... paths) throws IOException {
+        if (paths.length == 0) {
+            return;
+        }
+        Round round;
+        synchronized (lock) {
+            for (Path path : paths) {
+                next.paths.add(path);
+            }
+            round = next;
+            while (!round.done && syncing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for sync", e);
+                }
+            }
+            if (round.done) {
+                if (round.failure != null) {
+                    throw round.failure;
+                }
+                return;
+            }
+            if (round.paths.isEmpty()) {
+                return;
+            }
+            syncing = true;
+        }
+
+        // This caller leads the round; give others a moment to join it
+        if (windowNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(windowNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (lock) {
+            next = new Round();
+            rounds++;
+        }
+        IOException failure = null;
+        for (Path path : round.paths) {
+            try {
+                force(path);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        synchronized (lock) {
+            round.failure = failure;
+            round.done = true;
+            syncing = false;
+            lock.notifyAll();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Gone since (e.g. a compacted segment), nothing left to sync
+            return;
+        } catch (IOException e) {
+            if (Files.isDirectory(path)) {
+                // Some platforms cannot open directories, the rename is as durable as it gets there
+                return;
+            }
+            throw e;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /** A group of writes made durable together, see begin. */
+    public final class Batch implements Closeable {
+        private final Batch outer;
+        private final Set<Path> deferred = new LinkedHashSet<>();
+        private boolean closed = false;
+
+        private Batch(Batch outer) {
+            this.outer = outer;
+        }
+
+        /** The function, writing in this batch on whichever thread it runs (e.g. the loader pool). */
+        public <T, R> Function<T, R> wrap(Function<T, R> function) {
+            return value -> {
+                Batch previous = currentBatch.get();
+                currentBatch.set(this);
+                try {
+                    return function.apply(value);
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            Path[] paths;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                paths = deferred.toArray(new Path[0]);
+            }
+            if (currentBatch.get() == this) {
+                restore(outer);
+            }
+            if (outer != null) {
+                outer.defer(paths);
+            } else {
+                syncNow(paths);
+            }
+        }
+
+        // Syncs arriving after close (a wrapped task still running) are not deferred any more
+        private void defer(Path... paths) throws IOException {
+            synchronized (this) {
+                if (!closed) {
+                    for (Path path : paths) {
+                        deferred.add(path);
+                    }
+                    return;
+                }
+            }
+            syncNow(paths);
+        }
+    }
+
+    private void restore(Batch batch) {
+        if (batch != null) {
+            currentBatch.set(batch);
+        } else {
+            currentBatch.remove();
+        }
+    }
+
+    private static class Round {
+        final Set<Path> paths = new LinkedHashSet<>();
+        IOException failure;
+        boolean done = false;
+    }
+}
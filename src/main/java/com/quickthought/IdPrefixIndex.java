@@ -0,0 +1,113 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Sorted index of note ids for partial-ID lookups ("read abc123").
+ *
+ * It is built from file names alone (<uuid>.md and <uuid>.md.enc), so no note file is ever
+ * opened. A lookup is a binary search for the first id with the prefix followed by a short
+ * walk over the ids that share it.
+ */
+public class IdPrefixIndex {
+    private final Path directory;
+    private final FileTime directoryModified;
+    private final String[] ids;
+    private final String[] fileNames;
+
+    private IdPrefixIndex(Path directory, FileTime directoryModified, String[] ids, String[] fileNames) {
+        this.directory = directory;
+        this.directoryModified = directoryModified;
+        this.ids = ids;
+        this.fileNames = fileNames;
+    }
+
+    public static IdPrefixIndex build(Path directory) throws IOException {
+        return build(directory, Collections.emptyList());
+    }
+
+    /**
+     * Same, plus the notes of a store without note files, which are listed as <id>.md. Writes
+     * to such a store do not touch the directory, so the caller rebuilds after them.
+     */
+    public static IdPrefixIndex build(Path directory, Collection<UUID> storedIds) throws IOException {
+        // Read the mtime first: anything added while listing makes the index look stale
+        FileTime modified = Files.getLastModifiedTime(directory);
+        List<String> names;
+        try (Stream<Path> files = Files.list(directory)) {
+            names = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".md") || name.endsWith(".md.enc"))
+                    .collect(Collectors.toList());
+        }
+        for (UUID id : storedIds) {
+            names.add(id + ".md");
+        }
+        names.sort(null);
+
+        // Sorting by file name also sorts by id; a note present as both .md and .md.enc
+        // keeps its plain file, which sorts first
+        List<String> ids = new ArrayList<>(names.size());
+        List<String> fileNames = new ArrayList<>(names.size());
+        for (String name : names) {
+            String id = stripExtension(name).toLowerCase(Locale.ROOT);
+            if (!ids.isEmpty() && ids.get(ids.size() - 1).equals(id)) {
+                continue;
+            }
+            ids.add(id);
+            fileNames.add(name);
+        }
+        return new IdPrefixIndex(directory, modified,
+                ids.toArray(new String[0]), fileNames.toArray(new String[0]));
+    }
+
+    /** False once files were added to or removed from the directory. */
+    public boolean isCurrent() {
+        try {
+            return Files.getLastModifiedTime(directory).equals(directoryModified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /** File names of the notes whose id starts with the prefix, at most limit of them. */
+    public List<String> find(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int position = Arrays.binarySearch(ids, key);
+        if (position < 0) {
+            position = -position - 1;
+        }
+
+        List<String> matches = new ArrayList<>();
+        while (position < ids.length && ids[position].startsWith(key) && matches.size() < limit) {
+            matches.add(fileNames[position]);
+            position++;
+        }
+        return matches;
+    }
+
+    static String stripExtension(String fileName) {
+        if (fileName.endsWith(".md.enc")) {
+            return fileName.substring(0, fileName.length() - ".md.enc".length());
+        }
+        if (fileName.endsWith(".md")) {
+            return fileName.substring(0, fileName.length() - ".md".length());
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,171 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory copy of every note in the working directory for a long-running session (the REPL).
+ *
+ * The directory is loaded once. A WatchService thread records files that were created,
+ * modified or deleted afterwards (by nano, another process, ...), and only those files are
+ * re-read the next time the cache is asked for notes. Writes done by the session itself should
+ * call invalidate, so they are visible right away rather than when the watch event arrives.
+ */
+public class LiveNoteCache implements AutoCloseable {
+    private final Path directory;
+    private final Predicate<Path> fileFilter;
+    private final Function<Path, Note> loader;
+    private final Map<Path, Note> notes = new TreeMap<>();
+    private final Set<Path> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean reloadAll = true;
+    private volatile boolean watching = false;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public LiveNoteCache(Path directory, Predicate<Path> fileFilter, Function<Path, Note> loader) {
+        this.directory = directory;
+        this.fileFilter = fileFilter;
+        this.loader = loader;
+    }
+
+    /** Starts watching the directory. Without a watch service every read reloads from disk. */
+    public void start() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.err.println("Warning: Cannot watch notes directory, caching disabled: " + e.getMessage());
+            watchService = null;
+            return;
+        }
+        watching = true;
+
+        watcher = new Thread(this::watch, "quickthought-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /** Notes whose file names pass the filter, in file name order. */
+    public synchronized List<Note> getNotes(Predicate<Path> filter) {
+        refresh();
+        List<Note> result = new ArrayList<>();
+        for (Map.Entry<Path, Note> entry : notes.entrySet()) {
+            if (filter.test(entry.getKey())) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** The cached note for one file, or null if there is no such note. */
+    public synchronized Note getNote(Path file) {
+        refresh();
+        return notes.get(directory.resolve(file.getFileName()));
+    }
+
+    /** Marks a file as changed; it is re-read on the next access. */
+    public void invalidate(Path file) {
+        dirty.add(directory.resolve(file.getFileName()));
+    }
+
+    /** Marks all cached files matching the filter as changed (e.g. encrypted notes on lock/unlock). */
+    public synchronized void invalidate(Predicate<Path> filter) {
+        for (Path file : notes.keySet()) {
+            if (filter.test(file)) {
+                dirty.add(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        watching = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Shutting down anyway
+            }
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    private void refresh() {
+        if (reloadAll || !watching) {
+            reloadAll = false;
+            dirty.clear();
+            notes.clear();
+            try {
+                List<Path> files = ParallelNoteLoader.listFiles(directory, fileFilter);
+                List<Note> loaded = ParallelNoteLoader.load(files, this::loadOrMissing);
+                for (int i = 0; i < files.size(); i++) {
+                    if (loaded.get(i) != MISSING) {
+                        notes.put(files.get(i), loaded.get(i));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading notes directory: " + e.getMessage());
+            }
+            return;
+        }
+
+        for (Path file : new ArrayList<>(dirty)) {
+            dirty.remove(file);
+            Note note = fileFilter.test(file) && Files.exists(file) ? loader.apply(file) : null;
+            if (note != null) {
+                notes.put(file, note);
+            } else {
+                notes.remove(file);
+            }
+        }
+    }
+
+    // Keeps parallel results aligned with their paths
+    private static final Note MISSING = new Note("", "", null);
+
+    private Note loadOrMissing(Path file) {
+        Note note = loader.apply(file);
+        return note != null ? note : MISSING;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, start over
+                        reloadAll = true;
+                    } else {
+                        dirty.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    // Directory is gone or no longer watchable
+                    watching = false;
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Cache closed
+            watching = false;
+        }
+    }
+}
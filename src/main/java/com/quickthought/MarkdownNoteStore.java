@@ -0,0 +1,112 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The default store: every note is a <uuid>.md file in the working directory, readable and
+ * editable with any text editor.
+ *
+ * Other .md files dropped into the directory by hand are notes too: files lists them, so they
+ * are loaded, listed and searched like the rest. They are not named after their id, so list
+ * and the id-based methods do not see them; NoteManager finds them by their front matter.
+ */
+public class MarkdownNoteStore implements NoteStore {
+    static final String NAME = "markdown";
+
+    private final Path directory;
+    private final GroupCommit commit = new GroupCommit();
+
+    public MarkdownNoteStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<UUID> list() throws IOException {
+        List<UUID> ids = new ArrayList<>();
+        for (Path path : ParallelNoteLoader.listFiles(directory, p -> p.toString().endsWith(".md"))) {
+            try {
+                ids.add(UUID.fromString(IdPrefixIndex.stripExtension(path.getFileName().toString())));
+            } catch (IllegalArgumentException e) {
+                // Not named after a note id
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean contains(UUID id) {
+        return Files.exists(fileOf(id));
+    }
+
+    @Override
+    public byte[] read(UUID id) throws IOException {
+        Path file = fileOf(id);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    @Override
+    public void write(UUID id, byte[] content) throws IOException {
+        commit.write(fileOf(id), content);
+    }
+
+    @Override
+    public boolean delete(UUID id) throws IOException {
+        return Files.deleteIfExists(fileOf(id));
+    }
+
+    // Only files named after a note id, anything else in the directory is left alone
+    @Override
+    public void clear() throws IOException {
+        for (UUID id : list()) {
+            delete(id);
+        }
+    }
+
+    @Override
+    public Path fileOf(UUID id) {
+        return directory.resolve(id + ".md");
+    }
+
+    @Override
+    public List<Path> files() throws IOException {
+        return ParallelNoteLoader.listFiles(directory, p -> p.toString().endsWith(".md"));
+    }
+
+    /** Only the <uuid>.md files, in file name order. */
+    List<Path> noteFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (UUID id : list()) {
+            files.add(fileOf(id));
+        }
+        return files;
+    }
+
+    @Override
+    public boolean isFlat() {
+        return true;
+    }
+
+    @Override
+    public GroupCommit.Batch beginBatch() {
+        return commit.begin();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Number of syncs to disk so far, see GroupCommit. */
+    long getSyncRounds() {
+        return commit.getRounds();
+    }
+}
@@ -0,0 +1,153 @@
+package com.quickthought;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of parsed notes, bounded by an approximate memory budget rather than an entry count.
+ *
+ * Each entry weighs roughly what its title and content take in memory, and remembers the mtime
+ * and size of the file it was parsed from; a lookup with different file attributes is a miss.
+ * The budget comes from the quickthought.cache.bytes system property (default 32 MiB, 0 turns
+ * the cache off).
+ */
+public class NoteCache {
+    public static final String MAX_BYTES_PROPERTY = "quickthought.cache.bytes";
+
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public NoteCache() {
+        this(Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    public NoteCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /** Cached note for the file, provided it was parsed from a file with the same mtime and size. */
+    public synchronized Note get(Path file, long fileModified, long fileSize) {
+        Entry entry = entries.get(file);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.fileModified != fileModified || entry.fileSize != fileSize) {
+            remove(file);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.note;
+    }
+
+    public synchronized void put(Path file, Note note, long fileModified, long fileSize) {
+        long weight = weigh(note);
+        remove(file);
+        if (weight > maxBytes) {
+            return;
+        }
+        entries.put(file, new Entry(note, fileModified, fileSize, weight));
+        currentBytes += weight;
+
+        Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(Path file) {
+        remove(file);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, entries.size(), currentBytes, maxBytes);
+    }
+
+    private void remove(Path file) {
+        Entry entry = entries.remove(file);
+        if (entry != null) {
+            currentBytes -= entry.weight;
+        }
+    }
+
+    // Strings are UTF-16 in memory, plus a rough allowance for the Note and map entry
+    private static long weigh(Note note) {
+        long chars = note.getContent().length() + (note.getTitle() != null ? note.getTitle().length() : 0);
+        return 2 * chars + ENTRY_OVERHEAD;
+    }
+
+    private static final class Entry {
+        final Note note;
+        final long fileModified;
+        final long fileSize;
+        final long weight;
+
+        Entry(Note note, long fileModified, long fileSize, long weight) {
+            this.note = note;
+            this.fileModified = fileModified;
+            this.fileSize = fileSize;
+            this.weight = weight;
+        }
+    }
+
+    /** Snapshot of the cache counters. */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long maxBytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses, %d evictions (%d notes, %d/%d bytes)",
+                hits, misses, evictions, entries, bytes, maxBytes);
+        }
+    }
+}
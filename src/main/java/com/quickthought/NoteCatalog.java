@@ -0,0 +1,303 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Catalog sidecar (.quickthought_catalog) holding one metadata record per plain note file,
+ * so list and stats do not have to read and parse note bodies.
+ *
+ * Each record remembers the mtime and size of the file it was taken from. Records that no
+ * longer match their file (edited in nano, replaced by hand, ...) are re-parsed on read.
+ */
+public class NoteCatalog {
+    static final String CATALOG_FILE = ".quickthought_catalog";
+
+    // Placeholder for files that could not be read, keeps parallel results aligned with their paths
+    private static final NoteSummary MISSING = new NoteSummary(new UUID(0, 0), "", null, null, null, 0, 0, 0);
+
+    private final Path directory;
+    private final SidecarJournal journal;
+    private final Map<String, NoteSummary> entries = new HashMap<>();
+    private boolean loaded = false;
+
+    public NoteCatalog(String workingDirectory) {
+        this.directory = Paths.get(workingDirectory);
+        this.journal = new SidecarJournal(directory, CATALOG_FILE);
+    }
+
+    /**
+     * Returns a summary for every .md file in the directory, in file name order. Files without
+     * a valid catalog record are read with the given loader and recorded.
+     */
+    public List<NoteSummary> getSummaries(Function<Path, NoteSummary> loader) {
+        List<Path> files;
+        try {
+            files = ParallelNoteLoader.listFiles(directory, p -> p.toString().endsWith(".md"));
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        return getSummaries(files, loader);
+    }
+
+    /**
+     * Same for the given note files, which may live in subdirectories (see ShardedNoteStore);
+     * records are keyed by file name, which is unique because it is the note id.
+     */
+    public synchronized List<NoteSummary> getSummaries(List<Path> files, Function<Path, NoteSummary> loader) {
+        ensureLoaded();
+
+        List<NoteSummary> summaries = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        List<Path> stale = new ArrayList<>();
+
+        for (Path path : files) {
+            String fileName = path.getFileName().toString();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // Deleted since the listing; its record goes with the other unseen ones
+                continue;
+            } catch (IOException e) {
+                // Let the loader try, a file it cannot read either is left out
+                System.err.println("Warning: Could not read " + fileName + ": " + e.getMessage());
+                seen.add(fileName);
+                stale.add(path);
+                continue;
+            }
+            seen.add(fileName);
+
+            NoteSummary summary = entries.get(fileName);
+            long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            if (summary == null || summary.getFileModified() != modified
+                    || summary.getFileSize() != attributes.size()) {
+                stale.add(path);
+            }
+        }
+
+        // Re-read everything that changed in one parallel pass
+        List<String> staleNames = new ArrayList<>();
+        for (Path path : stale) {
+            staleNames.add(path.getFileName().toString());
+        }
+        List<NoteSummary> refreshed = ParallelNoteLoader.load(stale, path -> {
+            NoteSummary summary = loadSummary(path, loader);
+            return summary != null ? summary : MISSING;
+        });
+        for (int i = 0; i < stale.size(); i++) {
+            String fileName = staleNames.get(i);
+            NoteSummary summary = refreshed.get(i);
+            if (summary == MISSING) {
+                if (entries.remove(fileName) != null) {
+                    changes.add(deleteRecord(fileName));
+                }
+                seen.remove(fileName);
+            } else {
+                entries.put(fileName, summary);
+                changes.add(addRecord(fileName, summary));
+            }
+        }
+
+        for (String fileName : new ArrayList<>(entries.keySet())) {
+            if (!seen.contains(fileName)) {
+                entries.remove(fileName);
+                changes.add(deleteRecord(fileName));
+            }
+        }
+        appendChanges(changes);
+
+        List<String> names = new ArrayList<>(seen);
+        Collections.sort(names);
+        for (String fileName : names) {
+            summaries.add(entries.get(fileName));
+        }
+        return summaries;
+    }
+
+    /** Records a note that NoteManager just wrote to the given file and returns its summary. */
+    public synchronized NoteSummary update(Path file, Note note) {
+        return updateAll(List.of(file), List.of(note)).get(0);
+    }
+
+    /**
+     * Same as update for many notes (files.get(i) holds notes.get(i)), with a single journal
+     * append. A summary is null where the file could not be read.
+     */
+    public synchronized List<NoteSummary> updateAll(List<Path> files, List<Note> notes) {
+        List<NoteSummary> summaries = new ArrayList<>(notes.size());
+        List<String> changes = new ArrayList<>(notes.size());
+        for (int i = 0; i < notes.size(); i++) {
+            Path file = files.get(i);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                NoteSummary summary = NoteSummary.of(notes.get(i),
+                        attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size());
+                String fileName = file.getFileName().toString();
+                if (loaded) {
+                    entries.put(fileName, summary);
+                }
+                changes.add(addRecord(fileName, summary));
+                summaries.add(summary);
+            } catch (IOException e) {
+                System.err.println("Warning: Could not update note catalog: " + e.getMessage());
+                summaries.add(null);
+            }
+        }
+        appendChanges(changes);
+        return summaries;
+    }
+
+    /** Forgets a note file that NoteManager just deleted. */
+    public synchronized void remove(Path file) {
+        String fileName = file.getFileName().toString();
+        if (loaded) {
+            entries.remove(fileName);
+        }
+        if (journal.exists()) {
+            appendChanges(List.of(deleteRecord(fileName)));
+        }
+    }
+
+    /** Rewrites the catalog file without the records of removed notes, see SidecarJournal.dropDeleted. */
+    public synchronized void dropDeleted() {
+        try {
+            journal.dropDeleted();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not rewrite note catalog: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    /** Forgets every record; the catalog is rebuilt from the note files on next use. */
+    public synchronized void invalidate() {
+        entries.clear();
+        loaded = false;
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not remove note catalog: " + e.getMessage());
+        }
+    }
+
+    private NoteSummary loadSummary(Path path, Function<Path, NoteSummary> loader) {
+        try {
+            return loader.apply(path);
+        } catch (RuntimeException e) {
+            System.err.println("Warning: Could not load note from " + path.getFileName());
+            return null;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!journal.exists()) {
+            return;
+        }
+        try {
+            for (String line : journal.readLines()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if ("D".equals(fields[0])) {
+                    entries.remove(SidecarJournal.unescape(fields[1]));
+                } else {
+                    entries.put(SidecarJournal.unescape(fields[1]), parseRecord(fields));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: Note catalog unreadable, rebuilding: " + e.getMessage());
+            entries.clear();
+            try {
+                journal.delete();
+            } catch (IOException ignored) {
+                // Rewritten on the next compaction anyway
+            }
+        }
+    }
+
+    private void appendChanges(List<String> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            if (loaded && journal.needsCompaction(entries.size())) {
+                List<String> lines = new ArrayList<>(entries.size());
+                for (Map.Entry<String, NoteSummary> entry : entries.entrySet()) {
+                    lines.add(addRecord(entry.getKey(), entry.getValue()));
+                }
+                journal.rewrite(lines);
+            } else {
+                journal.appendAll(changes);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not update note catalog: " + e.getMessage());
+        }
+    }
+
+    // Also the record format of EncryptedSearchIndex
+    static String addRecord(String fileName, NoteSummary summary) {
+        List<String> tags = new ArrayList<>();
+        for (String tag : summary.getTags()) {
+            tags.add(SidecarJournal.escape(tag));
+        }
+        return String.join("\t",
+                "A",
+                SidecarJournal.escape(fileName),
+                summary.getId().toString(),
+                Long.toString(summary.getFileModified()),
+                Long.toString(summary.getFileSize()),
+                String.valueOf(summary.getCreatedAt()),
+                String.valueOf(summary.getUpdatedAt()),
+                Integer.toString(summary.getContentLength()),
+                String.join(",", tags),
+                SidecarJournal.escape(summary.getTitle()));
+    }
+
+    private static String deleteRecord(String fileName) {
+        return "D\t" + SidecarJournal.escape(fileName);
+    }
+
+    static NoteSummary parseRecord(String[] fields) {
+        List<String> tags = new ArrayList<>();
+        if (!fields[8].isEmpty()) {
+            for (String tag : fields[8].split(",")) {
+                tags.add(SidecarJournal.unescape(tag));
+            }
+        }
+        return new NoteSummary(
+                UUID.fromString(fields[2]),
+                SidecarJournal.unescape(fields[9]),
+                tags,
+                parseTime(fields[5]),
+                parseTime(fields[6]),
+                Integer.parseInt(fields[7]),
+                Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]));
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        return "null".equals(value) ? null : LocalDateTime.parse(value);
+    }
+}
@@ -1,45 +1,43 @@
 package com.quickthought;
 
-import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.MessageDigest;
-import java.util.Base64;
 
 public class NoteEncryption {
     private static final String ALGORITHM = "AES";
-    private static final String TRANSFORMATION = "AES";
+    static final String TRANSFORMATION = "AES";
     
     /**
      * Creates an encryption key from a password using SHA-256
      */
     public static SecretKeySpec getKeyFromPassword(String password) throws Exception {
+        return new SecretKeySpec(getKeyBytes(password), ALGORITHM);
+    }
+
+    /** The raw key bytes behind getKeyFromPassword, a new array the caller owns. */
+    static byte[] getKeyBytes(String password) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] keyBytes = digest.digest(password.getBytes("UTF-8"));
-        return new SecretKeySpec(keyBytes, ALGORITHM);
+        return digest.digest(password.getBytes("UTF-8"));
     }
     
     /**
-     * Encrypts plain text using AES encryption
+     * Encrypts plain text using AES encryption.
+     * Derives the key on every call; use an EncryptionSession for more than one note.
      */
     public static String encrypt(String plainText, String password) throws Exception {
-        SecretKeySpec key = getKeyFromPassword(password);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes("UTF-8"));
-        return Base64.getEncoder().encodeToString(encryptedBytes);
+        try (EncryptionSession session = EncryptionSession.unlock(password)) {
+            return session.encrypt(plainText);
+        }
     }
     
     /**
-     * Decrypts encrypted text using AES decryption
+     * Decrypts encrypted text using AES decryption.
+     * Derives the key on every call; use an EncryptionSession for more than one note.
      */
     public static String decrypt(String encryptedText, String password) throws Exception {
-        SecretKeySpec key = getKeyFromPassword(password);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        
-        byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedText));
-        return new String(decryptedBytes, "UTF-8");
+        try (EncryptionSession session = EncryptionSession.unlock(password)) {
+            return session.decrypt(encryptedText);
+        }
     }
     
     /**
@@ -2,15 +2,27 @@ package com.quickthought;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.time.LocalDateTime;
 import java.nio.file.*;
 import java.io.*;
@@ -19,68 +31,698 @@ public class NoteManager {
 
     private final String workingDirectory;
     private final YAMLParse yamlParser;
+    private final SearchIndex searchIndex;
+    private final TrigramIndex trigramIndex;
+    private final TitleIndex titleIndex;
+    private final TagIndex tagIndex;
+    private final NoteCatalog catalog;
+    private final SearchSnapshot snapshot;
+    private final NoteCache noteCache;
+    // Replaced by migrateStore
+    private volatile NoteStore store;
+    // Set by enableWriteBehind
+    private volatile WriteBehindQueue writeBehind;
 
     public NoteManager(String workingDirectory) {
         this.workingDirectory = workingDirectory;
         this.yamlParser = new YAMLParse();
+        this.searchIndex = new SearchIndex(workingDirectory, this::listNoteFiles);
+        this.trigramIndex = new TrigramIndex(workingDirectory);
+        this.titleIndex = new TitleIndex(workingDirectory);
+        this.tagIndex = new TagIndex(workingDirectory);
+        this.catalog = new NoteCatalog(workingDirectory);
+        this.snapshot = new SearchSnapshot(workingDirectory);
+        this.noteCache = new NoteCache();
 
         File dir = new File(workingDirectory);
         if(!dir.exists()) {
             dir.mkdirs();
         }
+        try {
+            this.store = NoteStore.open(dir.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open note store", e);
+        }
     }
      
     public Note createNote(String title, String content, List<String> tags) {
         Note note = new Note(title, content, tags);
-        
+        queueOrSave(note, "Failed to save note");
+        return note;
+    }
+
+    /**
+     * From now on new notes are queued (at most capacity of them) and written by a background
+     * thread, so createNote and parseAndCreateNote return right away. getNote sees queued
+     * notes; every other read, delete and edit first waits for the queue to drain. Notes that
+     * fail to be written are retried, and close throws if some still cannot be.
+     */
+    public synchronized void enableWriteBehind(int capacity) {
+        if (writeBehind == null) {
+            writeBehind = new WriteBehindQueue(capacity, this::saveNotes);
+        }
+    }
+
+    /** Waits until every queued note is written; a no-op without write-behind. */
+    public void flushWrites() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    private void queueOrSave(Note note, String failureMessage) {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.submit(note);
+        } else {
+            saveNote(note, failureMessage);
+        }
+    }
+
+    /**
+     * Writes many notes at once (bulk import): the notes are serialized and written in
+     * parallel inside one store batch, so they share a single sync to disk, and each index
+     * gets one journal append for all of them. Returns the reason for every note that could
+     * not be written, by id.
+     */
+    public Map<UUID, String> saveNotes(List<Note> notes) {
+        flushWrites();
+        searchIndex.invalidateIfStale();
+        trigramIndex.invalidateIfStale();
+        titleIndex.invalidateIfStale();
+        tagIndex.invalidateIfStale();
+
+        Map<UUID, String> failures = new ConcurrentHashMap<>();
+        List<Note> saved;
+        try (GroupCommit.Batch batch = store.beginBatch()) {
+            saved = ParallelNoteLoader.load(notes, batch.wrap(note -> {
+                Path filePath = store.fileOf(note.getId());
+                if (filePath != null) {
+                    noteCache.invalidate(filePath.getFileName());
+                }
+                try {
+                    store.write(note.getId(), yamlParser.serialize(note).getBytes(StandardCharsets.UTF_8));
+                    return note;
+                } catch (IOException e) {
+                    failures.put(note.getId(), e.getMessage());
+                    return null;
+                }
+            }));
+        } catch (IOException e) {
+            // Written but perhaps not yet on disk; nothing to undo
+            System.err.println("Warning: Could not sync saved notes: " + e.getMessage());
+            saved = new ArrayList<>(notes);
+            saved.removeIf(note -> failures.containsKey(note.getId()));
+        }
+
+        searchIndex.addNotes(saved);
 
+        trigramIndex.addNotes(saved);
+        Map<UUID, String> titles = new LinkedHashMap<>();
+        for (Note note : saved) {
+            titles.put(note.getId(), note.getTitle());
+        }
+        titleIndex.addTitles(titles);
+        List<Path> files = new ArrayList<>(saved.size());
+        for (Note note : saved) {
+            files.add(store.fileOf(note.getId()));
+        }
+        List<NoteSummary> summaries = saved.isEmpty() || files.get(0) == null
+            ? saved.stream().map(note -> NoteSummary.of(note, 0, 0)).collect(Collectors.toList())
+            : catalog.updateAll(files, saved);
+        for (NoteSummary summary : summaries) {
+            if (summary != null) {
+                tagIndex.addNote(summary);
+            } else {
+                tagIndex.invalidate();
+            }
+        }
+        return failures;
+    }
+
+    private void saveNote(Note note, String failureMessage) {
         String yamlContent = yamlParser.serialize(note);
-        Path filePath = Paths.get(workingDirectory, note.getId() + ".md");
-        
+        Path filePath = store.fileOf(note.getId());
+
+        searchIndex.invalidateIfStale();
+
+        trigramIndex.invalidateIfStale();
+        titleIndex.invalidateIfStale();
+        tagIndex.invalidateIfStale();
+        if (filePath != null) {
+            noteCache.invalidate(filePath.getFileName());
+        }
         try {
-            Files.write(filePath, yamlContent.getBytes());
+            store.write(note.getId(), yamlContent.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save note", e);
+            throw new RuntimeException(failureMessage, e);
         }
-        
-        return note;
+        searchIndex.addNote(note);
+        trigramIndex.addNote(note);
+        titleIndex.addNote(note.getId(), note.getTitle());
+        indexTags(note);
     }
     
     public List<Note> getAllNotes() {
+        flushWrites();
         try {
-            return Files.list(Paths.get(workingDirectory))
-                .filter(path -> path.toString().endsWith(".md"))
-                .map(this::loadNoteFromFile)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+            List<Path> files = store.files();
+            if (files == null) {
+                return ParallelNoteLoader.load(store.list(), this::getNote);
+            }
+            // Full scans use cached notes but do not push the hot ones out
+            return ParallelNoteLoader.load(files, path -> readNote(path, false));
         } catch (IOException e) {
             return new ArrayList<>();
         }
     }
 
+    /**
+     * Metadata of all plain notes, served from the catalog. Only files that changed since
+     * they were catalogued are parsed.
+     */
+    // For the search index to spot notes edited in place; null when there are no note files
+    // or they cannot be listed, the index then goes by the directory alone
+    private List<Path> listNoteFiles() {
+        try {
+            return store.files();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public List<NoteSummary> getNoteSummaries() {
+        flushWrites();
+        if (store.isFlat()) {
+            return catalog.getSummaries(this::loadSummaryFromFile);
+        }
+        List<Path> files;
+        try {
+            files = store.files();
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        if (files == null) {
+            // The catalog tracks note files; stored notes are parsed instead
+            List<Note> notes = getAllNotes();
+            List<NoteSummary> summaries = new ArrayList<>(notes.size());
+            for (Note note : notes) {
+                summaries.add(NoteSummary.of(note, 0, 0));
+            }
+            return summaries;
+        }
+        return catalog.getSummaries(files, this::loadSummaryFromFile);
+    }
+
     public Note getNote(UUID id) {
-        Path filePath = Paths.get(workingDirectory, id + ".md");
+        WriteBehindQueue queue = writeBehind;
+        Note queued = queue != null ? queue.getPending(id) : null;
+        if (queued != null) {
+            return queued;
+        }
+        Path filePath = store.fileOf(id);
+        if (filePath == null) {
+            return readStoredNote(id);
+        }
         if (Files.exists(filePath)) {
             return loadNoteFromFile(filePath);
         }
+        return readHandNamedNote(id);
+    }
+
+    // A .md file not named after its note (copied in or renamed by hand) is found by the id in
+    // its front matter; only the headers of such files are read
+    private Note readHandNamedNote(UUID id) {
+        try {
+            List<Path> files = store.files();
+            if (files == null) {
+                return null;
+            }
+            for (Path file : files) {
+                if (isNamedAfterNote(file)) {
+                    continue;
+                }
+                NoteSummary summary = loadSummaryFromFile(file);
+                if (summary != null && id.equals(summary.getId())) {
+                    return loadNoteFromFile(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+        }
         return null;
     }
 
+    private static boolean isNamedAfterNote(Path file) {
+        try {
+            UUID.fromString(IdPrefixIndex.stripExtension(file.getFileName().toString()));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     public boolean deleteNote(UUID id) {
-        Path filePath = Paths.get(workingDirectory, id + ".md");
+        flushWrites();
+        Path filePath = store.fileOf(id);
+        searchIndex.invalidateIfStale();
+        trigramIndex.invalidateIfStale();
+        titleIndex.invalidateIfStale();
+        tagIndex.invalidateIfStale();
+        if (filePath != null) {
+            noteCache.invalidate(filePath.getFileName());
+        }
         try {
-            return Files.deleteIfExists(filePath);  // ← Actually delete the file
+            boolean deleted = store.delete(id);
+            if (deleted) {
+                searchIndex.removeNote(id);
+                trigramIndex.removeNote(id);
+                titleIndex.removeNote(id);
+                if (filePath != null) {
+                    catalog.remove(filePath);
+                }
+                tagIndex.removeNote(id);
+            }
+            return deleted;
         } catch (IOException e) {
             return false;
         }
     }
 
     public List<Note> searchNotes(String query) {
-         return getAllNotes().stream()
-        .filter(note -> 
-            note.getTitle().toLowerCase().contains(query.toLowerCase()) || 
-            note.getContent().toLowerCase().contains(query.toLowerCase()))
-        .collect(Collectors.toList());
+        flushWrites();
+        Set<UUID> ids = searchIndex.search(query, this::getAllNotes);
+        if (ids == null) {
+            // Nothing indexable in the query (e.g. only punctuation), scan instead
+            return scanNotes(query);
+        }
+
+        // Only the matching notes are read from disk
+        return ids.stream()
+            .map(this::getNote)
+            .filter(Objects::nonNull)
+            .sorted(Comparator.comparing(Note::getCreatedAt).thenComparing(Note::getId))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Plain notes matching the query, best match first (BM25 over title and content, see
+     * SearchIndex.rank): the matches offset to offset + limit and how many there are in all.
+     * Queries without indexable terms are scanned
+     * instead and come in file order.
+     */
+    public SearchPage searchNotes(String query, int offset, int limit) {
+        flushWrites();
+        SearchIndex.Ranking ranking = searchIndex.rank(query, offset, limit, this::getAllNotes);
+        if (ranking == null) {
+            return scanNotes(query, offset, limit);
+        }
+        return toPage(ranking, offset);
+    }
+
+    // Only the notes on the page are read
+    private SearchPage toPage(SearchIndex.Ranking ranking, int offset) {
+        List<Note> notes = ranking.getHits().stream()
+            .map(hit -> getNote(hit.getId()))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        return new SearchPage(notes, ranking.getTotal(), offset);
+    }
+
+    /**
+     * Plain notes whose title or body contains the text as typed, ignoring case; unlike
+     * searchNotes, spaces and punctuation count. Note files are scanned through the search
+     * snapshot without opening them, notes of other stores one by one.
+     */
+    public List<Note> scanNotes(String text) {
+        flushWrites();
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(text);
+        try {
+            List<Path> files = store.files();
+            List<UUID> ids = files != null ? snapshot.search(matcher, files, path -> readNote(path, false)) : null;
+            if (ids != null) {
+                return ids.stream()
+                    .map(this::getNote)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading notes directory: " + e.getMessage());
+        }
+        return getAllNotes().stream()
+            .filter(note -> matcher.matches(note.getTitle()) || matcher.matches(note.getContent()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Same as the ranked searchNotes, but every query term also matches indexed terms up to
+     * maxEdits typos away (see SearchIndex.rankFuzzy).
+     */
+    public SearchPage fuzzySearchNotes(String query, int maxEdits, int offset, int limit) {
+        flushWrites();
+        SearchIndex.Ranking ranking = searchIndex.rankFuzzy(query, maxEdits, offset, limit, this::getAllNotes);
+        if (ranking == null) {
+            return scanNotes(query, offset, limit);
+        }
+        return toPage(ranking, offset);
+    }
+
+    /**
+     * Plain notes whose title or body contains a match of the regex (Java syntax, see
+     * Pattern), oldest first, cut down to the matches offset to offset + limit. The trigram
+     * index narrows the notes down to those holding every literal the regex requires; only
+     * those are read and matched, in parallel.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+     */
+    public SearchPage regexSearchNotes(String regex, int offset, int limit) {
+        flushWrites();
+        Pattern pattern = Pattern.compile(regex);
+        Set<UUID> candidates = trigramIndex.candidates(TrigramQuery.fromRegex(regex), this::getAllNotes);
+        List<Note> notes = candidates == null
+            ? getAllNotes()
+            : ParallelNoteLoader.load(new ArrayList<>(candidates), this::getNote);
+        List<Note> found = ParallelNoteLoader.load(notes, note -> matches(pattern, note) ? note : null);
+        found.sort(Comparator.comparing(Note::getCreatedAt).thenComparing(Note::getId));
+        int from = Math.min(offset, found.size());
+        int to = (int) Math.min(found.size(), (long) from + limit);
+        return new SearchPage(new ArrayList<>(found.subList(from, to)), found.size(), offset);
+    }
+
+    private static boolean matches(Pattern pattern, Note note) {
+        return (note.getTitle() != null && pattern.matcher(note.getTitle()).find())
+            || (note.getContent() != null && pattern.matcher(note.getContent()).find());
+    }
+
+    /** Same as scanNotes, cut down to the matches offset to offset + limit. */
+    public SearchPage scanNotes(String text, int offset, int limit) {
+        List<Note> found = scanNotes(text);
+        int from = Math.min(offset, found.size());
+        int to = (int) Math.min(found.size(), (long) from + limit);
+        return new SearchPage(new ArrayList<>(found.subList(from, to)), found.size(), offset);
+    }
+
+    /**
+     * Removes what the store and the sidecar files still hold of deleted notes until their
+     * next compaction: the store is purged (see NoteStore.purgeDeleted), the search snapshot
+     * is deleted, the catalog and the indexes are rewritten without the records of those notes. Called once a note was encrypted so that no plain copy of its
+     * title, tags or text stays behind.
+     */
+    public void purgeDeletedNotes() {
+        flushWrites();
+        try {
+            store.purgeDeleted();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not purge deleted notes from the store: " + e.getMessage());
+        }
+        snapshot.invalidate();
+        catalog.dropDeleted();
+        searchIndex.dropDeleted();
+        titleIndex.dropDeleted();
+        trigramIndex.dropDeleted();
+    }
+
+    /**
+     * Re-reads a note that was changed outside of NoteManager (e.g. in the editor)
+     * and refreshes its index entry.
+     */
+    public void reindexNote(UUID id) {
+        flushWrites();
+        Path filePath = store.fileOf(id);
+        if (filePath != null) {
+            noteCache.invalidate(filePath.getFileName());
+        }
+        Note note = getNote(id);
+        if (note != null) {
+            searchIndex.addNote(note);
+            trigramIndex.addNote(note);
+            titleIndex.addNote(id, note.getTitle());
+            indexTags(note);
+        } else {
+            searchIndex.removeNote(id);
+            trigramIndex.removeNote(id);
+            titleIndex.removeNote(id);
+            tagIndex.removeNote(id);
+        }
+    }
+
+    /**
+     * Drops the indexes after many note files were added or removed behind NoteManager's
+     * back (bulk encrypt/decrypt); they and the catalog are rebuilt on next use. Cached notes
+     * check their file's mtime anyway.
+     */
+    public void invalidateIndexes() {
+        searchIndex.invalidate();
+        trigramIndex.invalidate();
+        titleIndex.invalidate();
+        tagIndex.invalidate();
+        snapshot.invalidate();
+        // Notes removed this way never got a delete record, their text would stay in the catalog
+        catalog.invalidate();
+    }
+
+    /** Plain notes matching a boolean tag query, answered from the tag index. */
+    public List<NoteSummary> findNotesByTags(TagIndex.Query query) {
+        flushWrites();
+        return tagIndex.query(query, this::getNoteSummaries);
+    }
+
+    /**
+     * Replaces the stored text of a note edited outside the store (stores without note files
+     * are edited through a temporary copy) and refreshes its index entries.
+     */
+    public void replaceNoteText(UUID id, String text) throws IOException {
+        flushWrites();
+        searchIndex.invalidateIfStale();
+        trigramIndex.invalidateIfStale();
+        titleIndex.invalidateIfStale();
+        tagIndex.invalidateIfStale();
+        store.write(id, text.getBytes(StandardCharsets.UTF_8));
+        reindexNote(id);
+    }
+
+    /**
+     * Starts a batch of the calling thread's writes (createNote, parseAndCreateNote, ...) that
+     * are synced to disk together when it is closed; until then they return without waiting.
+     * Writes of other threads are not held back by it.
+     */
+    public GroupCommit.Batch beginBatch() {
+        return store.beginBatch();
+    }
+
+    /** The backend holding the plain notes. */
+    public NoteStore getStore() {
+        return store;
+    }
+
+    /** True when every plain note is a <uuid>.md file directly in the working directory. */
+    public boolean hasFlatNoteFiles() {
+        return store.isFlat();
+    }
+
+    /**
+     * Moves every plain note into the named backend and makes it the one opened from now on;
+     * returns the number of notes moved. The old backend stays the recorded one until all
+     * notes were copied, so an interrupted migration loses nothing and can simply be rerun.
+     * Between the markdown and sharded layouts the files are renamed in place instead.
+     * Hand-named .md files move under the id in their front matter; if one has none the
+     * migration is refused before anything is copied.
+     */
+    public synchronized int migrateStore(String name) throws IOException {
+        flushWrites();
+        NoteStore source = store;
+        if (source.getName().equalsIgnoreCase(name)) {
+            // Rerunning an interrupted move into the shards finishes it
+            return source instanceof ShardedNoteStore ? ((ShardedNoteStore) source).moveIn() : 0;
+        }
+        Path directory = Paths.get(workingDirectory);
+        NoteStore target = NoteStore.create(directory, name);
+        if (source instanceof MarkdownNoteStore && target instanceof ShardedNoteStore) {
+            // Online: the sharded store reads notes still lying flat, so it takes over first
+            // and the files are then renamed into their shards one by one
+            NoteStore.record(directory, target.getName());
+            store = target;
+            source.close();
+            int moved = ((ShardedNoteStore) target).moveIn();
+            invalidateIndexes();
+            return moved;
+        }
+        if (source instanceof ShardedNoteStore && target instanceof MarkdownNoteStore) {
+            // The other way round the sharded store stays in charge until every file is flat
+            int moved = ((ShardedNoteStore) source).moveOut();
+            NoteStore.record(directory, target.getName());
+            store = target;
+            source.close();
+            invalidateIndexes();
+            return moved;
+        }
+        List<UUID> ids;
+        Map<UUID, Path> handNamed;
+        try {
+            ids = source.list();
+            // Refused before anything is touched, so a failed check leaves both stores as they were
+            handNamed = handNamedNotes(source, ids);
+            // Whatever an interrupted run left behind in the target
+            target.clear();
+            try (GroupCommit.Batch batch = target.beginBatch()) {
+                ParallelNoteLoader.load(ids, batch.wrap(id -> {
+                    try {
+                        byte[] content = source.read(id);
+                        if (content != null) {
+                            target.write(id, content);
+                        }
+                        return null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+                for (Map.Entry<UUID, Path> entry : handNamed.entrySet()) {
+                    target.write(entry.getKey(), Files.readAllBytes(entry.getValue()));
+                }
+            }
+            NoteStore.record(directory, target.getName());
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            if (e instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e).getCause();
+            }
+            throw e;
+        }
+
+        store = target;
+        source.clear();
+        for (Path file : handNamed.values()) {
+            Files.deleteIfExists(file);
+        }
+        source.close();
+        invalidateIndexes();
+        return ids.size() + handNamed.size();
+    }
+
+    /**
+     * The .md files of the source not named after their note, by the id in their front matter.
+     * A note also stored under its own name keeps that copy.
+     *
+     * @throws IOException naming the files without an id, which would be lost by the move
+     */
+    private Map<UUID, Path> handNamedNotes(NoteStore source, List<UUID> ids) throws IOException {
+        Map<UUID, Path> notes = new LinkedHashMap<>();
+        List<Path> files = source.files();
+        if (files == null) {
+            return notes;
+        }
+        Set<UUID> named = new HashSet<>(ids);
+        List<String> withoutId = new ArrayList<>();
+        for (Path file : files) {
+            if (isNamedAfterNote(file)) {
+                continue;
+            }
+            UUID id;
+            try {
+                NoteSummary summary = loadSummaryFromFile(file);
+                id = summary != null ? summary.getId() : null;
+            } catch (IllegalArgumentException e) {
+                // No front matter at all
+                id = null;
+            }
+            if (id == null) {
+                withoutId.add(file.getFileName().toString());
+            } else if (named.contains(id) || notes.containsKey(id)) {
+                System.err.println("Warning: " + file.getFileName() + " repeats note " + id + ", not migrated");
+            } else {
+                notes.put(id, file);
+            }
+        }
+        if (!withoutId.isEmpty()) {
+            throw new IOException("Notes without an id in their front matter cannot be migrated: "
+                    + String.join(", ", withoutId));
+        }
+        return notes;
+    }
+
+    /**
+     * Writes out the write-behind queue and closes the store.
+     *
+     * @throws RuntimeException if queued notes could not be written, naming them
+     */
+    public void close() {
+        WriteBehindQueue queue = writeBehind;
+        writeBehind = null;
+        try {
+            if (queue != null) {
+                // Nothing queued may be lost on exit
+                queue.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Warning: Could not close note store: " + e.getMessage());
+            }
+        }
+    }
+
+    // The catalog record doubles as the tag index entry
+    private void indexTags(Note note) {
+        Path filePath = store.fileOf(note.getId());
+        NoteSummary summary = filePath != null ? catalog.update(filePath, note) : NoteSummary.of(note, 0, 0);
+        if (summary != null) {
+            tagIndex.addNote(summary);
+        } else {
+            tagIndex.invalidate();
+        }
+    }
+
+    /**
+     * Plain notes with exactly this title (or the same title in another case), oldest first.
+     * Resolved through the title index, so only the matching notes are read.
+     */
+    public List<Note> findNotesByTitle(String title, boolean ignoreCase) {
+        return resolveTitles(() -> ignoreCase
+                ? titleIndex.findIgnoreCase(title, this::getNoteSummaries)
+                : titleIndex.find(title, this::getNoteSummaries),
+            note -> ignoreCase ? note.getTitle().equalsIgnoreCase(title) : note.getTitle().equals(title));
+    }
+
+    /** Plain notes whose title starts with the prefix, ignoring case, at most limit of them. */
+    public List<Note> findNotesByTitlePrefix(String prefix, int limit) {
+        String folded = prefix.toLowerCase(Locale.ROOT);
+        return resolveTitles(() -> titleIndex.findByPrefix(prefix, limit, this::getNoteSummaries),
+            note -> note.getTitle().toLowerCase(Locale.ROOT).startsWith(folded));
+    }
+
+    private List<Note> resolveTitles(Supplier<List<UUID>> lookup, Predicate<Note> stillMatches) {
+        flushWrites();
+        List<Note> notes = lookup.get().stream()
+            .map(this::getNote)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        if (notes.stream().allMatch(stillMatches)) {
+            return sortByCreation(notes);
+        }
+
+        // A title was changed behind our back without touching the directory, start over once
+        titleIndex.invalidate();
+        return sortByCreation(lookup.get().stream()
+            .map(this::getNote)
+            .filter(Objects::nonNull)
+            .filter(stillMatches)
+            .collect(Collectors.toList()));
+    }
+
+    private static List<Note> sortByCreation(List<Note> notes) {
+        notes.sort(Comparator.comparing(Note::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Note::getId));
+        return notes;
+    }
+
+    /** Hit/miss/eviction counters of the parsed note cache. */
+    public NoteCache.Stats getCacheStats() {
+        return noteCache.getStats();
     }
 
     public String getWorkingDirectory() {
@@ -92,16 +734,18 @@ public class NoteManager {
         Note note = yamlParser.parse(content);
     
         // Save it to the notes directory with proper filename
-        String yamlContent = yamlParser.serialize(note);
-        Path filePath = Paths.get(workingDirectory, note.getId() + ".md");
-    
+        queueOrSave(note, "Failed to save imported note");
+        return note;
+    }
+
+    // Header-only read, the note body is never loaded
+    public NoteSummary loadSummaryFromFile(Path filePath) {
         try {
-            Files.write(filePath, yamlContent.getBytes());
+            return yamlParser.parseHeader(filePath);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save imported note", e);
+            System.err.println("Error reading file: " + filePath);
+            return null;
         }
-    
-        return note;
     }
 
     public Note parseNoteFromYaml(String yamlContent) {
@@ -110,9 +754,36 @@ public class NoteManager {
     
     // Also add this if you want CLIHandler to load individual files
     public Note loadNoteFromFile(Path filePath) {
+        return readNote(filePath, true);
+    }
+
+    private Note readStoredNote(UUID id) {
         try {
+            byte[] content = store.read(id);
+            return content != null ? yamlParser.deserialize(new String(content, StandardCharsets.UTF_8)) : null;
+        } catch (IOException e) {
+            System.err.println("Error reading note: " + id);
+            return null;
+        }
+    }
+
+    // Cached notes are reused as long as the file's mtime and size did not change
+    private Note readNote(Path filePath, boolean cacheResult) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            Path key = filePath.getFileName();
+            Note cached = noteCache.get(key, modified, attributes.size());
+            if (cached != null) {
+                return cached;
+            }
+
             String content = Files.readString(filePath);
-            return yamlParser.deserialize(content);
+            Note note = yamlParser.deserialize(content);
+            if (cacheResult) {
+                noteCache.put(key, note, modified, attributes.size());
+            }
+            return note;
         } catch (IOException e) {
             System.err.println("Error reading file: " + filePath);
             return null;
@@ -0,0 +1,102 @@
+package com.quickthought;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Where the serialized plain notes of a working directory live. NoteManager keeps its indexes
+ * and caches on top of a store; encrypted notes always stay one .md.enc file each.
+ *
+ * Three backends exist: "markdown" (one <uuid>.md file per note, the default), "sharded" (the
+ * same files fanned out into ab/cd/ subdirectories, see ShardedNoteStore) and "segments" (an
+ * append-only log of many notes per file, see SegmentLogNoteStore). The backend in use is
+ * recorded in .quickthought_store, which the migrate command rewrites once every note was
+ * copied to the other backend.
+ */
+public interface NoteStore extends Closeable {
+    String MARKER_FILE = ".quickthought_store";
+
+    /** Backend name as used by the marker file and the migrate command. */
+    String getName();
+
+    /** Ids of all stored notes, in id string order. */
+    List<UUID> list() throws IOException;
+
+    boolean contains(UUID id) throws IOException;
+
+    /** The serialized note, or null when there is no such note. */
+    byte[] read(UUID id) throws IOException;
+
+    /**
+     * Stores the note, replacing any previous version; readers see either version, never a mix,
+     * and once it returns the note survives a crash (unless a batch is open).
+     */
+    void write(UUID id, byte[] content) throws IOException;
+
+    boolean delete(UUID id) throws IOException;
+
+    /**
+     * Makes sure nothing of deleted notes is left in the store's files. Called after notes
+     * were encrypted; only stores that keep deleted records around (see SegmentLogNoteStore)
+     * have anything to do.
+     */
+    default void purgeDeleted() throws IOException {
+    }
+
+    /** Removes every note (used when migrating away from or back into a backend). */
+    void clear() throws IOException;
+
+    /**
+     * The note's own file for stores that keep one file per note (it may not exist yet), null
+     * otherwise. Such files may be read directly, cached by their mtime and opened in an editor.
+     */
+    Path fileOf(UUID id);
+
+    /** Every note file, in file name order, for stores that keep one file per note; null otherwise. */
+    List<Path> files() throws IOException;
+
+    /** True when the notes are <uuid>.md files directly in the working directory. */
+    boolean isFlat();
+
+    /**
+     * Groups the following writes of the calling thread, and of work run through Batch.wrap,
+     * into one sync to disk when the batch is closed instead of one per write; see GroupCommit.
+     */
+    GroupCommit.Batch beginBatch();
+
+    /** Opens the store recorded for the directory, the markdown store when none is. */
+    static NoteStore open(Path directory) throws IOException {
+        Path marker = directory.resolve(MARKER_FILE);
+        String name = Files.exists(marker)
+                ? Files.readString(marker, StandardCharsets.UTF_8).trim()
+                : MarkdownNoteStore.NAME;
+        return create(directory, name);
+    }
+
+    /** Opens the named backend on the directory, whether or not it is the recorded one. */
+    static NoteStore create(Path directory, String name) throws IOException {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case MarkdownNoteStore.NAME:
+                return new MarkdownNoteStore(directory);
+            case ShardedNoteStore.NAME:
+                return new ShardedNoteStore(directory);
+            case SegmentLogNoteStore.NAME:
+                return new SegmentLogNoteStore(directory.resolve(SegmentLogNoteStore.DIRECTORY));
+            default:
+                throw new IllegalArgumentException("Unknown note store: " + name + " (expected "
+                        + MarkdownNoteStore.NAME + ", " + ShardedNoteStore.NAME + " or " + SegmentLogNoteStore.NAME + ")");
+        }
+    }
+
+    /** Makes the named backend the one opened for the directory from now on. */
+    static void record(Path directory, String name) throws IOException {
+        // The commit point of a migration, so it must survive a crash
+        new GroupCommit(0).write(directory.resolve(MARKER_FILE), (name + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package com.quickthought;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Metadata of a note without its body, as stored in the note catalog.
+ */
+public class NoteSummary {
+    private final UUID id;
+    private final String title;
+    private final List<String> tags;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+    private final int contentLength;
+    private final long fileModified;
+    private final long fileSize;
+
+    public NoteSummary(UUID id, String title, List<String> tags, LocalDateTime createdAt,
+                       LocalDateTime updatedAt, int contentLength, long fileModified, long fileSize) {
+        this.id = id;
+        this.title = title;
+        this.tags = new ArrayList<>(tags != null ? tags : new ArrayList<>());
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.contentLength = contentLength;
+        this.fileModified = fileModified;
+        this.fileSize = fileSize;
+    }
+
+    public static NoteSummary of(Note note, long fileModified, long fileSize) {
+        return new NoteSummary(note.getId(), note.getTitle(), note.getTags(), note.getCreatedAt(),
+                note.getUpdatedAt(), note.getContent().trim().length(), fileModified, fileSize);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<String> getTags() {
+        return new ArrayList<>(tags);
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /** Length of the body in characters, without the whitespace around it that parsing drops. */
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    long getFileModified() {
+        return fileModified;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NoteSummary{id=%s, title='%s', tags=%s}",
+            id.toString().substring(0, 8), title, tags);
+    }
+}
@@ -0,0 +1,114 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads, decrypts and parses note files on a bounded fork-join pool.
+ *
+ * The pool size comes from the quickthought.parallelism system property (default: number of
+ * processors, 1 turns parallel loading off). Results always come back in file name order,
+ * whatever order the workers finish in.
+ */
+public final class ParallelNoteLoader {
+    public static final String PARALLELISM_PROPERTY = "quickthought.parallelism";
+
+    private static final int MIN_PARALLEL_FILES = 16;
+    private static volatile ForkJoinPool pool;
+
+    private ParallelNoteLoader() {
+    }
+
+    /** Files in the directory accepted by the filter, sorted by file name. */
+    public static List<Path> listFiles(Path directory, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(filter)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Applies the loader to every file (or any other work item) and returns the non-null
+     * results in the order of the given list. An exception thrown by the loader is rethrown to
+     * the caller, just like a sequential loop would.
+     */
+    public static <S, T> List<T> load(List<S> files, Function<? super S, T> loader) {
+        if (parallelism() <= 1 || files.size() < MIN_PARALLEL_FILES) {
+            List<T> results = new ArrayList<>(files.size());
+            for (S file : files) {
+                T result = loader.apply(file);
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+            return results;
+        }
+
+        ForkJoinPool current = getPool();
+        if (ForkJoinTask.getPool() == current) {
+            // Already on one of our workers (e.g. chunks of a note loaded in parallel): blocking
+            // on a nested submit would tie up the worker, so fork into the same pool directly
+            List<T> results = files.parallelStream()
+                    .map(loader)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            results.removeAll(Collections.singleton(null));
+            return results;
+        }
+
+        try {
+            // A parallel stream started from inside the pool runs on the pool's workers,
+            // and collect() keeps the encounter order
+            List<T> results = current.submit(() -> files.parallelStream()
+                    .map(loader)
+                    .collect(Collectors.toCollection(ArrayList::new))).get();
+            results.removeAll(Collections.singleton(null));
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading notes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    static int parallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, processors));
+    }
+
+    private static ForkJoinPool getPool() {
+        ForkJoinPool current = pool;
+        if (current == null || current.getParallelism() != parallelism()) {
+            synchronized (ParallelNoteLoader.class) {
+                if (pool == null || pool.getParallelism() != parallelism()) {
+                    if (pool != null) {
+                        pool.shutdown();
+                    }
+                    // Worker threads are daemons, the pool never keeps the JVM alive
+                    pool = new ForkJoinPool(parallelism());
+                }
+                current = pool;
+            }
+        }
+        return current;
+    }
+}
@@ -18,16 +18,36 @@ public class QuickThought {
             System.out.println();
 
             Scanner scanner = new Scanner(System.in);
+            // -Dquickthought.parallelism=N sizes the note loading pool (see ParallelNoteLoader)
             String notesDirectory = System.getProperty("quickthought.dir",
                     System.getProperty("user.dir") + "/notes");
 
             CLIHandler cliHandler = new CLIHandler(notesDirectory);
+            // The REPL stays alive between commands, so keep the notes in memory
+            cliHandler.enableLiveCache();
+            // Typing "read shop" for "Shopping list" is fine at the prompt, changing it that way is not
+            cliHandler.enableTitleShortcuts();
+            // Optional: -Dquickthought.writeBehind=N (e.g. 1024) writes new notes in the background,
+            // with at most N of them queued; off by default
+            int writeBehind = Integer.getInteger("quickthought.writeBehind", 0);
+            Thread shutdownHook = null;
+            if (writeBehind > 0) {
+                cliHandler.enableWriteBehind(writeBehind);
+                // Ctrl-C skips the exit below; write the queue out on the way down anyway
+                shutdownHook = new Thread(() -> closeHandler(cliHandler), "quickthought-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
 
             while (true) {
                 System.out.print("quickthought> ");
+                if (!scanner.hasNextLine()) {
+                    // End of input counts as exit, so the queue is still written out
+                    break;
+                }
                 String input = scanner.nextLine().trim();
 
                 if ("0".equals(input) || "exit".equals(input) || "quit".equals(input)) {
+                    // Queued notes are written out by close() below
                     System.out.println("The Hourglass turns...");
                     printBanner3();
                     break;
@@ -50,6 +70,10 @@ public class QuickThought {
                 }
             }
 
+            if (shutdownHook != null) {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            closeHandler(cliHandler);
             scanner.close();
             return;
         }
@@ -63,6 +87,14 @@ public class QuickThought {
         System.exit(success ? 0 : 1);
     }
 
+    private static void closeHandler(CLIHandler cliHandler) {
+        try {
+            cliHandler.close();
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
     private static String[] parseInput(String input) {
 
         java.util.List<String> args = new java.util.ArrayList<>();
@@ -0,0 +1,581 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * On-disk inverted index (term -> note ids) for the plain notes in a working directory, with
+ * the number of times each term occurs in a note's title and content for ranking.
+ *
+ * The index file is an append-only journal: every write adds an "A" (add/replace) or
+ * "D" (delete) record, and the file is compacted once dead records pile up. The index is
+ * treated as stale (and rebuilt) when the notes directory changed after it was last written,
+ * which catches notes added or removed behind our back, or when a note file is newer than the
+ * index, which catches a note edited in place.
+ */
+public class SearchIndex {
+    static final String INDEX_FILE = ".quickthought_index";
+
+    // BM25 parameters; a title occurrence counts TITLE_BOOST times a content occurrence
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+    static final double TITLE_BOOST = 2.0;
+
+    // Best score first, ties in id order so that pages do not overlap
+    private static final Comparator<Hit> BEST_FIRST =
+        Comparator.comparingDouble(Hit::getScore).reversed().thenComparing(Hit::getId);
+
+    private final SidecarJournal journal;
+    // The note files to check for edits, null when the notes are not kept as files
+    private final Supplier<List<Path>> noteFiles;
+    private final Map<String, Set<UUID>> postings = new HashMap<>();
+    private final Map<UUID, Document> documents = new HashMap<>();
+    // Term dictionary for fuzzy queries, built on first use; new terms are added as they come
+    private BkTree dictionary;
+    private long titleTerms = 0;
+    private long contentTerms = 0;
+    private boolean loaded = false;
+
+    public SearchIndex(String workingDirectory, Supplier<List<Path>> noteFiles) {
+        this.journal = new SidecarJournal(Paths.get(workingDirectory), INDEX_FILE);
+        this.noteFiles = noteFiles;
+    }
+
+    /**
+     * Returns the ids of notes containing every term of the query. Each query term matches any
+     * indexed term that contains it, so "meet" still finds "meeting". Returns null when the
+     * query has no indexable terms and the caller has to fall back to a scan.
+     */
+    public synchronized Set<UUID> search(String query, Supplier<List<Note>> corpus) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return null;
+        }
+        ensureLoaded(corpus);
+
+        Set<UUID> result = null;
+        for (String queryTerm : new LinkedHashSet<>(queryTerms)) {
+            Set<UUID> matches = new HashSet<>();
+            for (Map.Entry<String, Set<UUID>> entry : postings.entrySet()) {
+                if (entry.getKey().contains(queryTerm)) {
+                    matches.addAll(entry.getValue());
+                }
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ranks the notes that search would return by BM25 and returns hits offset to
+     * offset + limit, best first, along with the number of matches. Title and content are
+     * scored as separate fields (BM25F). Every query term scores each indexed term it matches.
+     * Only offset + limit hits are kept on a heap however many notes match, so a page costs
+     * O(N log K). Returns null like search.
+     */
+    public synchronized Ranking rank(String query, int offset, int limit, Supplier<List<Note>> corpus) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty()) {
+            return null;
+        }
+        ensureLoaded(corpus);
+
+        // Each query term stands for the indexed terms containing it
+        List<Map<String, Double>> expansions = new ArrayList<>(queryTerms.size());
+        for (String queryTerm : queryTerms) {
+            Map<String, Double> terms = new HashMap<>();
+            for (String term : postings.keySet()) {
+                if (term.contains(queryTerm)) {
+                    terms.put(term, 1.0);
+                }
+            }
+            expansions.add(terms);
+        }
+        return rank(expansions, offset, limit);
+    }
+
+    /**
+     * Same as rank, but every query term matches the indexed terms within maxEdits edits
+     * (Levenshtein distance) of it, so "hamlett" finds "hamlet". Short terms allow fewer edits,
+     * at most a third of their length (rounded up), and a match scores less the more edits it
+     * took. The terms are looked up in a BK-tree over the term dictionary.
+     */
+    public synchronized Ranking rankFuzzy(String query, int maxEdits, int offset, int limit,
+                                          Supplier<List<Note>> corpus) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty()) {
+            return null;
+        }
+        ensureLoaded(corpus);
+        if (dictionary == null || dictionary.size() > 2 * postings.size() + 1024) {
+            // Built on first use, rebuilt once removed terms have piled up
+            dictionary = new BkTree();
+            for (String term : postings.keySet()) {
+                dictionary.add(term);
+            }
+        }
+
+        List<Map<String, Double>> expansions = new ArrayList<>(queryTerms.size());
+        for (String queryTerm : queryTerms) {
+            int edits = Math.min(maxEdits, (queryTerm.length() + 2) / 3);
+            Map<String, Double> terms = new HashMap<>();
+            for (Map.Entry<String, Integer> match : dictionary.search(queryTerm, edits).entrySet()) {
+                // The tree still holds terms of removed notes
+                if (postings.containsKey(match.getKey())) {
+                    terms.put(match.getKey(), 1.0 / (1 + match.getValue()));
+                }
+            }
+            expansions.add(terms);
+        }
+        return rank(expansions, offset, limit);
+    }
+
+    // Notes having at least one expansion of every query term, scored by the matched terms
+    // times their weight
+    private Ranking rank(List<Map<String, Double>> expansions, int offset, int limit) {
+        int rarest = 0;
+        long rarestCount = Long.MAX_VALUE;
+        for (int q = 0; q < expansions.size(); q++) {
+            if (expansions.get(q).isEmpty()) {
+                return new Ranking(new ArrayList<>(), 0);
+            }
+            long count = 0;
+            for (String term : expansions.get(q).keySet()) {
+                count += postings.get(term).size();
+            }
+            if (count < rarestCount) {
+                rarest = q;
+                rarestCount = count;
+            }
+        }
+        // Candidates are the notes of the rarest query term
+        Collection<UUID> candidates;
+        if (expansions.get(rarest).size() == 1) {
+            candidates = postings.get(expansions.get(rarest).keySet().iterator().next());
+        } else {
+            candidates = new HashSet<>();
+            for (String term : expansions.get(rarest).keySet()) {
+                candidates.addAll(postings.get(term));
+            }
+        }
+
+        int n = documents.size();
+        double averageTitle = titleTerms == 0 ? 1 : (double) titleTerms / n;
+        double averageContent = contentTerms == 0 ? 1 : (double) contentTerms / n;
+        int keep = (int) Math.min(Integer.MAX_VALUE, Math.max(0, (long) offset + limit));
+        PriorityQueue<Hit> heap = new PriorityQueue<>(BEST_FIRST.reversed());
+        int total = 0;
+        for (UUID id : candidates) {
+            Document document = documents.get(id);
+            double score = 0;
+            boolean matchesAll = true;
+            for (int q = 0; q < expansions.size() && matchesAll; q++) {
+                double termScore = 0;
+                boolean matched = false;
+                Map<String, Double> terms = expansions.get(q);
+                if (terms.size() <= document.terms.length) {
+                    for (Map.Entry<String, Double> term : terms.entrySet()) {
+                        int i = Arrays.binarySearch(document.terms, term.getKey());
+                        if (i >= 0) {
+                            matched = true;
+                            termScore += term.getValue() * score(document, i, n, averageTitle, averageContent);
+                        }
+                    }
+                } else {
+                    // A query term matching many indexed terms: cheaper from the note's side
+                    for (int i = 0; i < document.terms.length; i++) {
+                        Double weight = terms.get(document.terms[i]);
+                        if (weight != null) {
+                            matched = true;
+                            termScore += weight * score(document, i, n, averageTitle, averageContent);
+                        }
+                    }
+                }
+                matchesAll = matched;
+                score += termScore;
+            }
+            if (!matchesAll) {
+                continue;
+            }
+            total++;
+            if (heap.size() < keep) {
+                heap.add(new Hit(id, score));
+            } else if (keep > 0) {
+                Hit worst = heap.peek();
+                if (score > worst.score || (score == worst.score && id.compareTo(worst.id) < 0)) {
+                    heap.poll();
+                    heap.add(new Hit(id, score));
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort(BEST_FIRST);
+        return new Ranking(new ArrayList<>(hits.subList(Math.min(Math.max(0, offset), hits.size()), hits.size())), total);
+    }
+
+    // BM25F contribution of the document's i-th term
+    private double score(Document document, int i, int n, double averageTitle, double averageContent) {
+        int df = postings.get(document.terms[i]).size();
+        double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+        double tf = TITLE_BOOST * document.titleCounts[i] / (1 - B + B * document.titleLength / averageTitle)
+            + document.contentCounts[i] / (1 - B + B * document.contentLength / averageContent);
+        return idf * tf * (K1 + 1) / (K1 + tf);
+    }
+
+    /**
+     * Drops the index file if notes changed outside of NoteManager. Must be called before a
+     * note file is written, otherwise the journal append would hide the external change.
+     */
+    public synchronized void invalidateIfStale() {
+        if (journal.exists() && !isCurrent()) {
+            invalidate();
+        }
+    }
+
+    public synchronized void addNote(Note note) {
+        addNotes(List.of(note));
+    }
+
+    /** Same as addNote for many notes, with a single journal append. */
+    public synchronized void addNotes(Collection<Note> notes) {
+        List<String> records = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            Document document = Document.of(note);
+            if (loaded) {
+                removeDocument(note.getId());
+                addDocument(note.getId(), document);
+            }
+            records.add(document.record(note.getId()));
+        }
+        appendRecords(records);
+    }
+
+    public synchronized void removeNote(UUID id) {
+        if (loaded) {
+            removeDocument(id);
+        }
+        appendRecords(List.of("D\t" + id));
+    }
+
+    /** Rewrites the index file without the records of removed notes, see SidecarJournal.dropDeleted. */
+    public synchronized void dropDeleted() {
+        if (journal.exists() && !isCurrent()) {
+            // Rewriting it would make it newer than the edited note
+            invalidate();
+            return;
+        }
+        try {
+            journal.dropDeleted();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not rewrite search index: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    public synchronized void invalidate() {
+        clear();
+        loaded = false;
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not remove search index: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private void ensureLoaded(Supplier<List<Note>> corpus) {
+        boolean current = journal.exists() && isCurrent();
+        if (loaded && current) {
+            return;
+        }
+        clear();
+        loaded = false;
+
+        if (current) {
+            try {
+                readJournal();
+                loaded = true;
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: Search index unreadable, rebuilding: " + e.getMessage());
+                clear();
+            }
+        }
+        rebuild(corpus.get());
+    }
+
+    // Every write of a note appends to the journal afterwards, so a note file newer than the
+    // journal was edited behind our back; the directory's mtime does not move for that
+    private boolean isCurrent() {
+        if (!journal.isCurrent()) {
+            return false;
+        }
+        List<Path> files = noteFiles.get();
+        if (files == null) {
+            return true;
+        }
+        try {
+            FileTime written = Files.getLastModifiedTime(journal.getPath());
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).compareTo(written) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            // A note gone since the listing
+            return false;
+        }
+    }
+
+    private void rebuild(List<Note> notes) {
+        for (Note note : notes) {
+            addDocument(note.getId(), Document.of(note));
+        }
+        loaded = true;
+        writeSnapshot();
+    }
+
+    private void readJournal() throws IOException {
+        for (String line : journal.readLines()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", 5);
+            UUID id = UUID.fromString(fields[1]);
+            removeDocument(id);
+            if ("A".equals(fields[0])) {
+                if (fields.length < 5) {
+                    throw new IOException("index without term counts");
+                }
+                addDocument(id, Document.parse(fields));
+            }
+        }
+    }
+
+    private void addDocument(UUID id, Document document) {
+        documents.put(id, document);
+        titleTerms += document.titleLength;
+        contentTerms += document.contentLength;
+        for (String term : document.terms) {
+            postings.computeIfAbsent(term, t -> {
+                if (dictionary != null) {
+                    dictionary.add(t);
+                }
+                return new HashSet<>();
+            }).add(id);
+        }
+    }
+
+    private void removeDocument(UUID id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        titleTerms -= document.titleLength;
+        contentTerms -= document.contentLength;
+        for (String term : document.terms) {
+            Set<UUID> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        postings.clear();
+        documents.clear();
+        dictionary = null;
+        titleTerms = 0;
+        contentTerms = 0;
+    }
+
+    private void appendRecords(List<String> records) {
+        // No index yet: nothing to keep in sync, the next search builds it from scratch
+        if (!journal.exists()) {
+            return;
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not update search index: " + e.getMessage());
+            invalidate();
+            return;
+        }
+        if (loaded && journal.needsCompaction(documents.size())) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        List<String> lines = new ArrayList<>(documents.size());
+        for (Map.Entry<UUID, Document> entry : documents.entrySet()) {
+            lines.add(entry.getValue().record(entry.getKey()));
+        }
+        try {
+            journal.rewrite(lines);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write search index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Distinct terms of a note, sorted, with how often each occurs in the title and in the
+     * content. Recorded as "A id titleLength contentLength term:title:content ...".
+     */
+    private static final class Document {
+        final String[] terms;
+        final int[] titleCounts;
+        final int[] contentCounts;
+        final int titleLength;
+        final int contentLength;
+
+        Document(String[] terms, int[] titleCounts, int[] contentCounts, int titleLength, int contentLength) {
+            this.terms = terms;
+            this.titleCounts = titleCounts;
+            this.contentCounts = contentCounts;
+            this.titleLength = titleLength;
+            this.contentLength = contentLength;
+        }
+
+        static Document of(Note note) {
+            List<String> title = tokenize(note.getTitle());
+            List<String> content = tokenize(note.getContent());
+            Map<String, int[]> counts = new TreeMap<>();
+            for (String term : title) {
+                counts.computeIfAbsent(term, t -> new int[2])[0]++;
+            }
+            for (String term : content) {
+                counts.computeIfAbsent(term, t -> new int[2])[1]++;
+            }
+            String[] terms = new String[counts.size()];
+            int[] titleCounts = new int[counts.size()];
+            int[] contentCounts = new int[counts.size()];
+            int i = 0;
+            for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+                terms[i] = entry.getKey();
+                titleCounts[i] = entry.getValue()[0];
+                contentCounts[i] = entry.getValue()[1];
+                i++;
+            }
+            return new Document(terms, titleCounts, contentCounts, title.size(), content.size());
+        }
+
+        static Document parse(String[] fields) {
+            String[] encoded = fields[4].isEmpty() ? new String[0] : fields[4].split(" ");
+            String[] terms = new String[encoded.length];
+            int[] titleCounts = new int[encoded.length];
+            int[] contentCounts = new int[encoded.length];
+            for (int i = 0; i < encoded.length; i++) {
+                String[] parts = encoded[i].split(":");
+                terms[i] = parts[0];
+                titleCounts[i] = Integer.parseInt(parts[1]);
+                contentCounts[i] = Integer.parseInt(parts[2]);
+            }
+            return new Document(terms, titleCounts, contentCounts,
+                Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+        }
+
+        String record(UUID id) {
+            StringBuilder record = new StringBuilder("A\t").append(id)
+                .append('\t').append(titleLength)
+                .append('\t').append(contentLength)
+                .append('\t');
+            for (int i = 0; i < terms.length; i++) {
+                if (i > 0) {
+                    record.append(' ');
+                }
+                record.append(terms[i]).append(':').append(titleCounts[i]).append(':').append(contentCounts[i]);
+            }
+            return record.toString();
+        }
+    }
+
+    /** A ranked note. */
+    public static final class Hit {
+        private final UUID id;
+        private final double score;
+
+        Hit(UUID id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /** One page of hits, best first, and how many notes matched in all. */
+    public static final class Ranking {
+        private final List<Hit> hits;
+        private final int total;
+
+        Ranking(List<Hit> hits, int total) {
+            this.hits = hits;
+            this.total = total;
+        }
+
+        public List<Hit> getHits() {
+            return hits;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
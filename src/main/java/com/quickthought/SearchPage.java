@@ -0,0 +1,36 @@
+package com.quickthought;
+
+import java.util.List;
+
+/**
+ * One page of search results and the number of notes that matched in all.
+ */
+public class SearchPage {
+    private final List<Note> notes;
+    private final int total;
+    private final int offset;
+
+    public SearchPage(List<Note> notes, int total, int offset) {
+        this.notes = notes;
+        this.total = total;
+        this.offset = offset;
+    }
+
+    /** The notes on this page, best match first when the search was ranked. */
+    public List<Note> getNotes() {
+        return notes;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /** True when more matches follow this page. */
+    public boolean hasMore() {
+        return offset + notes.size() < total;
+    }
+}
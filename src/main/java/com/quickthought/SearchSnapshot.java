@@ -0,0 +1,423 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Search snapshot (.quickthought_snapshot): the titles and bodies of all plain notes as UTF-8,
+ * one after the other in a single file that is memory-mapped and scanned in place, so a
+ * substring search over every note costs no open or read per note file.
+ *
+ * The offset table (.quickthought_snapshot_offsets) is a journal with one record per note
+ * file: its mtime and size when it was taken, the note id and where title and body are in
+ * the data file. Files that changed since (checked like NoteCatalog does) are re-read and
+ * their text appended to the data file; once replaced and deleted text makes up more than
+ * half of it, the data file is rewritten. Encrypted notes never end up in here.
+ */
+public class SearchSnapshot {
+    static final String DATA_FILE = ".quickthought_snapshot";
+    static final String OFFSETS_FILE = ".quickthought_snapshot_offsets";
+
+    // Notes are scanned in slices of about this many bytes, one slice per task
+    static final int SLICE_BYTES = 1 << 20;
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private final Path dataPath;
+    private final SidecarJournal journal;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded = false;
+    private long dataSize = 0;
+    private long liveBytes = 0;
+    private MappedByteBuffer mapped;
+
+    public SearchSnapshot(String workingDirectory) {
+        Path directory = Paths.get(workingDirectory);
+        this.dataPath = SidecarJournal.sidecarFile(directory, DATA_FILE);
+        this.journal = new SidecarJournal(directory, OFFSETS_FILE);
+    }
+
+    /**
+     * Ids of the notes among the given files whose title or body contains the query, in file
+     * name order. Brings the snapshot up to date first, reading changed files with the loader.
+     * Returns null when the snapshot cannot be used (e.g. it grew past 2 GB) and the caller
+     * has to scan the notes itself.
+     */
+    public synchronized List<UUID> search(CaseInsensitiveMatcher matcher, List<Path> files,
+                                          Function<Path, Note> loader) {
+        try {
+            List<Entry> notes = refresh(files, loader);
+            ByteBuffer data = map();
+            if (data == null) {
+                return null;
+            }
+
+            List<List<Entry>> slices = new ArrayList<>();
+            List<Entry> slice = new ArrayList<>();
+            long sliceBytes = 0;
+            for (Entry entry : notes) {
+                slice.add(entry);
+                sliceBytes += entry.titleLength + entry.contentLength;
+                if (sliceBytes >= SLICE_BYTES) {
+                    slices.add(slice);
+                    slice = new ArrayList<>();
+                    sliceBytes = 0;
+                }
+            }
+            if (!slice.isEmpty()) {
+                slices.add(slice);
+            }
+
+            // Absolute reads only, so every slice can share the one mapping
+            List<List<UUID>> found = ParallelNoteLoader.load(slices, part -> {
+                List<UUID> ids = new ArrayList<>();
+                for (Entry entry : part) {
+                    if (contains(matcher, data, entry.offset, entry.titleLength)
+                            || contains(matcher, data, entry.offset + entry.titleLength, entry.contentLength)) {
+                        ids.add(entry.id);
+                    }
+                }
+                return ids;
+            });
+            List<UUID> result = new ArrayList<>();
+            for (List<UUID> ids : found) {
+                result.addAll(ids);
+            }
+            return result;
+        } catch (IOException e) {
+            System.err.println("Warning: Search snapshot unusable, scanning notes: " + e.getMessage());
+            reset();
+            return null;
+        }
+    }
+
+    /** Drops the snapshot; it is rebuilt from the note files on the next search. */
+    public synchronized void invalidate() {
+        reset();
+    }
+
+    /** Bytes of note text currently in the data file, including replaced text. */
+    synchronized long getDataSize() {
+        return dataSize;
+    }
+
+    private static boolean contains(CaseInsensitiveMatcher matcher, ByteBuffer data, long offset, int length) {
+        int from = (int) offset;
+        if (matcher.canMatchBytes()) {
+            return matcher.indexIn(data, from, from + length) >= 0;
+        }
+        // Cased letters outside ASCII have to be folded as characters
+        return matcher.matches(StandardCharsets.UTF_8.decode(data.slice(from, length)));
+    }
+
+    // Brings the offset table up to date and returns the entries of the files, in file name order
+    private List<Entry> refresh(List<Path> files, Function<Path, Note> loader) throws IOException {
+        ensureLoaded();
+
+        Set<String> seen = new HashSet<>();
+        List<Stale> stale = new ArrayList<>();
+        for (Path path : files) {
+            String fileName = path.getFileName().toString();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted since it was listed
+                continue;
+            }
+            seen.add(fileName);
+            long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            Entry entry = entries.get(fileName);
+            if (entry == null || entry.fileModified != modified || entry.fileSize != attributes.size()) {
+                stale.add(new Stale(path, fileName, modified, attributes.size()));
+            }
+        }
+
+        List<String> changes = new ArrayList<>();
+        for (String fileName : new ArrayList<>(entries.keySet())) {
+            if (!seen.contains(fileName)) {
+                drop(fileName);
+                changes.add(deleteRecord(fileName));
+            }
+        }
+
+        // Re-read everything that changed in one parallel pass, then append it in one go
+        List<Fresh> fresh = ParallelNoteLoader.load(stale, file -> {
+            Note note = loader.apply(file.path);
+            return note == null ? null : new Fresh(file, note.getId(),
+                    note.getTitle().getBytes(StandardCharsets.UTF_8),
+                    note.getContent().getBytes(StandardCharsets.UTF_8));
+        });
+        for (Stale file : stale) {
+            if (entries.containsKey(file.fileName)) {
+                drop(file.fileName);
+                changes.add(deleteRecord(file.fileName));
+            }
+        }
+        if (!fresh.isEmpty()) {
+            append(fresh, changes);
+        }
+        Set<String> unreadable = new HashSet<>();
+        for (Stale file : stale) {
+            unreadable.add(file.fileName);
+        }
+        for (Fresh text : fresh) {
+            unreadable.remove(text.file.fileName);
+        }
+        seen.removeAll(unreadable);
+
+        if (dataSize > MIN_COMPACTION_BYTES && liveBytes * 2 < dataSize) {
+            compact();
+        } else if (!changes.isEmpty() && journal.needsCompaction(entries.size())) {
+            journal.rewrite(records());
+        } else {
+            journal.appendAll(changes);
+        }
+
+        List<String> names = new ArrayList<>(seen);
+        Collections.sort(names);
+        List<Entry> result = new ArrayList<>(names.size());
+        for (String fileName : names) {
+            result.add(entries.get(fileName));
+        }
+        return result;
+    }
+
+    private void append(List<Fresh> fresh, List<String> changes) throws IOException {
+        SidecarJournal.createDirectory(dataPath);
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = dataSize;
+            channel.position(offset);
+            for (Fresh text : fresh) {
+                writeFully(channel, ByteBuffer.wrap(text.title));
+                writeFully(channel, ByteBuffer.wrap(text.content));
+                Entry entry = new Entry(text.id, text.file.fileModified, text.file.fileSize,
+                        offset, text.title.length, text.content.length);
+                entries.put(text.file.fileName, entry);
+                changes.add(addRecord(text.file.fileName, entry));
+                offset += entry.titleLength + entry.contentLength;
+                liveBytes += entry.titleLength + entry.contentLength;
+            }
+            dataSize = offset;
+        }
+        mapped = null;
+    }
+
+    // Copies the live text into a new data file in file name order, then rewrites the offsets
+    private void compact() throws IOException {
+        ByteBuffer data = map();
+        if (data == null) {
+            throw new IOException("Search snapshot too large to compact");
+        }
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names);
+
+        // Without offsets the old data file is ignored, so a crash in between loses nothing
+        journal.delete();
+        Path tempPath = dataPath.resolveSibling(DATA_FILE + ".tmp");
+        Map<String, Entry> moved = new HashMap<>();
+        long offset = 0;
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (String fileName : names) {
+                Entry entry = entries.get(fileName);
+                int length = entry.titleLength + entry.contentLength;
+                writeFully(channel, data.slice((int) entry.offset, length));
+                moved.put(fileName, new Entry(entry.id, entry.fileModified, entry.fileSize,
+                        offset, entry.titleLength, entry.contentLength));
+                offset += length;
+            }
+        }
+        Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapped = null;
+        entries.clear();
+        entries.putAll(moved);
+        dataSize = offset;
+        liveBytes = offset;
+
+        journal.rewrite(records());
+    }
+
+    private List<String> records() {
+        List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            lines.add(addRecord(entry.getKey(), entry.getValue()));
+        }
+        return lines;
+    }
+
+    // The whole data file, mapped read-only; null when it does not fit into one mapping
+    private ByteBuffer map() throws IOException {
+        if (mapped != null) {
+            return mapped;
+        }
+        if (dataSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (dataSize == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+        }
+        return mapped;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!journal.exists()) {
+            // Text without offsets is of no use
+            Files.deleteIfExists(dataPath);
+            return;
+        }
+        try {
+            for (String line : journal.readLines()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                String fileName = SidecarJournal.unescape(fields[1]);
+                drop(fileName);
+                if (!"D".equals(fields[0])) {
+                    Entry entry = parseRecord(fields);
+                    entries.put(fileName, entry);
+                    liveBytes += entry.titleLength + entry.contentLength;
+                }
+            }
+            // Text appended after the last offsets record is simply dead
+            dataSize = Files.exists(dataPath) ? Files.size(dataPath) : 0;
+            long end = entries.values().stream()
+                    .mapToLong(entry -> entry.offset + entry.titleLength + entry.contentLength)
+                    .max().orElse(0);
+            if (end > dataSize) {
+                throw new IOException("data file is shorter than its offsets");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: Search snapshot unreadable, rebuilding: " + e.getMessage());
+            reset();
+            loaded = true;
+        }
+    }
+
+    private void drop(String fileName) {
+        Entry entry = entries.remove(fileName);
+        if (entry != null) {
+            liveBytes -= entry.titleLength + entry.contentLength;
+        }
+    }
+
+    private void reset() {
+        entries.clear();
+        mapped = null;
+        dataSize = 0;
+        liveBytes = 0;
+        loaded = false;
+        try {
+            journal.delete();
+            Files.deleteIfExists(dataPath);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not delete search snapshot: " + e.getMessage());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String addRecord(String fileName, Entry entry) {
+        return String.join("\t",
+                "A",
+                SidecarJournal.escape(fileName),
+                entry.id.toString(),
+                Long.toString(entry.fileModified),
+                Long.toString(entry.fileSize),
+                Long.toString(entry.offset),
+                Integer.toString(entry.titleLength),
+                Integer.toString(entry.contentLength));
+    }
+
+    private static String deleteRecord(String fileName) {
+        return "D\t" + SidecarJournal.escape(fileName);
+    }
+
+    private static Entry parseRecord(String[] fields) {
+        return new Entry(
+                UUID.fromString(fields[2]),
+                Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]),
+                Long.parseLong(fields[5]),
+                Integer.parseInt(fields[6]),
+                Integer.parseInt(fields[7]));
+    }
+
+    // Where a note's text lives in the data file, and the file state it was taken from
+    private static class Entry {
+        final UUID id;
+        final long fileModified;
+        final long fileSize;
+        final long offset;
+        final int titleLength;
+        final int contentLength;
+
+        Entry(UUID id, long fileModified, long fileSize, long offset, int titleLength, int contentLength) {
+            this.id = id;
+            this.fileModified = fileModified;
+            this.fileSize = fileSize;
+            this.offset = offset;
+            this.titleLength = titleLength;
+            this.contentLength = contentLength;
+        }
+    }
+
+    private static class Stale {
+        final Path path;
+        final String fileName;
+        final long fileModified;
+        final long fileSize;
+
+        Stale(Path path, String fileName, long fileModified, long fileSize) {
+            this.path = path;
+            this.fileName = fileName;
+            this.fileModified = fileModified;
+            this.fileSize = fileSize;
+        }
+    }
+
+    private static class Fresh {
+        final Stale file;
+        final UUID id;
+        final byte[] title;
+        final byte[] content;
+
+        Fresh(Stale file, UUID id, byte[] title, byte[] content) {
+            this.file = file;
+            this.id = id;
+            this.title = title;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.quickthought;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Note store keeping many notes per file: an append-only log split into segments under
+ * .quickthought_segments, with an in-memory id -> offset index rebuilt from the log on open.
+ *
+ * Record: type ('P' put, 'T' tombstone), sequence number, note id, payload length, payload,
+ * CRC32 of everything before it. A write appends a put, a delete appends a tombstone; when a
+ * note has several records the highest sequence number wins. A record cut off by a crash
+ * fails its CRC and is truncated away on open. Writes return once their record is synced;
+ * concurrent writers share that fsync through a GroupCommit.
+ *
+ * New records go to the active segment ("segment-N.log"), which is sealed once it reaches
+ * the segment size. Once sealed segments are mostly dead records, a background thread copies
+ * their live records (keeping their sequence numbers) into "compacted-N.log" files and drops
+ * the rest, tombstones included. The old segments are listed in a small manifest before they
+ * are deleted, so a crash in between never brings deleted notes back: open() finishes the
+ * deletion first.
+ *
+ * Until then a deleted note's text is still in its segment; purgeDeleted seals the active
+ * segment and compacts everything right away (done after notes were encrypted).
+ */
+public class SegmentLogNoteStore implements NoteStore {
+    static final String NAME = "segments";
+    static final String DIRECTORY = ".quickthought_segments";
+    static final long DEFAULT_SEGMENT_BYTES = 8L * 1024 * 1024;
+
+    private static final String MANIFEST_FILE = "compaction";
+    private static final String APPENDED_PREFIX = "segment-";
+    private static final String COMPACTED_PREFIX = "compacted-";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(segment|compacted)-(\\d+)\\.log");
+    private static final byte PUT = 'P';
+    private static final byte TOMBSTONE = 'T';
+    // Type, sequence number, id, payload length
+    private static final int HEADER_LENGTH = 1 + Long.BYTES + 2 * Long.BYTES + Integer.BYTES;
+    private static final int TRAILER_LENGTH = Integer.BYTES;
+    // Compact anyway once this many sealed segments piled up (e.g. many short sessions)
+    private static final int MAX_SEALED_SEGMENTS = 32;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    private final Map<UUID, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private final GroupCommit commit = new GroupCommit();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quickthought-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Segment active;
+    private long nextSequence = 1;
+    private int nextSegmentNumber = 1;
+    private boolean closed = false;
+
+    public SegmentLogNoteStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    SegmentLogNoteStore(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        finishCompaction();
+        replay();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<UUID> list() {
+        lock.readLock().lock();
+        try {
+            List<UUID> ids = new ArrayList<>(index.keySet());
+            ids.sort(Comparator.comparing(UUID::toString));
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(UUID id) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] read(UUID id) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Location location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(location.length - HEADER_LENGTH - TRAILER_LENGTH);
+            readFully(segments.get(location.segment).channel, payload, location.offset + HEADER_LENGTH);
+            return payload.array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void write(UUID id, byte[] content) throws IOException {
+        commit.sync(append(PUT, id, content));
+        maybeCompact();
+    }
+
+    @Override
+    public boolean delete(UUID id) throws IOException {
+        if (!contains(id)) {
+            return false;
+        }
+        commit.sync(append(TOMBSTONE, id, new byte[0]));
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public void purgeDeleted() throws IOException {
+        synchronized (compactionLock) {
+            lock.writeLock().lock();
+            try {
+                ensureOpen();
+                // Sealed, so that compaction copies its live records too; the next write starts a new one
+                active = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            compact();
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (compactionLock) {
+            lock.writeLock().lock();
+            try {
+                ensureOpen();
+                for (Segment segment : segments.values()) {
+                    segment.channel.close();
+                    Files.delete(segment.path);
+                }
+                segments.clear();
+                index.clear();
+                active = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public Path fileOf(UUID id) {
+        return null;
+    }
+
+    @Override
+    public List<Path> files() {
+        return null;
+    }
+
+    @Override
+    public boolean isFlat() {
+        return false;
+    }
+
+    @Override
+    public GroupCommit.Batch beginBatch() {
+        return commit.begin();
+    }
+
+    /** Number of segment files, active one included. */
+    int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live records of all sealed segments into compacted segments and deletes the
+     * old files. Runs in the background on its own; callable directly (tests, migration).
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Segment> sealed;
+            Map<Integer, Segment> sources = new HashMap<>();
+            List<Map.Entry<UUID, Location>> live = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                ensureOpen();
+                sealed = new ArrayList<>(segments.values());
+                sealed.remove(active);
+                if (sealed.isEmpty()) {
+                    return;
+                }
+                for (Segment segment : sealed) {
+                    sources.put(segment.number, segment);
+                }
+                for (Map.Entry<UUID, Location> entry : index.entrySet()) {
+                    if (sources.containsKey(entry.getValue().segment)) {
+                        live.add(Map.entry(entry.getKey(), entry.getValue()));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Keep the copies in log order so a compacted file reads like the original
+            live.sort(Comparator.comparingLong(entry -> entry.getValue().sequence));
+
+            // Sealed segments never change, so copying needs no lock
+            List<Segment> outputs = new ArrayList<>();
+            Map<UUID, Location> copies = new HashMap<>();
+            Segment output = null;
+            for (Map.Entry<UUID, Location> entry : live) {
+                Location location = entry.getValue();
+                if (output == null || (output.size > 0 && output.size + location.length > segmentBytes)) {
+                    output = createSegment(COMPACTED_PREFIX, allocateSegmentNumber());
+                    outputs.add(output);
+                }
+                ByteBuffer record = ByteBuffer.allocate(location.length);
+                readFully(sources.get(location.segment).channel, record, location.offset);
+                record.flip();
+                copies.put(entry.getKey(), new Location(output.number, output.size, location.length, location.sequence));
+                writeFully(output.channel, record, output.size);
+                output.size += location.length;
+            }
+            for (Segment segment : outputs) {
+                segment.channel.force(true);
+            }
+            writeManifest(sealed);
+
+            lock.writeLock().lock();
+            try {
+                for (Segment segment : outputs) {
+                    segments.put(segment.number, segment);
+                }
+                for (Map.Entry<UUID, Location> entry : live) {
+                    // Notes written or deleted meanwhile keep their newer record
+                    Location copy = copies.get(entry.getKey());
+                    if (index.get(entry.getKey()) == entry.getValue()) {
+                        index.put(entry.getKey(), copy);
+                        segments.get(copy.segment).liveBytes += copy.length;
+                    }
+                }
+                for (Segment segment : sealed) {
+                    segments.remove(segment.number);
+                    segment.channel.close();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            finishCompaction();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns what has to be synced for the record to be durable
+    private Path[] append(byte type, UUID id, byte[] payload) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int length = HEADER_LENGTH + payload.length + TRAILER_LENGTH;
+            boolean newSegment = active == null || (active.size > 0 && active.size + length > segmentBytes);
+            if (newSegment) {
+                active = createSegment(APPENDED_PREFIX, allocateSegmentNumber());
+                segments.put(active.number, active);
+            }
+            long sequence = nextSequence++;
+            writeFully(active.channel, encode(type, sequence, id, payload), active.size);
+            Location location = new Location(active.number, active.size, length, sequence);
+            active.size += length;
+
+            Location previous = type == PUT ? index.put(id, location) : index.remove(id);
+            if (previous != null) {
+                segments.get(previous.segment).liveBytes -= previous.length;
+            }
+            if (type == PUT) {
+                active.liveBytes += length;
+            }
+            return newSegment ? new Path[] {active.path, directory} : new Path[] {active.path};
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void maybeCompact() {
+        if (!needsCompaction() || !compactionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Warning: Segment compaction failed: " + e.getMessage());
+                } finally {
+                    compactionQueued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing
+            compactionQueued.set(false);
+        }
+    }
+
+    private boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            long liveBytes = 0;
+            int sealed = 0;
+            for (Segment segment : segments.values()) {
+                if (segment != active) {
+                    size += segment.size;
+                    liveBytes += segment.liveBytes;
+                    sealed++;
+                }
+            }
+            long dead = size - liveBytes;
+            return sealed > MAX_SEALED_SEGMENTS || (dead >= segmentBytes / 2 && dead > liveBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void replay() throws IOException {
+        Map<UUID, Location> newest = new HashMap<>();
+        Map<UUID, Boolean> deleted = new HashMap<>();
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+
+        Segment lastAppended = null;
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            Segment segment = new Segment(Integer.parseInt(matcher.group(2)), file,
+                    FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(segment.number, segment);
+            nextSegmentNumber = Math.max(nextSegmentNumber, segment.number + 1);
+            if ("segment".equals(matcher.group(1))
+                    && (lastAppended == null || segment.number > lastAppended.number)) {
+                lastAppended = segment;
+            }
+            readSegment(segment, newest, deleted);
+        }
+
+        for (Map.Entry<UUID, Location> entry : newest.entrySet()) {
+            if (!deleted.get(entry.getKey())) {
+                index.put(entry.getKey(), entry.getValue());
+                segments.get(entry.getValue().segment).liveBytes += entry.getValue().length;
+            }
+        }
+        // Compacted files hold old records and are never appended to
+        if (lastAppended != null && lastAppended.size < segmentBytes) {
+            active = lastAppended;
+        }
+    }
+
+    private void readSegment(Segment segment, Map<UUID, Location> newest, Map<UUID, Boolean> deleted)
+            throws IOException {
+        long position = 0;
+        long fileSize = segment.channel.size();
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(segment.channel.position(0)), 64 * 1024);
+        DataInputStream in = new DataInputStream(stream);
+        CRC32 crc = new CRC32();
+        byte[] header = new byte[HEADER_LENGTH];
+        try {
+            while (position < fileSize) {
+                in.readFully(header);
+                ByteBuffer fields = ByteBuffer.wrap(header);
+                byte type = fields.get();
+                long sequence = fields.getLong();
+                UUID id = new UUID(fields.getLong(), fields.getLong());
+                int payloadLength = fields.getInt();
+                if ((type != PUT && type != TOMBSTONE) || payloadLength < 0
+                        || position + HEADER_LENGTH + payloadLength + TRAILER_LENGTH > fileSize) {
+                    break;
+                }
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(header);
+                crc.update(payload);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+
+                int length = HEADER_LENGTH + payloadLength + TRAILER_LENGTH;
+                Location current = newest.get(id);
+                if (current == null || sequence > current.sequence) {
+                    newest.put(id, new Location(segment.number, position, length, sequence));
+                    deleted.put(id, type == TOMBSTONE);
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                position += length;
+            }
+        } catch (EOFException e) {
+            // Torn record at the end, handled below
+        }
+
+        if (position < fileSize) {
+            System.err.println("Warning: Dropping damaged tail of " + segment.path.getFileName()
+                    + " (" + (fileSize - position) + " bytes)");
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private Segment createSegment(String prefix, int number) throws IOException {
+        Path file = directory.resolve(String.format("%s%06d.log", prefix, number));
+        return new Segment(number, file, FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private int allocateSegmentNumber() {
+        lock.writeLock().lock();
+        try {
+            return nextSegmentNumber++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeManifest(List<Segment> replaced) throws IOException {
+        StringBuilder names = new StringBuilder();
+        for (Segment segment : replaced) {
+            names.append(segment.path.getFileName()).append('\n');
+        }
+        Path temp = directory.resolve(MANIFEST_FILE + ".tmp");
+        Files.writeString(temp, names, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The manifest only exists once the compacted copies are on disk
+    private void finishCompaction() throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (SEGMENT_NAME.matcher(name).matches()) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+        }
+        Files.delete(manifest);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Note store is closed");
+        }
+    }
+
+    private static ByteBuffer encode(byte type, long sequence, UUID id, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + payload.length + TRAILER_LENGTH);
+        record.put(type)
+                .putLong(sequence)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .putInt(payload.length)
+                .put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Segment ends inside a record");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /** Where the newest record of a note is. */
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final long sequence;
+
+        Location(int segment, long offset, int length, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        // Bytes of records that are still the newest version of their note
+        long liveBytes;
+
+        Segment(int number, Path path, FileChannel channel) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Markdown notes fanned out by id prefix: note abcdef12-... lives in ab/cd/abcdef12-....md,
+ * so no directory holds more than a few hundred files even with millions of notes. Paths are
+ * computed from the id, listing walks the shards in parallel.
+ *
+ * Notes still lying flat in the working directory (a directory being moved over, see
+ * moveIn) are read, rewritten and deleted like sharded ones; a rewrite moves them into their
+ * shard. Hand edits inside the shards are picked up by the catalog, but the sidecar indexes
+ * only watch the top directory.
+ *
+ * As in MarkdownNoteStore, every .md file is a note to files(), also hand-named ones in the
+ * top directory or a shard, while list() only knows the notes named after their id. Those
+ * hand-named files stay where they are when notes move in.
+ */
+public class ShardedNoteStore implements NoteStore {
+    static final String NAME = "sharded";
+
+    private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+
+    private final Path directory;
+    private final MarkdownNoteStore flat;
+    private final GroupCommit commit = new GroupCommit();
+
+    public ShardedNoteStore(Path directory) {
+        this.directory = directory;
+        this.flat = new MarkdownNoteStore(directory);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<UUID> list() throws IOException {
+        List<UUID> ids = new ArrayList<>();
+        for (Path file : files()) {
+            UUID id = idOf(file);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean contains(UUID id) {
+        return Files.exists(fileOf(id));
+    }
+
+    @Override
+    public byte[] read(UUID id) throws IOException {
+        Path file = fileOf(id);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    @Override
+    public void write(UUID id, byte[] content) throws IOException {
+        Path file = shardedFile(id);
+        Path shard = file.getParent();
+        if (Files.isDirectory(shard)) {
+            commit.write(file, content);
+        } else {
+            // A new shard has to be durable in its parents as well
+            Files.createDirectories(shard);
+            GroupCommit.writeFile(file, content);
+            commit.sync(shard, shard.getParent(), directory);
+        }
+        flat.delete(id);
+    }
+
+    @Override
+    public boolean delete(UUID id) throws IOException {
+        boolean deleted = Files.deleteIfExists(shardedFile(id));
+        return flat.delete(id) || deleted;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        for (Path file : files()) {
+            // Hand-named files are not ours to remove, see MarkdownNoteStore.clear
+            if (idOf(file) != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** The sharded path, or the flat one while the note was not moved into its shard yet. */
+    @Override
+    public Path fileOf(UUID id) {
+        Path sharded = shardedFile(id);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flatFile = flat.fileOf(id);
+        return Files.exists(flatFile) ? flatFile : sharded;
+    }
+
+    /** All note files, shards walked in parallel, in file name (= id) order. */
+    @Override
+    public List<Path> files() throws IOException {
+        List<Path> shards;
+        try (Stream<Path> entries = Files.list(directory)) {
+            shards = entries.filter(path -> SHARD_NAME.matcher(path.getFileName().toString()).matches()
+                            && Files.isDirectory(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<List<Path>> perShard;
+        try {
+            perShard = ParallelNoteLoader.load(shards, shard -> {
+                try (Stream<Path> files = Files.walk(shard, 2)) {
+                    return files.filter(path -> path.toString().endsWith(".md")).collect(Collectors.toList());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // A note in both places keeps its sharded copy, the newer one
+        Map<String, Path> byName = new LinkedHashMap<>();
+        for (List<Path> files : perShard) {
+            for (Path file : files) {
+                byName.put(file.getFileName().toString(), file);
+            }
+        }
+        for (Path file : flat.files()) {
+            byName.putIfAbsent(file.getFileName().toString(), file);
+        }
+        List<Path> files = new ArrayList<>(byName.values());
+        files.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return files;
+    }
+
+    @Override
+    public boolean isFlat() {
+        return false;
+    }
+
+    @Override
+    public GroupCommit.Batch beginBatch() {
+        return commit.begin();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Moves every note still lying flat in the working directory into its shard, one atomic
+     * rename each; the notes stay readable throughout. Returns the number of notes moved.
+     */
+    int moveIn() throws IOException {
+        return move(flat.noteFiles(), file -> shardedFile(idOf(file)));
+    }
+
+    /**
+     * The reverse of moveIn, for going back to the flat layout; hand-named files in the shards
+     * come along under their own name. Empty shards are removed.
+     */
+    int moveOut() throws IOException {
+        List<Path> sharded = new ArrayList<>();
+        for (Path file : files()) {
+            if (!file.getParent().equals(directory)) {
+                sharded.add(file);
+            }
+        }
+        int moved = move(sharded, file -> directory.resolve(file.getFileName()));
+        for (Path file : sharded) {
+            deleteIfEmpty(file.getParent());
+            deleteIfEmpty(file.getParent().getParent());
+        }
+        return moved;
+    }
+
+    private int move(List<Path> files, Function<Path, Path> destination) throws IOException {
+        try {
+            return ParallelNoteLoader.load(files, file -> {
+                try {
+                    Path target = destination.apply(file);
+                    Files.createDirectories(target.getParent());
+                    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return file;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).size();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void deleteIfEmpty(Path shard) throws IOException {
+        try (Stream<Path> entries = Files.list(shard)) {
+            if (entries.findAny().isPresent()) {
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        Files.deleteIfExists(shard);
+    }
+
+    // Null for files not named after a note id
+    private static UUID idOf(Path file) {
+        try {
+            return UUID.fromString(IdPrefixIndex.stripExtension(file.getFileName().toString()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    Path shardedFile(UUID id) {
+        String name = id.toString();
+        return directory.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name + ".md");
+    }
+}
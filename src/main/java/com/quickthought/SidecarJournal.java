@@ -0,0 +1,185 @@
+package com.quickthought;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-oriented append-only file kept next to the notes (search index, catalog, ...).
+ * Records are appended as they happen and the whole file is rewritten atomically on compaction.
+ *
+ * Sidecar files live in their own subdirectory, so that writing, renaming or deleting them
+ * leaves the notes directory's mtime alone: that mtime is what tells every index whether
+ * notes were added or removed behind its back (see isCurrent).
+ */
+class SidecarJournal {
+    static final String DIRECTORY = ".quickthought";
+
+    private final Path directory;
+    private final Path path;
+    private int records = 0;
+
+    SidecarJournal(Path directory, String fileName) {
+        this.directory = directory;
+        this.path = sidecarFile(directory, fileName);
+    }
+
+    /**
+     * Where the sidecar file of that name belongs for the notes directory. A copy left in the
+     * notes directory itself by an older version is deleted, it would never be updated again.
+     */
+    static Path sidecarFile(Path notesDirectory, String fileName) {
+        try {
+            Files.deleteIfExists(notesDirectory.resolve(fileName));
+        } catch (IOException e) {
+            System.err.println("Warning: Could not remove old " + fileName + ": " + e.getMessage());
+        }
+        return notesDirectory.resolve(DIRECTORY).resolve(fileName);
+    }
+
+    /** Creates the sidecar directory of the file if need be, before the file is written. */
+    static void createDirectory(Path sidecarFile) throws IOException {
+        Files.createDirectories(sidecarFile.getParent());
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    List<String> readLines() throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        records = lines.size();
+        return lines;
+    }
+
+    void append(String record) throws IOException {
+        createDirectory(path);
+        Files.writeString(path, record + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        records++;
+    }
+
+    void appendAll(List<String> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        createDirectory(path);
+        Files.writeString(path, String.join("\n", batch) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        records += batch.size();
+    }
+
+    void rewrite(Iterable<String> lines) throws IOException {
+        createDirectory(path);
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+                written++;
+            }
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = written;
+    }
+
+    /**
+     * Rewrites the journal without the records of deleted entries, so that their text (titles,
+     * terms, ...) does not stay on disk until the next compaction. Every journal has the same
+     * record shape: "A key ..." adds or replaces the entry of that key, "D key" removes it.
+     * A stale journal is deleted instead, rewriting it would make it look current.
+     */
+    void dropDeleted() throws IOException {
+        if (!exists()) {
+            return;
+        }
+        if (!isCurrent()) {
+            delete();
+            return;
+        }
+        Map<String, String> live = new LinkedHashMap<>();
+        for (String line : readLines()) {
+            int start = line.indexOf('\t') + 1;
+            if (start == 0) {
+                continue;
+            }
+            int end = line.indexOf('\t', start);
+            String key = end < 0 ? line.substring(start) : line.substring(start, end);
+            live.remove(key);
+            if (line.startsWith("A\t")) {
+                live.put(key, line);
+            }
+        }
+        rewrite(live.values());
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+        records = 0;
+    }
+
+    /** True when nothing was added to or removed from the notes directory since this file was written. */
+    boolean isCurrent() {
+        try {
+            return Files.getLastModifiedTime(path).compareTo(Files.getLastModifiedTime(directory)) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Journal has at least twice as many records as live entries. */
+    boolean needsCompaction(int liveEntries) {
+        return records > 64 && records > 2 * liveEntries;
+    }
+
+    static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case ',': escaped.append("\\c"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': unescaped.append('\t'); break;
+                    case 'n': unescaped.append('\n'); break;
+                    case 'r': unescaped.append('\r'); break;
+                    case 'c': unescaped.append(','); break;
+                    default: unescaped.append(next);
+                }
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,255 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * In-memory tag index for boolean tag queries over the plain notes (list --tags a,b --exclude c).
+ *
+ * Tags are interned to int ids and notes to int ordinals; every tag keeps a bitmap of the
+ * ordinals carrying it, so a query is a handful of word-wide AND/OR/ANDNOT passes. Ordinals
+ * of deleted notes are reused to keep the bitmaps dense. Tags match case-insensitively.
+ *
+ * The index is built from the note catalog and, like the sidecar indexes, dropped when the
+ * notes directory changed after NoteManager last touched it.
+ */
+public class TagIndex {
+    private final Path directory;
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<String> tagNames = new ArrayList<>();
+    private final List<BitSet> postings = new ArrayList<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final List<NoteSummary> notes = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private FileTime directoryModified;
+    private boolean loaded = false;
+
+    public TagIndex(String workingDirectory) {
+        this.directory = Paths.get(workingDirectory);
+    }
+
+    /** Summaries of the notes matching the query, in id order. */
+    public synchronized List<NoteSummary> query(Query query, Supplier<List<NoteSummary>> corpus) {
+        ensureLoaded(corpus);
+
+        BitSet result = (BitSet) live.clone();
+        for (String tag : query.all) {
+            Integer tagId = tagIds.get(tag);
+            if (tagId == null) {
+                return Collections.emptyList();
+            }
+            result.and(postings.get(tagId));
+        }
+        if (!query.any.isEmpty()) {
+            BitSet union = new BitSet();
+            for (String tag : query.any) {
+                Integer tagId = tagIds.get(tag);
+                if (tagId != null) {
+                    union.or(postings.get(tagId));
+                }
+            }
+            result.and(union);
+        }
+        for (String tag : query.none) {
+            Integer tagId = tagIds.get(tag);
+            if (tagId != null) {
+                result.andNot(postings.get(tagId));
+            }
+        }
+
+        List<NoteSummary> matches = new ArrayList<>(result.cardinality());
+        for (int ordinal = result.nextSetBit(0); ordinal >= 0; ordinal = result.nextSetBit(ordinal + 1)) {
+            matches.add(notes.get(ordinal));
+        }
+        matches.sort(Comparator.comparing(summary -> summary.getId().toString()));
+        return matches;
+    }
+
+    /** Same contract as SearchIndex.invalidateIfStale: call before a note file is written. */
+    public synchronized void invalidateIfStale() {
+        if (loaded && !isCurrent()) {
+            invalidate();
+        }
+    }
+
+    public synchronized void addNote(NoteSummary summary) {
+        if (!loaded) {
+            return;
+        }
+        removeOrdinal(summary.getId());
+        addOrdinal(summary);
+        directoryModified = readDirectoryModified();
+    }
+
+    public synchronized void removeNote(UUID id) {
+        if (!loaded) {
+            return;
+        }
+        removeOrdinal(id);
+        directoryModified = readDirectoryModified();
+    }
+
+    public synchronized void invalidate() {
+        tagIds.clear();
+        tagNames.clear();
+        postings.clear();
+        ordinals.clear();
+        notes.clear();
+        live.clear();
+        freeOrdinals.clear();
+        loaded = false;
+    }
+
+    public synchronized int size() {
+        return ordinals.size();
+    }
+
+    static String normalize(String tag) {
+        return tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void ensureLoaded(Supplier<List<NoteSummary>> corpus) {
+        if (loaded && isCurrent()) {
+            return;
+        }
+        invalidate();
+        // Read the mtime first: anything changed while loading makes the index look stale
+        directoryModified = readDirectoryModified();
+        for (NoteSummary summary : corpus.get()) {
+            addOrdinal(summary);
+        }
+        loaded = true;
+    }
+
+    private boolean isCurrent() {
+        FileTime modified = readDirectoryModified();
+        return modified != null && modified.equals(directoryModified);
+    }
+
+    private FileTime readDirectoryModified() {
+        try {
+            return Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void addOrdinal(NoteSummary summary) {
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = notes.size();
+            notes.add(summary);
+        } else {
+            ordinal = freeOrdinals.pop();
+            notes.set(ordinal, summary);
+        }
+        ordinals.put(summary.getId(), ordinal);
+        live.set(ordinal);
+
+        for (String tag : summary.getTags()) {
+            if (tag == null || tag.isBlank()) {
+                continue;
+            }
+            postings.get(intern(normalize(tag))).set(ordinal);
+        }
+    }
+
+    private void removeOrdinal(UUID id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        for (String tag : notes.get(ordinal).getTags()) {
+            Integer tagId = tag != null ? tagIds.get(normalize(tag)) : null;
+            if (tagId != null) {
+                postings.get(tagId).clear(ordinal);
+            }
+        }
+        live.clear(ordinal);
+        notes.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+    }
+
+    private int intern(String tag) {
+        Integer tagId = tagIds.get(tag);
+        if (tagId == null) {
+            tagId = tagNames.size();
+            tagIds.put(tag, tagId);
+            tagNames.add(tag);
+            postings.add(new BitSet());
+        }
+        return tagId;
+    }
+
+    /**
+     * A boolean tag query: the note must carry every tag of "all", at least one tag of "any"
+     * (when given) and none of the tags of "none".
+     */
+    public static class Query {
+        private final Set<String> all;
+        private final Set<String> any;
+        private final Set<String> none;
+
+        public Query(List<String> all, List<String> any, List<String> none) {
+            this.all = normalizeAll(all);
+            this.any = normalizeAll(any);
+            this.none = normalizeAll(none);
+        }
+
+        /** Builds a query from comma-separated option values, any of which may be null. */
+        public static Query parse(String all, String any, String none) {
+            return new Query(split(all), split(any), split(none));
+        }
+
+        public boolean isEmpty() {
+            return all.isEmpty() && any.isEmpty() && none.isEmpty();
+        }
+
+        /** Evaluates the query against one note's tags, for notes outside the index. */
+        public boolean matches(List<String> tags) {
+            Set<String> noteTags = normalizeAll(tags);
+            if (!noteTags.containsAll(all)) {
+                return false;
+            }
+            if (!any.isEmpty() && Collections.disjoint(noteTags, any)) {
+                return false;
+            }
+            return Collections.disjoint(noteTags, none);
+        }
+
+        private static List<String> split(String value) {
+            return value == null ? Collections.emptyList() : Arrays.asList(value.split(","));
+        }
+
+        private static Set<String> normalizeAll(List<String> tags) {
+            Set<String> result = new LinkedHashSet<>();
+            if (tags != null) {
+                for (String tag : tags) {
+                    if (tag != null && !tag.isBlank()) {
+                        result.add(normalize(tag));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * On-disk title -> note ids index for the plain notes in a working directory, so read, edit
+ * and encrypt can resolve --title without parsing the corpus. Several notes may share a title.
+ *
+ * Like SearchIndex it is an append-only journal (.quickthought_titles) of "A" and "D" records
+ * that is rebuilt when the notes directory changed after it was last written. Titles are kept
+ * exactly as written, plus a lower-cased sorted view for case-insensitive and prefix lookups.
+ */
+public class TitleIndex {
+    static final String INDEX_FILE = ".quickthought_titles";
+
+    private final SidecarJournal journal;
+    private final Map<UUID, String> titles = new HashMap<>();
+    private final Map<String, List<UUID>> exact = new HashMap<>();
+    private final NavigableMap<String, List<UUID>> folded = new TreeMap<>();
+    private boolean loaded = false;
+
+    public TitleIndex(String workingDirectory) {
+        this.journal = new SidecarJournal(Paths.get(workingDirectory), INDEX_FILE);
+    }
+
+    /** Ids of the notes titled exactly like this. */
+    public synchronized List<UUID> find(String title, Supplier<List<NoteSummary>> corpus) {
+        ensureLoaded(corpus);
+        return copy(exact.get(title));
+    }
+
+    /** Ids of the notes whose title equals this one, ignoring case. */
+    public synchronized List<UUID> findIgnoreCase(String title, Supplier<List<NoteSummary>> corpus) {
+        ensureLoaded(corpus);
+        return copy(folded.get(fold(title)));
+    }
+
+    /** Ids of the notes whose title starts with the prefix, ignoring case, at most limit of them. */
+    public synchronized List<UUID> findByPrefix(String prefix, int limit, Supplier<List<NoteSummary>> corpus) {
+        ensureLoaded(corpus);
+        String key = fold(prefix);
+        List<UUID> result = new ArrayList<>();
+        for (Map.Entry<String, List<UUID>> entry : folded.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key)) {
+                break;
+            }
+            for (UUID id : entry.getValue()) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Same contract as SearchIndex.invalidateIfStale: call before a note file is written. */
+    public synchronized void invalidateIfStale() {
+        if (journal.exists() && !journal.isCurrent()) {
+            invalidate();
+        }
+    }
+
+    public synchronized void addNote(UUID id, String title) {
+        addTitles(Map.of(id, title));
+    }
+
+    /** Same as addNote for many notes (id -> title), with a single journal append. */
+    public synchronized void addTitles(Map<UUID, String> added) {
+        List<String> records = new ArrayList<>(added.size());
+        for (Map.Entry<UUID, String> entry : added.entrySet()) {
+            if (loaded) {
+                removeTitle(entry.getKey());
+                addTitle(entry.getKey(), entry.getValue());
+            }
+            records.add("A\t" + entry.getKey() + "\t" + SidecarJournal.escape(entry.getValue()));
+        }
+        appendRecords(records);
+    }
+
+    public synchronized void removeNote(UUID id) {
+        if (loaded) {
+            removeTitle(id);
+        }
+        appendRecords(List.of("D\t" + id));
+    }
+
+    /** Rewrites the index file without the records of removed notes, see SidecarJournal.dropDeleted. */
+    public synchronized void dropDeleted() {
+        try {
+            journal.dropDeleted();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not rewrite title index: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    public synchronized void invalidate() {
+        clear();
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not remove title index: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return titles.size();
+    }
+
+    private static String fold(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<UUID> copy(List<UUID> ids) {
+        return ids == null ? Collections.emptyList() : new ArrayList<>(ids);
+    }
+
+    private void ensureLoaded(Supplier<List<NoteSummary>> corpus) {
+        if (loaded && journal.isCurrent()) {
+            return;
+        }
+        clear();
+
+        if (journal.exists() && journal.isCurrent()) {
+            try {
+                readJournal();
+                loaded = true;
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: Title index unreadable, rebuilding: " + e.getMessage());
+                clear();
+            }
+        }
+        for (NoteSummary summary : corpus.get()) {
+            addTitle(summary.getId(), summary.getTitle());
+        }
+        loaded = true;
+        writeSnapshot();
+    }
+
+    private void readJournal() throws IOException {
+        for (String line : journal.readLines()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", 3);
+            UUID id = UUID.fromString(fields[1]);
+            removeTitle(id);
+            if ("A".equals(fields[0])) {
+                addTitle(id, SidecarJournal.unescape(fields[2]));
+            }
+        }
+    }
+
+    private void clear() {
+        titles.clear();
+        exact.clear();
+        folded.clear();
+        loaded = false;
+    }
+
+    private void addTitle(UUID id, String title) {
+        if (title == null) {
+            return;
+        }
+        titles.put(id, title);
+        exact.computeIfAbsent(title, t -> new ArrayList<>()).add(id);
+        folded.computeIfAbsent(fold(title), t -> new ArrayList<>()).add(id);
+    }
+
+    private void removeTitle(UUID id) {
+        String title = titles.remove(id);
+        if (title == null) {
+            return;
+        }
+        removeFrom(exact, title, id);
+        removeFrom(folded, fold(title), id);
+    }
+
+    private static void removeFrom(Map<String, List<UUID>> map, String key, UUID id) {
+        List<UUID> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private void appendRecords(List<String> records) {
+        // No index yet: the first lookup builds it from scratch
+        if (!journal.exists()) {
+            return;
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not update title index: " + e.getMessage());
+            invalidate();
+            return;
+        }
+        if (loaded && journal.needsCompaction(titles.size())) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        List<String> lines = new ArrayList<>(titles.size());
+        for (Map.Entry<UUID, String> entry : titles.entrySet()) {
+            lines.add("A\t" + entry.getKey() + "\t" + SidecarJournal.escape(entry.getValue()));
+        }
+        try {
+            journal.rewrite(lines);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write title index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * On-disk trigram index (folded three-character sequence -> note ids) over the titles and
+ * contents of the plain notes, used to narrow a regex search down to the notes that can
+ * possibly match (see TrigramQuery) before the pattern itself is run.
+ *
+ * Same journal scheme as SearchIndex: "A id trigram..." and "D id" records, compacted once
+ * dead records pile up, rebuilt when the notes directory changed behind our back. Until the
+ * first regex search there is no index file and writes skip the work of keeping it. In
+ * memory every note gets a small number and every trigram a growing list of them; numbers of
+ * replaced or deleted notes are dropped when the journal is compacted.
+ */
+public class TrigramIndex {
+    static final String INDEX_FILE = ".quickthought_trigrams";
+
+    private final SidecarJournal journal;
+    private final Map<Long, IdList> postings = new HashMap<>();
+    private final Map<UUID, Integer> numbers = new HashMap<>();
+    // Note id by number, null once replaced or deleted
+    private final List<UUID> ids = new ArrayList<>();
+    private boolean loaded = false;
+
+    public TrigramIndex(String workingDirectory) {
+        this.journal = new SidecarJournal(Paths.get(workingDirectory), INDEX_FILE);
+    }
+
+    /**
+     * Ids of the notes that may satisfy the query, or null when the query requires nothing
+     * and every note is a candidate.
+     */
+    public synchronized Set<UUID> candidates(TrigramQuery query, Supplier<List<Note>> corpus) {
+        if (query.op == TrigramQuery.Op.ALL) {
+            return null;
+        }
+        ensureLoaded(corpus);
+        BitSet matches = evaluate(query);
+        Set<UUID> result = new HashSet<>();
+        for (int number = matches.nextSetBit(0); number >= 0; number = matches.nextSetBit(number + 1)) {
+            UUID id = ids.get(number);
+            if (id != null) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Drops the index file if notes changed outside of NoteManager, see SearchIndex. */
+    public synchronized void invalidateIfStale() {
+        if (journal.exists() && !journal.isCurrent()) {
+            invalidate();
+        }
+    }
+
+    public synchronized void addNote(Note note) {
+        addNotes(List.of(note));
+    }
+
+    /** Same as addNote for many notes, with a single journal append. */
+    public synchronized void addNotes(Collection<Note> notes) {
+        if (!loaded && !journal.exists()) {
+            return;
+        }
+        List<String> records = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            long[] trigrams = trigrams(note);
+            if (loaded) {
+                removeDocument(note.getId());
+                addDocument(note.getId(), trigrams);
+            }
+            records.add(record(note.getId(), trigrams));
+        }
+        appendRecords(records);
+    }
+
+    public synchronized void removeNote(UUID id) {
+        if (loaded) {
+            removeDocument(id);
+        }
+        appendRecords(List.of("D\t" + id));
+    }
+
+    /** Rewrites the index file without the records of removed notes, see SidecarJournal.dropDeleted. */
+    public synchronized void dropDeleted() {
+        try {
+            journal.dropDeleted();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not rewrite trigram index: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    public synchronized void invalidate() {
+        clear();
+        loaded = false;
+        try {
+            journal.delete();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not remove trigram index: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return numbers.size();
+    }
+
+    /** Distinct folded trigrams of the title and of the content, sorted. */
+    static long[] trigrams(Note note) {
+        Set<Long> trigrams = new HashSet<>();
+        for (String text : new String[] {note.getTitle(), note.getContent()}) {
+            if (text == null) {
+                continue;
+            }
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                trigrams.add(TrigramQuery.pack(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)));
+            }
+        }
+        long[] sorted = new long[trigrams.size()];
+        int i = 0;
+        for (long trigram : trigrams) {
+            sorted[i++] = trigram;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private BitSet evaluate(TrigramQuery query) {
+        switch (query.op) {
+            case TRIGRAM: {
+                BitSet result = new BitSet(ids.size());
+                IdList list = postings.get(query.trigram);
+                if (list != null) {
+                    for (int i = 0; i < list.size; i++) {
+                        result.set(list.numbers[i]);
+                    }
+                }
+                return result;
+            }
+            case AND: {
+                BitSet result = null;
+                for (TrigramQuery operand : query.operands) {
+                    if (operand.op == TrigramQuery.Op.ALL) {
+                        continue;
+                    }
+                    BitSet matches = evaluate(operand);
+                    if (result == null) {
+                        result = matches;
+                    } else {
+                        result.and(matches);
+                    }
+                    if (result.isEmpty()) {
+                        break;
+                    }
+                }
+                return result != null ? result : everything();
+            }
+            case OR: {
+                BitSet result = new BitSet(ids.size());
+                for (TrigramQuery operand : query.operands) {
+                    result.or(evaluate(operand));
+                }
+                return result;
+            }
+            default:
+                return everything();
+        }
+    }
+
+    private BitSet everything() {
+        BitSet all = new BitSet(ids.size());
+        all.set(0, ids.size());
+        return all;
+    }
+
+    private void ensureLoaded(Supplier<List<Note>> corpus) {
+        if (loaded && journal.isCurrent()) {
+            return;
+        }
+        clear();
+        loaded = false;
+
+        if (journal.exists() && journal.isCurrent()) {
+            try {
+                readJournal();
+                loaded = true;
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: Trigram index unreadable, rebuilding: " + e.getMessage());
+                clear();
+            }
+        }
+        for (Note note : corpus.get()) {
+            addDocument(note.getId(), trigrams(note));
+        }
+        loaded = true;
+        writeSnapshot();
+    }
+
+    private void readJournal() throws IOException {
+        for (String line : journal.readLines()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", 3);
+            UUID id = UUID.fromString(fields[1]);
+            removeDocument(id);
+            if ("A".equals(fields[0])) {
+                String[] encoded = fields.length > 2 && !fields[2].isEmpty() ? fields[2].split(" ") : new String[0];
+                long[] trigrams = new long[encoded.length];
+                for (int i = 0; i < encoded.length; i++) {
+                    trigrams[i] = Long.parseLong(encoded[i], Character.MAX_RADIX);
+                }
+                addDocument(id, trigrams);
+            }
+        }
+    }
+
+    private void addDocument(UUID id, long[] trigrams) {
+        int number = ids.size();
+        ids.add(id);
+        numbers.put(id, number);
+        for (long trigram : trigrams) {
+            postings.computeIfAbsent(trigram, t -> new IdList()).add(number);
+        }
+    }
+
+    // The number stays in the postings until compaction, it just no longer leads to a note
+    private void removeDocument(UUID id) {
+        Integer number = numbers.remove(id);
+        if (number != null) {
+            ids.set(number, null);
+        }
+    }
+
+    private void clear() {
+        postings.clear();
+        numbers.clear();
+        ids.clear();
+    }
+
+    private void appendRecords(List<String> records) {
+        if (!journal.exists()) {
+            return;
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not update trigram index: " + e.getMessage());
+            invalidate();
+            return;
+        }
+        if (loaded && journal.needsCompaction(numbers.size())) {
+            writeSnapshot();
+        }
+    }
+
+    // Rewrites the journal with one record per live note and renumbers the notes densely
+    private void writeSnapshot() {
+        Map<Integer, List<Long>> byNumber = new HashMap<>();
+        for (Map.Entry<Long, IdList> entry : postings.entrySet()) {
+            IdList list = entry.getValue();
+            for (int i = 0; i < list.size; i++) {
+                if (ids.get(list.numbers[i]) != null) {
+                    byNumber.computeIfAbsent(list.numbers[i], n -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+        }
+        List<UUID> live = new ArrayList<>(numbers.keySet());
+        Map<UUID, long[]> documents = new HashMap<>();
+        for (UUID id : live) {
+            List<Long> trigrams = byNumber.getOrDefault(numbers.get(id), List.of());
+            long[] sorted = new long[trigrams.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = trigrams.get(i);
+            }
+            Arrays.sort(sorted);
+            documents.put(id, sorted);
+        }
+
+        clear();
+        List<String> lines = new ArrayList<>(live.size());
+        for (UUID id : live) {
+            addDocument(id, documents.get(id));
+            lines.add(record(id, documents.get(id)));
+        }
+        try {
+            journal.rewrite(lines);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write trigram index: " + e.getMessage());
+        }
+    }
+
+    private static String record(UUID id, long[] trigrams) {
+        StringBuilder record = new StringBuilder("A\t").append(id).append('\t');
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i > 0) {
+                record.append(' ');
+            }
+            record.append(Long.toString(trigrams[i], Character.MAX_RADIX));
+        }
+        return record.toString();
+    }
+
+    // Growable list of note numbers, ascending since numbers are handed out in order
+    private static final class IdList {
+        int[] numbers = new int[4];
+        int size = 0;
+
+        void add(int number) {
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            numbers[size++] = number;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.quickthought;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Boolean query over trigrams (AND, OR, single trigrams, or "anything") that every text
+ * matching a regular expression has to satisfy; see TrigramIndex.
+ *
+ * fromRegex analyses java.util.regex syntax the way code search engines do: literal runs
+ * yield the trigrams they contain, alternatives become OR, small sets of exact strings (from
+ * "colou?r", "[bc]at", "(a|b)c") are kept as such as long as they stay small. Whatever it
+ * does not understand (backreferences, (?x) comments, ...) yields "anything", so the query
+ * may let through notes that do not match but never drops one that does. Trigrams are taken
+ * from case-folded text, so the query serves case-sensitive and (?i) patterns alike.
+ */
+public final class TrigramQuery {
+    public static final TrigramQuery ALL = new TrigramQuery(Op.ALL, 0, List.of());
+
+    // Exact string sets larger than this are turned into trigram queries
+    private static final int MAX_EXACT = 16;
+
+    enum Op { ALL, TRIGRAM, AND, OR }
+
+    final Op op;
+    final long trigram;
+    final List<TrigramQuery> operands;
+
+    private TrigramQuery(Op op, long trigram, List<TrigramQuery> operands) {
+        this.op = op;
+        this.trigram = trigram;
+        this.operands = operands;
+    }
+
+    /** The query every match of the regex satisfies; ALL when nothing can be required. */
+    public static TrigramQuery fromRegex(String regex) {
+        try {
+            Parser parser = new Parser(regex);
+            Info info = parser.alternation();
+            if (parser.position < regex.length()) {
+                return ALL;
+            }
+            return info.toQuery();
+        } catch (UnsupportedOperationException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return ALL;
+        }
+    }
+
+    /** All trigrams of the text, folded. */
+    static TrigramQuery of(String text) {
+        List<TrigramQuery> trigrams = new ArrayList<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(new TrigramQuery(Op.TRIGRAM, pack(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)), List.of()));
+        }
+        return and(trigrams);
+    }
+
+    static long pack(char a, char b, char c) {
+        return ((long) fold(a) << 32) | ((long) fold(b) << 16) | fold(c);
+    }
+
+    // Through upper case first, so that e.g. the long s and the Kelvin sign fold like (?iu) does
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static TrigramQuery and(List<TrigramQuery> queries) {
+        return combine(Op.AND, queries);
+    }
+
+    static TrigramQuery or(List<TrigramQuery> queries) {
+        return combine(Op.OR, queries);
+    }
+
+    private static TrigramQuery combine(Op op, List<TrigramQuery> queries) {
+        Set<TrigramQuery> operands = new LinkedHashSet<>();
+        for (TrigramQuery query : queries) {
+            if (query.op == Op.ALL) {
+                if (op == Op.OR) {
+                    return ALL;
+                }
+            } else if (query.op == op) {
+                operands.addAll(query.operands);
+            } else {
+                operands.add(query);
+            }
+        }
+        if (operands.isEmpty()) {
+            return ALL;
+        }
+        if (operands.size() == 1) {
+            return operands.iterator().next();
+        }
+        return new TrigramQuery(op, 0, new ArrayList<>(operands));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TrigramQuery)) {
+            return false;
+        }
+        TrigramQuery query = (TrigramQuery) other;
+        return op == query.op && trigram == query.trigram && operands.equals(query.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * op.hashCode() + Long.hashCode(trigram)) + operands.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        switch (op) {
+            case ALL:
+                return "ALL";
+            case TRIGRAM:
+                return "\"" + (char) (trigram >>> 32) + (char) ((trigram >>> 16) & 0xFFFF) + (char) (trigram & 0xFFFF) + "\"";
+            default:
+                List<String> parts = new ArrayList<>();
+                for (TrigramQuery operand : operands) {
+                    parts.add(operand.toString());
+                }
+                return "(" + String.join(op == Op.AND ? " AND " : " OR ", parts) + ")";
+        }
+    }
+
+    /**
+     * What is known about a piece of the regex: either the exact (small) set of strings it
+     * matches, or a query its matches satisfy.
+     */
+    private static final class Info {
+        final Set<String> exact;
+        final TrigramQuery query;
+
+        private Info(Set<String> exact, TrigramQuery query) {
+            this.exact = exact;
+            this.query = query;
+        }
+
+        static Info exact(Set<String> strings) {
+            return strings.size() > MAX_EXACT ? new Info(null, toQuery(strings)) : new Info(strings, null);
+        }
+
+        static Info query(TrigramQuery query) {
+            return new Info(null, query);
+        }
+
+        static Info empty() {
+            return new Info(Collections.singleton(""), null);
+        }
+
+        TrigramQuery toQuery() {
+            return exact != null ? toQuery(exact) : query;
+        }
+
+        // Any of the strings; one shorter than a trigram requires nothing
+        static TrigramQuery toQuery(Set<String> strings) {
+            List<TrigramQuery> alternatives = new ArrayList<>();
+            for (String string : strings) {
+                alternatives.add(of(string));
+            }
+            return or(alternatives);
+        }
+    }
+
+    // Recursive descent over the subset of java.util.regex that matters for trigrams
+    private static final class Parser {
+        private final String regex;
+        private int position = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Info alternation() {
+            List<Info> alternatives = new ArrayList<>();
+            alternatives.add(concatenation());
+            while (position < regex.length() && regex.charAt(position) == '|') {
+                position++;
+                alternatives.add(concatenation());
+            }
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+            Set<String> union = new LinkedHashSet<>();
+            List<TrigramQuery> queries = new ArrayList<>();
+            boolean allExact = true;
+            for (Info alternative : alternatives) {
+                if (alternative.exact != null) {
+                    union.addAll(alternative.exact);
+                } else {
+                    allExact = false;
+                }
+                queries.add(alternative.toQuery());
+            }
+            return allExact ? Info.exact(union) : Info.query(or(queries));
+        }
+
+        // A run of exact pieces is multiplied out as long as it stays small; everything else
+        // is ANDed
+        Info concatenation() {
+            List<TrigramQuery> required = new ArrayList<>();
+            Set<String> run = Collections.singleton("");
+            while (position < regex.length() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+                Info piece = repetition();
+                if (piece.exact != null && (long) run.size() * piece.exact.size() <= MAX_EXACT) {
+                    Set<String> product = new LinkedHashSet<>();
+                    for (String prefix : run) {
+                        for (String suffix : piece.exact) {
+                            product.add(prefix + suffix);
+                        }
+                    }
+                    run = product;
+                } else if (piece.exact != null) {
+                    required.add(Info.toQuery(run));
+                    run = piece.exact;
+                } else {
+                    required.add(Info.toQuery(run));
+                    required.add(piece.query);
+                    run = Collections.singleton("");
+                }
+            }
+            if (required.isEmpty()) {
+                return Info.exact(run);
+            }
+            required.add(Info.toQuery(run));
+            return Info.query(and(required));
+        }
+
+        Info repetition() {
+            Info atom = atom();
+            if (position >= regex.length()) {
+                return atom;
+            }
+            char c = regex.charAt(position);
+            Info result;
+            if (c == '?') {
+                position++;
+                Set<String> optional = new LinkedHashSet<>();
+                optional.add("");
+                if (atom.exact != null) {
+                    optional.addAll(atom.exact);
+                    result = Info.exact(optional);
+                } else {
+                    result = Info.query(ALL);
+                }
+            } else if (c == '*') {
+                position++;
+                result = Info.query(ALL);
+            } else if (c == '+') {
+                position++;
+                result = Info.query(atom.toQuery());
+            } else if (c == '{') {
+                int close = regex.indexOf('}', position);
+                if (close < 0) {
+                    throw new UnsupportedOperationException("unterminated repetition");
+                }
+                String bounds = regex.substring(position + 1, close);
+                position = close + 1;
+                int min = Integer.parseInt(bounds.split(",", -1)[0].trim());
+                result = min == 0 ? Info.query(ALL) : Info.query(atom.toQuery());
+            } else {
+                return atom;
+            }
+            // Lazy and possessive variants match the same strings
+            if (position < regex.length() && (regex.charAt(position) == '?' || regex.charAt(position) == '+')) {
+                position++;
+            }
+            return result;
+        }
+
+        Info atom() {
+            char c = regex.charAt(position++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    return characterClass();
+                case '\\':
+                    return escape();
+                case '.':
+                    return Info.query(ALL);
+                case '^':
+                case '$':
+                    return Info.empty();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedOperationException("dangling quantifier");
+                default:
+                    return Info.exact(Collections.singleton(String.valueOf(c)));
+            }
+        }
+
+        Info group() {
+            if (position < regex.length() && regex.charAt(position) == '?') {
+                position++;
+                char kind = regex.charAt(position);
+                if (kind == ':' || kind == '>') {
+                    position++;
+                } else if (kind == '=' || kind == '!') {
+                    // Lookahead consumes nothing
+                    position++;
+                    alternation();
+                    expect(')');
+                    return Info.query(ALL);
+                } else if (kind == '<' && (regex.charAt(position + 1) == '=' || regex.charAt(position + 1) == '!')) {
+                    position += 2;
+                    alternation();
+                    expect(')');
+                    return Info.query(ALL);
+                } else if (kind == '<') {
+                    // Named group
+                    int close = regex.indexOf('>', position);
+                    if (close < 0) {
+                        throw new UnsupportedOperationException("unterminated group name");
+                    }
+                    position = close + 1;
+                } else {
+                    // Inline flags, "(?i)" or "(?i:...)"; comments mode changes the syntax
+                    int start = position;
+                    while (position < regex.length() && regex.charAt(position) != ')' && regex.charAt(position) != ':') {
+                        position++;
+                    }
+                    String flags = regex.substring(start, position);
+                    int off = flags.indexOf('-');
+                    if (flags.indexOf('x') >= 0 && (off < 0 || flags.indexOf('x') < off)) {
+                        throw new UnsupportedOperationException("comments mode");
+                    }
+                    if (regex.charAt(position++) == ')') {
+                        return Info.empty();
+                    }
+                }
+            }
+            Info inner = alternation();
+            expect(')');
+            return inner;
+        }
+
+        // Small classes of plain characters become exact sets, anything fancier matches anything
+        Info characterClass() {
+            boolean negated = position < regex.length() && regex.charAt(position) == '^';
+            if (negated) {
+                position++;
+            }
+            Set<String> members = new LinkedHashSet<>();
+            boolean simple = !negated;
+            boolean first = true;
+            while (true) {
+                char c = regex.charAt(position++);
+                if (c == ']' && !first) {
+                    break;
+                }
+                first = false;
+                if (c == '[' || c == '&') {
+                    // Nested classes and intersections
+                    throw new UnsupportedOperationException("nested class");
+                }
+                if (c == '\\') {
+                    char escaped = regex.charAt(position++);
+                    Character literal = escapedLiteral(escaped);
+                    if (literal == null) {
+                        simple = false;
+                    } else {
+                        members.add(String.valueOf(fold(literal)));
+                    }
+                } else if (position + 1 < regex.length() && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']') {
+                    // A range
+                    char end = regex.charAt(position + 1);
+                    position += 2;
+                    if (end == '\\' || end - c > MAX_EXACT) {
+                        simple = false;
+                        if (end == '\\') {
+                            position++;
+                        }
+                    } else {
+                        for (char member = c; member <= end; member++) {
+                            members.add(String.valueOf(fold(member)));
+                        }
+                    }
+                } else {
+                    members.add(String.valueOf(fold(c)));
+                }
+            }
+            return simple ? Info.exact(members) : Info.query(ALL);
+        }
+
+        Info escape() {
+            char c = regex.charAt(position++);
+            if (c == 'Q') {
+                int end = regex.indexOf("\\E", position);
+                String quoted = end < 0 ? regex.substring(position) : regex.substring(position, end);
+                position = end < 0 ? regex.length() : end + 2;
+                return Info.exact(Collections.singleton(quoted));
+            }
+            if (c == 'b' || c == 'B' || c == 'A' || c == 'z' || c == 'Z' || c == 'G') {
+                return Info.empty();
+            }
+            if (c == 'x' || c == 'u') {
+                int digits = c == 'x' ? 2 : 4;
+                if (c == 'x' && regex.charAt(position) == '{') {
+                    throw new UnsupportedOperationException("code point escape");
+                }
+                String hex = regex.substring(position, position + digits);
+                position += digits;
+                return Info.exact(Collections.singleton(String.valueOf((char) Integer.parseInt(hex, 16))));
+            }
+            Character literal = escapedLiteral(c);
+            if (literal != null) {
+                return Info.exact(Collections.singleton(String.valueOf(literal)));
+            }
+            if (Character.isDigit(c) || c == 'k') {
+                throw new UnsupportedOperationException("backreference");
+            }
+            if (c == 'c') {
+                // Control character, \cX
+                position++;
+                return Info.query(ALL);
+            }
+            // \d, \w, \s, \p{...}, \N{...} and friends
+            if (c == 'p' || c == 'P' || c == 'N') {
+                if (regex.charAt(position) == '{') {
+                    position = regex.indexOf('}', position) + 1;
+                } else {
+                    position++;
+                }
+            }
+            return Info.query(ALL);
+        }
+
+        // The character an escape stands for, or null for classes and other specials
+        private static Character escapedLiteral(char c) {
+            switch (c) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'e': return '\u001B';
+                case 'a': return '\u0007';
+                default:
+                    return Character.isLetterOrDigit(c) ? null : c;
+            }
+        }
+
+        private void expect(char c) {
+            if (position >= regex.length() || regex.charAt(position) != c) {
+                throw new UnsupportedOperationException("expected " + c);
+            }
+            position++;
+        }
+    }
+}
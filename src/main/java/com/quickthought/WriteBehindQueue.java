@@ -0,0 +1,199 @@
+package com.quickthought;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notes waiting to be written by a background thread, used by NoteManager's write-behind
+ * mode so that creating a note returns before it hits the disk.
+ *
+ * The queue is bounded: once it is full, submit blocks until the writer caught up. The writer
+ * takes whatever is queued (up to MAX_BATCH notes) and hands it over as one batch, so a burst
+ * of notes shares one sync to disk. Until a note is written it can be looked up with
+ * getPending; flush waits for everything submitted so far to be written or to have failed.
+ *
+ * A note that could not be written stays pending and is retried every RETRY_DELAY_MILLIS
+ * for as long as the queue is open. close tries once more and throws for the notes that
+ * still fail, so their loss does not go unnoticed.
+ */
+public class WriteBehindQueue {
+    static final int MAX_BATCH = 256;
+    static final long RETRY_DELAY_MILLIS = 1000;
+
+    /** Writes one batch of notes and returns the reason for every note it could not write, by id. */
+    public interface BatchWriter {
+        Map<UUID, String> write(List<Note> notes);
+    }
+
+    private final BlockingQueue<Note> queue;
+    private final Map<UUID, Note> pending = new ConcurrentHashMap<>();
+    private final BatchWriter batchWriter;
+    private final Object progress = new Object();
+    private final Thread writer;
+    // Notes whose write failed, with the reason; only touched by the writer until it stopped
+    private final Map<Note, String> failed = new LinkedHashMap<>();
+    private long submitted = 0;
+    private long written = 0;
+    private boolean closed = false;
+
+    public WriteBehindQueue(int capacity, BatchWriter batchWriter) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchWriter = batchWriter;
+        this.writer = new Thread(this::drain, "quickthought-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues the note, waiting for room when the queue is full. */
+    public void submit(Note note) {
+        synchronized (progress) {
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            submitted++;
+        }
+        pending.put(note.getId(), note);
+        try {
+            queue.put(note);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(note.getId(), note);
+            synchronized (progress) {
+                submitted--;
+                progress.notifyAll();
+            }
+            throw new IllegalStateException("Interrupted while queueing note " + note.getId(), e);
+        }
+    }
+
+    /** The queued version of the note, or null when it has no unwritten changes. */
+    public Note getPending(UUID id) {
+        return pending.get(id);
+    }
+
+    /** Number of notes submitted but not written yet. */
+    public int size() {
+        return pending.size();
+    }
+
+    /** Blocks until every note submitted so far is written or has failed (and waits for a retry). */
+    public void flush() {
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        synchronized (progress) {
+            long target = submitted;
+            boolean interrupted = false;
+            while (written < target) {
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes out what is still queued, retries the notes that failed so far and stops the
+     * writer.
+     *
+     * @throws IOException naming every note that still could not be written; those stay
+     *         pending
+     */
+    public void close() throws IOException {
+        synchronized (progress) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!failed.isEmpty()) {
+            writeBatch(new ArrayList<>(failed.keySet()));
+        }
+        if (!failed.isEmpty()) {
+            StringBuilder message = new StringBuilder("Could not write " + failed.size() + " queued note(s):");
+            for (Map.Entry<Note, String> failure : failed.entrySet()) {
+                message.append(' ').append(failure.getKey().getId()).append(" (").append(failure.getValue()).append(')');
+            }
+            throw new IOException(message.toString());
+        }
+    }
+
+    private void drain() {
+        List<Note> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Note next = failed.isEmpty()
+                    ? queue.take()
+                    : queue.poll(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            int fresh = batch.size() + queue.drainTo(batch, MAX_BATCH - batch.size());
+            // Failed notes ride along with the next batch, or go alone once the delay is up
+            for (Iterator<Note> retries = failed.keySet().iterator(); retries.hasNext(); ) {
+                Note note = retries.next();
+                if (pending.get(note.getId()) != note) {
+                    // A newer version was queued since, that one gets written instead
+                    retries.remove();
+                } else if (batch.size() < MAX_BATCH) {
+                    batch.add(note);
+                }
+            }
+            writeBatch(batch);
+            synchronized (progress) {
+                written += fresh;
+                progress.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    // Written notes leave pending (and failed), the others are kept for a retry
+    private void writeBatch(List<Note> batch) {
+        Map<UUID, String> failures;
+        try {
+            failures = batchWriter.write(batch);
+        } catch (RuntimeException e) {
+            failures = new LinkedHashMap<>();
+            for (Note note : batch) {
+                failures.put(note.getId(), e.getMessage());
+            }
+        }
+        for (Note note : batch) {
+            String reason = failures.get(note.getId());
+            if (reason == null) {
+                failed.remove(note);
+                pending.remove(note.getId(), note);
+            } else {
+                if (!failed.containsKey(note)) {
+                    System.err.println("Warning: Could not write note " + note.getId() + ", will retry: " + reason);
+                }
+                failed.put(note, reason);
+            }
+        }
+    }
+}
@@ -3,12 +3,24 @@ package com.quickthought;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 public class YAMLParse {
+    private static final int HEADER_CHUNK_SIZE = 4096;
+    private static final int BODY_CHUNK_SIZE = 64 * 1024;
     
     public String serialize (Note note) {
         StringBuilder yaml = new StringBuilder();
@@ -24,32 +36,90 @@ public class YAMLParse {
     }
 
     public Note parse (String fileContent) {
-        String[] parts = fileContent.split("---\\s*", 3);
-        if (parts.length < 3) {
+        // Same split as fileContent.split("---\\s*", 3), without the regex and the copies
+        int opening = fileContent.indexOf("---");
+        int headerStart = opening < 0 ? -1 : skipWhitespace(fileContent, opening + 3);
+        int closing = headerStart < 0 ? -1 : fileContent.indexOf("---", headerStart);
+        if (closing < 0) {
             throw new IllegalArgumentException("Invalid note format");
         }
+        int bodyStart = skipWhitespace(fileContent, closing + 3);
 
-        Yaml yaml = new Yaml();
-        Map<String, Object> yamlMap = yaml.load(new StringReader(parts[1]));
+        return buildNote(fileContent, headerStart, closing, fileContent.substring(bodyStart).trim());
+    }
+
+    /**
+     * Reads only the front matter of a note file. The file is read from a channel in small
+     * chunks up to the closing "---" line, so the body is never decoded or parsed; only its
+     * bytes are streamed past to count the characters parse would keep.
+     */
+    public NoteSummary parseHeader(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        byte[] data = new byte[HEADER_CHUNK_SIZE];
+        int length = 0;
+        int lineStart = 0;
+        int headerStart = -1;
+        boolean endOfFile = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                int lineEnd = indexOf(data, (byte) '\n', lineStart, length);
+                if (lineEnd < 0) {
+                    if (endOfFile) {
+                        if (headerStart >= 0 && isDelimiter(data, lineStart, length)) {
+                            lineEnd = length;
+                        } else {
+                            throw new IllegalArgumentException("Invalid note format");
+                        }
+                    } else {
+                        if (length == data.length) {
+                            data = Arrays.copyOf(data, data.length * 2);
+                        }
+                        int read = channel.read(ByteBuffer.wrap(data, length, data.length - length));
+                        if (read < 0) {
+                            endOfFile = true;
+                        } else {
+                            length += read;
+                        }
+                        continue;
+                    }
+                }
+
+                if (headerStart < 0) {
+                    if (isDelimiter(data, lineStart, lineEnd)) {
+                        headerStart = lineEnd + 1;
+                    } else if (!isBlank(data, lineStart, lineEnd)) {
+                        throw new IllegalArgumentException("Invalid note format");
+                    }
+                } else if (isDelimiter(data, lineStart, lineEnd)) {
+                    String header = new String(data, headerStart, lineStart - headerStart, StandardCharsets.UTF_8);
+                    Note note = buildNote(header, 0, header.length(), "");
+                    long bodyLength = bodyCharacters(channel, Math.min(lineEnd + 1, attributes.size()), attributes.size());
+                    return new NoteSummary(note.getId(), note.getTitle(), note.getTags(),
+                            note.getCreatedAt(), note.getUpdatedAt(), (int) Math.min(bodyLength, Integer.MAX_VALUE),
+                            attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size());
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+    }
 
-        // Handle different YAML formats
-        String id;
-        if (yamlMap.containsKey("id")) {
-            id = (String) yamlMap.get("id");
-        } else {
-            // Generate new ID for imported notes without one
-            id = java.util.UUID.randomUUID().toString();
+    private Note buildNote(String text, int headerStart, int headerEnd, String content) {
+        // The hand-written scanner covers our own header schema; anything else goes to SnakeYAML
+        FrontMatterScanner.FrontMatter header = FrontMatterScanner.scan(text, headerStart, headerEnd);
+        if (header == null) {
+            header = parseWithSnakeYaml(text.substring(headerStart, headerEnd));
         }
 
         // Get title - ADD THIS MISSING DECLARATION
-        String title = (String) yamlMap.get("title");
+        String title = header.title;
         if (title == null) {
             throw new IllegalArgumentException("Title is required");
         }
 
         // Handle different tag formats
         List<String> tags = new ArrayList<>();
-        Object tagsObj = yamlMap.get("tags");
+        Object tagsObj = header.tags;
         if (tagsObj instanceof List) {
             tags = (List<String>) tagsObj;
         } else if (tagsObj instanceof String) {
@@ -62,27 +132,11 @@ public class YAMLParse {
         LocalDateTime updatedAt;
 
         try {
-            Object createdObj = yamlMap.get("created_at");
-            if (createdObj == null) {
-                createdObj = yamlMap.get("created"); // Try alternative field name
-            }
-
-            if (createdObj != null) {
-                createdAt = LocalDateTime.parse(createdObj.toString().replace("Z", ""));
-            } else {
-                createdAt = LocalDateTime.now();
-            }
+            Object createdObj = header.getCreated();
+            createdAt = createdObj != null ? toDateTime(createdObj) : LocalDateTime.now();
 
-            Object updatedObj = yamlMap.get("updated_at");
-            if (updatedObj == null) {
-                updatedObj = yamlMap.get("modified"); // Try alternative field name
-            }
-
-            if (updatedObj != null) {
-                updatedAt = LocalDateTime.parse(updatedObj.toString().replace("Z", ""));
-            } else {
-                updatedAt = LocalDateTime.now();
-            }
+            Object updatedObj = header.getUpdated();
+            updatedAt = updatedObj != null ? toDateTime(updatedObj) : LocalDateTime.now();
 
         } catch (Exception e) {
             // Fallback to current time if parsing fails
@@ -90,10 +144,8 @@ public class YAMLParse {
             updatedAt = LocalDateTime.now();
         }
 
-        String content = parts[2].trim();
-
         // In YAMLParse.parse() method, make sure you handle the ID correctly:
-        String idString = (String) yamlMap.get("id");
+        String idString = header.id;
         UUID noteId;
 
         try {
@@ -111,7 +163,154 @@ public class YAMLParse {
         // Create note with the parsed/generated ID
         return new Note(noteId, title, content, tags, createdAt, updatedAt);
     }
-    
+
+    private FrontMatterScanner.FrontMatter parseWithSnakeYaml(String headerText) {
+        Yaml yaml = new Yaml();
+        Map<String, Object> yamlMap = yaml.load(new StringReader(headerText));
+
+        FrontMatterScanner.FrontMatter header = new FrontMatterScanner.FrontMatter();
+        header.id = (String) yamlMap.get("id");
+        header.title = (String) yamlMap.get("title");
+        header.tags = yamlMap.get("tags");
+        header.createdAt = yamlMap.get("created_at");
+        header.created = yamlMap.get("created");
+        header.updatedAt = yamlMap.get("updated_at");
+        header.updated = yamlMap.get("updated");
+        header.modified = yamlMap.get("modified");
+        return header;
+    }
+
+    // SnakeYAML turns unquoted ISO timestamps into java.util.Date (always UTC)
+    private static LocalDateTime toDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof Date) {
+            return LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneOffset.UTC);
+        }
+        return LocalDateTime.parse(value.toString().replace("Z", ""));
+    }
+
+    // Characters (as String.length counts them) of the UTF-8 bytes between from and to, without
+    // the leading and trailing bytes up to ' ' that String.trim drops; no longer UTF-8 sequence
+    // contains such a byte
+    private static long bodyCharacters(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (from < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - from));
+            int read = channel.read(buffer, from);
+            if (read <= 0) {
+                return 0;
+            }
+            int i = 0;
+            while (i < read && (buffer.get(i) & 0xff) <= ' ') {
+                i++;
+            }
+            from += i;
+            if (i < read) {
+                break;
+            }
+        }
+        while (to > from) {
+            int chunk = (int) Math.min(buffer.capacity(), to - from);
+            buffer.clear().limit(chunk);
+            if (channel.read(buffer, to - chunk) < chunk) {
+                break;
+            }
+            int i = chunk;
+            while (i > 0 && (buffer.get(i - 1) & 0xff) <= ' ') {
+                i--;
+            }
+            to -= chunk - i;
+            if (i > 0) {
+                break;
+            }
+        }
+
+        // Every byte but a continuation byte starts a character, four-byte ones need two chars
+        buffer = ByteBuffer.allocate(BODY_CHUNK_SIZE);
+        long characters = 0;
+        while (from < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - from));
+            int read = channel.read(buffer, from);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                int b = buffer.get(i) & 0xff;
+                if ((b & 0xc0) != 0x80) {
+                    characters += b >= 0xf0 ? 2 : 1;
+                }
+            }
+            from += read;
+        }
+        return characters;
+    }
+
+    private static int skipWhitespace(String text, int from) {
+        while (from < text.length() && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Length in bytes of the front matter block at the start of the data, both "---" lines
+     * included, or -1 if the data does not start with a complete one. When more data follows
+     * (atEnd is false), a closing delimiter only counts once its line break was seen.
+     */
+    static int frontMatterLength(byte[] data, int length, boolean atEnd) {
+        boolean inHeader = false;
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = indexOf(data, (byte) '\n', lineStart, length);
+            if (lineEnd < 0 && !atEnd) {
+                return -1;
+            }
+            int end = lineEnd < 0 ? length : lineEnd;
+            if (!inHeader) {
+                if (isDelimiter(data, lineStart, end)) {
+                    inHeader = true;
+                } else if (!isBlank(data, lineStart, end)) {
+                    return -1;
+                }
+            } else if (isDelimiter(data, lineStart, end)) {
+                return lineEnd < 0 ? length : lineEnd + 1;
+            }
+            if (lineEnd < 0) {
+                return -1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A line holding just "---" (trailing whitespace allowed)
+    private static boolean isDelimiter(byte[] data, int from, int to) {
+        if (to - from < 3 || data[from] != '-' || data[from + 1] != '-' || data[from + 2] != '-') {
+            return false;
+        }
+        return isBlank(data, from + 3, to);
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] != ' ' && data[i] != '\t' && data[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Note deserialize(String yamlContent) {
         return parse(yamlContent); // Use the same logic
     }
@@ -0,0 +1,62 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BkTreeTest {
+
+    @Test
+    void testDistance() {
+        assertEquals(0, BkTree.distance("hamlet", "hamlet", 5));
+        assertEquals(1, BkTree.distance("hamlett", "hamlet", 5));
+        assertEquals(3, BkTree.distance("kitten", "sitting", 5));
+        assertEquals(6, BkTree.distance("", "hamlet", 10));
+        assertTrue(BkTree.distance("kitten", "sitting", 1) > 1);
+    }
+
+    @Test
+    void testFindsTermsWithinDistanceNearestFirst() {
+        BkTree tree = new BkTree();
+        for (String term : List.of("hamlet", "hamlets", "hamper", "omelet", "camel", "hamlet")) {
+            tree.add(term);
+        }
+
+        assertEquals(5, tree.size());
+        assertEquals(List.of("hamlet", "hamlets"), List.copyOf(tree.search("hamlett", 1).keySet()));
+        Map<String, Integer> two = tree.search("hamlett", 2);
+        assertEquals(Map.of("hamlet", 1, "hamlets", 1), two);
+        assertEquals(Integer.valueOf(3), tree.search("hamlett", 3).get("hamper"));
+        assertTrue(new BkTree().search("anything", 2).isEmpty());
+    }
+
+    @Test
+    void testAgreesWithBruteForce() {
+        Random random = new Random(7);
+        BkTree tree = new BkTree();
+        List<String> terms = new java.util.ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder term = new StringBuilder();
+            for (int j = 0, length = 3 + random.nextInt(6); j < length; j++) {
+                term.append((char) ('a' + random.nextInt(4)));
+            }
+            terms.add(term.toString());
+            tree.add(term.toString());
+        }
+
+        for (String query : List.of("abca", "dddd", "abcdabcd", "ab")) {
+            Map<String, Integer> expected = new TreeMap<>();
+            for (String term : terms) {
+                int distance = BkTree.distance(query, term, Integer.MAX_VALUE);
+                if (distance <= 2) {
+                    expected.put(term, distance);
+                }
+            }
+            assertEquals(expected, new TreeMap<>(tree.search(query, 2)), query);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkConverterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EncryptionSession session;
+    private NoteManager noteManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = EncryptionSession.unlock("secret");
+        noteManager = new NoteManager(tempDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    @Test
+    void testEncryptAndDecryptRoundTrip() throws Exception {
+        // Enough notes to go through the parallel path
+        Map<UUID, String> originals = new ConcurrentHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            Note note = noteManager.createNote("Note " + i, "Body " + i, List.of("tag" + i % 3));
+            originals.put(note.getId(), Files.readString(tempDir.resolve(note.getId() + ".md")));
+        }
+        List<UUID> ids = new ArrayList<>(originals.keySet());
+        List<Integer> reported = new CopyOnWriteArrayList<>();
+        BulkConverter converter = new BulkConverter(tempDir, noteManager.getStore());
+
+        BulkConverter.Result encrypted = converter.encrypt(session, ids,
+                (done, total, elapsed) -> reported.add(done));
+
+        assertEquals(40, encrypted.getConverted());
+        assertTrue(encrypted.getFailures().isEmpty());
+        assertEquals(40, reported.get(reported.size() - 1));
+        for (UUID id : ids) {
+            assertFalse(Files.exists(tempDir.resolve(id + ".md")));
+            assertTrue(EncryptedNoteFile.isChunked(converter.encryptedPath(id)));
+        }
+        assertFalse(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(BulkConverter.JOURNAL_FILE)));
+
+        BulkConverter.Result decrypted = converter.decrypt(session, ids, null);
+
+        assertEquals(40, decrypted.getConverted());
+        for (Map.Entry<UUID, String> original : originals.entrySet()) {
+            assertEquals(original.getValue(),
+                    Files.readString(tempDir.resolve(original.getKey() + ".md"), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(converter.encryptedPath(original.getKey())));
+        }
+    }
+
+    @Test
+    void testRoundTripThroughSegmentStore() throws Exception {
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir.resolve(SegmentLogNoteStore.DIRECTORY))) {
+            UUID id = UUID.randomUUID();
+            byte[] text = "---\ntitle: Stored\n---\nBody".getBytes(StandardCharsets.UTF_8);
+            store.write(id, text);
+            BulkConverter converter = new BulkConverter(tempDir, store);
+
+            assertEquals(1, converter.encrypt(session, List.of(id), null).getConverted());
+            assertFalse(store.contains(id));
+            assertTrue(Files.exists(converter.encryptedPath(id)));
+
+            assertEquals(1, converter.decrypt(session, List.of(id), null).getConverted());
+            assertArrayEquals(text, store.read(id));
+            assertFalse(Files.exists(converter.encryptedPath(id)));
+        }
+    }
+
+    @Test
+    void testFailedNoteIsLeftUntouched() throws Exception {
+        Note note = noteManager.createNote("Good", "Fine", List.of());
+        BulkConverter converter = new BulkConverter(tempDir, noteManager.getStore());
+        converter.encrypt(session, List.of(note.getId()), null);
+        UUID brokenId = new UUID(0, 0);
+        Path broken = converter.encryptedPath(brokenId);
+        Files.writeString(broken, "not encrypted at all");
+
+        BulkConverter.Result result = converter.decrypt(session, List.of(brokenId, note.getId()), null);
+
+        assertEquals(1, result.getConverted());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get(0).startsWith(brokenId.toString()));
+        assertTrue(Files.exists(broken));
+        assertFalse(Files.exists(tempDir.resolve(brokenId + ".md")));
+        assertFalse(Files.exists(tempDir.resolve(brokenId + ".md.tmp")));
+        assertTrue(Files.exists(tempDir.resolve(note.getId() + ".md")));
+    }
+
+    @Test
+    void testRecoverFinishesInterruptedSwap() throws Exception {
+        Note swapped = noteManager.createNote("Swapped", "Renamed, not deleted", List.of());
+        Note pending = noteManager.createNote("Pending", "Only a temp file", List.of());
+        Path swappedFile = tempDir.resolve(swapped.getId() + ".md");
+        Path pendingFile = tempDir.resolve(pending.getId() + ".md");
+
+        // State after a crash: one note renamed into place, one with only a temporary file
+        BulkConverter converter = new BulkConverter(tempDir, noteManager.getStore());
+        EncryptedNoteFile.encrypt(session, swappedFile, converter.encryptedPath(swapped.getId()));
+        Path strayTemp = tempDir.resolve(pending.getId() + ".md.enc.tmp");
+        Files.writeString(strayTemp, "partial");
+        // Written where runs before the sidecar directory kept it
+        Files.write(tempDir.resolve(BulkConverter.JOURNAL_FILE),
+                List.of("encrypt", swapped.getId().toString(), pending.getId().toString()));
+        converter = new BulkConverter(tempDir, noteManager.getStore());
+
+        assertEquals(1, converter.recover());
+
+        assertFalse(Files.exists(swappedFile));
+        assertTrue(Files.exists(converter.encryptedPath(swapped.getId())));
+        assertTrue(Files.exists(pendingFile));
+        assertFalse(Files.exists(strayTemp));
+        assertFalse(Files.exists(tempDir.resolve(BulkConverter.JOURNAL_FILE)));
+        assertFalse(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(BulkConverter.JOURNAL_FILE)));
+        assertEquals(0, converter.recover());
+    }
+}
@@ -0,0 +1,143 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path notesDir;
+    private Path exportDir;
+    private NoteManager noteManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        notesDir = Files.createDirectory(tempDir.resolve("notes"));
+        exportDir = Files.createDirectory(tempDir.resolve("export"));
+        noteManager = new NoteManager(notesDir.toString());
+    }
+
+    private static String note(int i) {
+        return "---\ntitle: \"Imported " + i + "\"\ntags: [import, batch" + (i % 2) + "]\n---\nBody number " + i + "\n";
+    }
+
+    @Test
+    void testImportsDirectoryRecursivelyAndReportsFailures() throws Exception {
+        // More than one chunk, spread over subdirectories
+        int count = BulkImporter.CHUNK_SIZE + 100;
+        for (int i = 0; i < count; i++) {
+            Path dir = Files.createDirectories(exportDir.resolve("year" + (i % 3)));
+            Files.writeString(dir.resolve("note" + i + ".md"), note(i));
+        }
+        Files.writeString(exportDir.resolve("broken.md"), "no front matter here");
+        Files.writeString(exportDir.resolve("readme.txt"), "not a note");
+
+        BulkImporter.Result result = new BulkImporter(noteManager).importFrom(exportDir.toString(), null);
+
+        assertEquals(count, result.getImported());
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get(0).contains("broken.md"));
+        assertTrue(result.getNotesPerSecond() > 0);
+        assertEquals(count, noteManager.getAllNotes().size());
+        assertEquals(1, noteManager.searchNotes("number 611").size());
+        assertEquals(count / 2, noteManager.findNotesByTags(TagIndex.Query.parse("batch0", null, null)).size());
+        assertEquals(1, noteManager.findNotesByTitle("Imported 42", false).size());
+    }
+
+    @Test
+    void testImportsGlob() throws Exception {
+        Files.writeString(exportDir.resolve("a.md"), note(1));
+        Files.writeString(exportDir.resolve("b.md"), note(2));
+        Files.writeString(exportDir.resolve("skip.markdown"), note(3));
+
+        BulkImporter.Result result = new BulkImporter(noteManager).importFrom(exportDir + "/*.md", null);
+
+        assertEquals(2, result.getImported());
+        assertTrue(BulkImporter.isBulkSource(exportDir + "/*.md"));
+    }
+
+    @Test
+    void testImportsZipAndTarArchives() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("notes/one.md", note(1));
+        entries.put("notes/two.md", note(2));
+        entries.put("notes/" + "deep/".repeat(30) + "three.md", note(3));
+        entries.put("notes/image.png", "binary");
+
+        Path zip = tempDir.resolve("notes.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        Path tgz = tempDir.resolve("notes.tgz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tgz))) {
+            out.write(tar(entries));
+        }
+
+        BulkImporter importer = new BulkImporter(noteManager);
+        assertEquals(3, importer.importFrom(zip.toString(), null).getImported());
+        BulkImporter.Result fromTar = importer.importFrom(tgz.toString(), null);
+        assertEquals(3, fromTar.getImported());
+        assertTrue(fromTar.getFailures().isEmpty());
+        assertEquals(6, noteManager.getAllNotes().size());
+        assertEquals(2, noteManager.findNotesByTitle("Imported 3", false).size());
+    }
+
+    // Plain ustar entries, a GNU long name record for names over 100 bytes
+    private static byte[] tar(Map<String, String> entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 100) {
+                writeEntry(out, "././@LongLink", 'L', name);
+            }
+            writeEntry(out, entry.getKey(), '0', entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(new byte[1024]);
+        return out.toByteArray();
+    }
+
+    private static void writeEntry(ByteArrayOutputStream out, String name, char type, byte[] data) throws Exception {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        put(header, 100, String.format("%07o", 0644));
+        put(header, 124, String.format("%011o", data.length));
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    @Test
+    void testSingleFileIsNotBulk() throws Exception {
+        Path file = Files.writeString(exportDir.resolve("single.md"), note(1));
+        assertFalse(BulkImporter.isBulkSource(file.toString()));
+        assertEquals(1, new BulkImporter(noteManager).importFrom(file.toString(), null).getImported());
+        assertEquals("Imported 1", noteManager.getAllNotes().get(0).getTitle());
+    }
+}
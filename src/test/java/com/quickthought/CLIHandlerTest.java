@@ -6,6 +6,10 @@ import org.junit.jupiter.api.io.TempDir;
 import java.nio.file.Path;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 import java.util.HashMap;  
 import java.util.Map; 
@@ -66,4 +70,50 @@ public class CLIHandlerTest {
         String output = outputStream.toString();
         assertTrue(output.contains("Integration Test"));
     }
+
+    @Test
+    void testEncryptedNoteReadableWhileUnlocked() throws Exception {
+        InputStream originalIn = System.in;
+        System.setIn(new ByteArrayInputStream("secret\n".getBytes()));
+        try {
+            cliHandler.handleCommand(new String[] {"create", "--title", "Diary", "--content", "dear diary"});
+            assertTrue(cliHandler.handleCommand(new String[] {"encrypt", "--title", "Diary"}));
+
+            try (Stream<Path> files = Files.list(tempDir)) {
+                assertEquals(1, files.filter(path -> path.toString().endsWith(".md.enc")).count());
+            }
+
+            outputStream.reset();
+            assertTrue(cliHandler.handleCommand(new String[] {"read", "--title", "Diary"}));
+            assertTrue(outputStream.toString().contains("dear diary"));
+
+            outputStream.reset();
+            assertTrue(cliHandler.handleCommand(new String[] {"search", "--query", "diary"}));
+            assertTrue(outputStream.toString().contains("Found 1 note(s)"));
+            assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(EncryptedSearchIndex.INDEX_FILE)));
+        } finally {
+            System.setIn(originalIn);
+        }
+    }
+
+    @Test
+    void testOnlyReadsAcceptLooseTitles() throws Exception {
+        InputStream originalIn = System.in;
+        System.setIn(new ByteArrayInputStream("secret\n".getBytes()));
+        try {
+            cliHandler.handleCommand(new String[] {"create", "--title", "Shopping list", "--content", "milk"});
+            cliHandler.enableTitleShortcuts();
+
+            assertTrue(cliHandler.handleCommand(new String[] {"read", "--title", "shop"}));
+            assertTrue(outputStream.toString().contains("milk"));
+
+            assertFalse(cliHandler.handleCommand(new String[] {"encrypt", "--title", "Shop"}));
+            assertFalse(cliHandler.handleCommand(new String[] {"encrypt", "--title", "shopping list"}));
+            try (Stream<Path> files = Files.list(tempDir)) {
+                assertEquals(0, files.filter(path -> path.toString().endsWith(".md.enc")).count());
+            }
+        } finally {
+            System.setIn(originalIn);
+        }
+    }
 }
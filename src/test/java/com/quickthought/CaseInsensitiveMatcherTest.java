@@ -0,0 +1,60 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CaseInsensitiveMatcherTest {
+
+    @Test
+    void testMatchesIgnoringCase() {
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher("Hello World");
+        assertEquals(4, matcher.indexIn("Oh, HELLO world!"));
+        assertTrue(matcher.matches("say hello world"));
+        assertFalse(matcher.matches("hello, world"));
+        assertFalse(matcher.matches("hello"));
+        assertFalse(matcher.matches(null));
+        assertTrue(new CaseInsensitiveMatcher("").matches("anything"));
+        assertTrue(new CaseInsensitiveMatcher("ÜBER").matches("Grüße über alles"));
+        assertFalse(new CaseInsensitiveMatcher("ÜBER").canMatchBytes());
+    }
+
+    @Test
+    void testAgreesWithToLowerCaseContains() {
+        // Small alphabet so that partial matches and shifts get exercised
+        Random random = new Random(42);
+        String alphabet = "aAbBcé-";
+        for (int round = 0; round < 2000; round++) {
+            String text = randomString(random, alphabet, random.nextInt(40));
+            String query = randomString(random, alphabet, 1 + random.nextInt(4));
+            boolean expected = text.toLowerCase().contains(query.toLowerCase());
+            assertEquals(expected, new CaseInsensitiveMatcher(query).matches(text), query + " in " + text);
+        }
+    }
+
+    @Test
+    void testMatchesUtf8Bytes() {
+        String text = "Café Notes — Meeting about the Roadmap";
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        int notes = "Café ".getBytes(StandardCharsets.UTF_8).length;
+
+        // The dash has no case, so it can be matched byte for byte
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher("NOTES — meeting");
+        assertTrue(matcher.canMatchBytes());
+        assertEquals(notes, matcher.indexIn(bytes, 0, bytes.limit()));
+        assertEquals(-1, matcher.indexIn(bytes, notes + 1, bytes.limit()));
+        assertEquals(-1, new CaseInsensitiveMatcher("ROADMAPS").indexIn(bytes, 0, bytes.limit()));
+        assertEquals(-1, new CaseInsensitiveMatcher("roadmap").indexIn(bytes, 0, bytes.limit() - 1));
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EncryptedNoteFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EncryptionSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = EncryptionSession.unlock("secret");
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    private Path writeChunked(String text, int chunkSize) throws Exception {
+        Path file = tempDir.resolve("note.md.enc");
+        EncryptedNoteFile.write(session, new byte[0], new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), file, chunkSize);
+        return file;
+    }
+
+    @Test
+    void testRoundTripAcrossChunkBoundaries() throws Exception {
+        for (String text : new String[] {"", "a", "abcdefgh", "abcdefghi", "é".repeat(100)}) {
+            Path file = writeChunked(text, 8);
+            assertTrue(EncryptedNoteFile.isChunked(file));
+            assertEquals(text, EncryptedNoteFile.decrypt(session, file));
+        }
+    }
+
+    @Test
+    void testLargeNoteDecryptsInParallelAndStreams() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Path file = writeChunked(text.toString(), 1024);
+
+        assertEquals(text.toString(), EncryptedNoteFile.decrypt(session, file));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        EncryptedNoteFile.read(session, file, streamed);
+        assertEquals(text.toString(), streamed.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testTamperingAndTruncationAreDetected() throws Exception {
+        Path file = writeChunked("0123456789".repeat(10), 16);
+        byte[] original = Files.readAllBytes(file);
+
+        byte[] flipped = original.clone();
+        flipped[flipped.length / 2] ^= 1;
+        Files.write(file, flipped);
+        assertThrows(GeneralSecurityException.class, () -> EncryptedNoteFile.decrypt(session, file));
+
+        // Dropping whole trailing chunks leaves a valid-looking file whose new last chunk is not marked last
+        Files.write(file, Arrays.copyOf(original, original.length - 2 * (16 + 16)));
+        assertThrows(GeneralSecurityException.class, () -> EncryptedNoteFile.decrypt(session, file));
+    }
+
+    @Test
+    void testWrongKeyFails() throws Exception {
+        Path file = writeChunked("private", 64);
+        try (EncryptionSession other = EncryptionSession.unlock("other")) {
+            assertThrows(GeneralSecurityException.class, () -> EncryptedNoteFile.decrypt(other, file));
+        }
+    }
+
+    @Test
+    void testLegacyBase64FilesStayReadable() throws Exception {
+        Path legacy = tempDir.resolve("legacy.md.enc");
+        Files.writeString(legacy, NoteEncryption.encrypt("---\ntitle: Old\n---\nbody", "secret"));
+
+        assertFalse(EncryptedNoteFile.isChunked(legacy));
+        assertEquals("---\ntitle: Old\n---\nbody", EncryptedNoteFile.decrypt(session, legacy));
+    }
+
+    @Test
+    void testEncryptReplacesTargetAtomically() throws Exception {
+        Path source = tempDir.resolve("plain.md");
+        Files.writeString(source, "---\ntitle: T\n---\nbody");
+        Path target = tempDir.resolve("plain.md.enc");
+
+        EncryptedNoteFile.encrypt(session, source, target);
+
+        assertEquals("---\ntitle: T\n---\nbody", EncryptedNoteFile.decrypt(session, target));
+        assertFalse(Files.exists(tempDir.resolve("plain.md.enc.tmp")));
+    }
+
+    @Test
+    void testFrontMatterDecryptsWithoutTheBody() throws Exception {
+        Path source = tempDir.resolve("note.md");
+        String header = "---\nid: 1\ntitle: \"Big\"\n---\n";
+        Files.writeString(source, header + "body ".repeat(50000));
+        Path target = tempDir.resolve("note.md.enc");
+        EncryptedNoteFile.encrypt(session, source, target);
+
+        assertEquals(header, EncryptedNoteFile.decryptFrontMatter(session, target));
+        assertEquals(Files.readString(source), EncryptedNoteFile.decrypt(session, target));
+
+        // The body is not touched: corrupting its last byte still leaves the header readable
+        byte[] bytes = Files.readAllBytes(target);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(target, bytes);
+        assertEquals(header, EncryptedNoteFile.decryptFrontMatter(session, target));
+        assertThrows(GeneralSecurityException.class, () -> EncryptedNoteFile.decrypt(session, target));
+    }
+
+    @Test
+    void testFilesWithoutFrontMatterDecryptInFull() throws Exception {
+        Path source = tempDir.resolve("plain.txt");
+        Files.writeString(source, "no header here\n---\n");
+        Path target = tempDir.resolve("plain.md.enc");
+        EncryptedNoteFile.encrypt(session, source, target);
+
+        assertEquals("no header here\n---\n", EncryptedNoteFile.decryptFrontMatter(session, target));
+    }
+}
@@ -0,0 +1,158 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EncryptedSearchIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final YAMLParse parser = new YAMLParse();
+    private final AtomicInteger decrypted = new AtomicInteger();
+    private EncryptionSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = EncryptionSession.unlock("secret");
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    private Function<Path, Note> loader(EncryptionSession key) {
+        return path -> {
+            decrypted.incrementAndGet();
+            try {
+                return parser.parse(EncryptedNoteFile.decrypt(key, path));
+            } catch (Exception e) {
+                return null;
+            }
+        };
+    }
+
+    private Path writeEncrypted(Note note) throws Exception {
+        Path file = tempDir.resolve(note.getId() + ".md.enc");
+        EncryptedNoteFile.write(session, parser.serialize(note).getBytes(StandardCharsets.UTF_8), file);
+        return file;
+    }
+
+    // Some file systems only keep whole seconds
+    private void touchDirectory(int seconds) throws Exception {
+        Files.setLastModifiedTime(tempDir, FileTime.from(Instant.now().plusSeconds(seconds)));
+    }
+
+    @Test
+    void testSearchesWithoutDecryptingNotesAgain() throws Exception {
+        writeEncrypted(new Note("Bank", "account number 1234", List.of("finance")));
+        writeEncrypted(new Note("Diary", "went hiking today", List.of()));
+
+        EncryptedSearchIndex index = new EncryptedSearchIndex(tempDir.toString());
+        index.unlock(session);
+        List<NoteSummary> found = index.search("account", loader(session));
+        assertEquals(1, found.size());
+        assertEquals("Bank", found.get(0).getTitle());
+        assertEquals(2, decrypted.get());
+
+        assertEquals(List.of("Diary"), index.search("HIKING", loader(session)).stream()
+                .map(NoteSummary::getTitle).toList());
+        assertEquals(2, decrypted.get());
+
+        // A new session reads the index file instead of the notes
+        EncryptedSearchIndex reopened = new EncryptedSearchIndex(tempDir.toString());
+        try (EncryptionSession again = EncryptionSession.unlock("secret")) {
+            reopened.unlock(again);
+            assertEquals(1, reopened.search("1234", loader(again)).size());
+        }
+        assertEquals(2, decrypted.get());
+
+        String onDisk = new String(Files.readAllBytes(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(EncryptedSearchIndex.INDEX_FILE)),
+                StandardCharsets.ISO_8859_1);
+        assertFalse(onDisk.contains("hiking"));
+        assertFalse(onDisk.contains("Bank"));
+    }
+
+    @Test
+    void testFuzzySearchToleratesTypos() throws Exception {
+        writeEncrypted(new Note("Bank", "account number 1234", List.of("finance")));
+        writeEncrypted(new Note("Diary", "went hiking today", List.of()));
+        EncryptedSearchIndex index = new EncryptedSearchIndex(tempDir.toString());
+
+        assertNull(index.searchFuzzy("acount", 2, loader(session)));
+
+        index.unlock(session);
+        assertEquals(List.of("Bank"), index.searchFuzzy("acount nmuber", 2, loader(session)).stream()
+                .map(NoteSummary::getTitle).toList());
+        assertTrue(index.searchFuzzy("acount", 0, loader(session)).isEmpty());
+
+        Path gamma = writeEncrypted(new Note("Trip", "hikking boots", List.of()));
+        index.update(gamma, parser.parse(EncryptedNoteFile.decrypt(session, gamma)));
+        assertEquals(List.of("Diary", "Trip"), index.searchFuzzy("hiking", 1, loader(session)).stream()
+                .map(NoteSummary::getTitle).sorted().toList());
+    }
+
+    @Test
+    void testLockDropsEverything() throws Exception {
+        writeEncrypted(new Note("Bank", "account", List.of()));
+        EncryptedSearchIndex index = new EncryptedSearchIndex(tempDir.toString());
+
+        assertNull(index.search("account", loader(session)));
+
+        index.unlock(session);
+        assertEquals(1, index.search("account", loader(session)).size());
+        index.lock();
+
+        assertEquals(0, index.size());
+        assertNull(index.search("account", loader(session)));
+    }
+
+    @Test
+    void testChangedAndDeletedNotesAreNoticed() throws Exception {
+        Note kept = new Note("Kept", "alpha", List.of());
+        Path keptFile = writeEncrypted(kept);
+        Path removed = writeEncrypted(new Note("Removed", "alpha", List.of()));
+
+        EncryptedSearchIndex index = new EncryptedSearchIndex(tempDir.toString());
+        index.unlock(session);
+        assertEquals(2, index.search("alpha", loader(session)).size());
+
+        Files.delete(removed);
+        Note rewritten = new Note(kept.getId(), "Kept", "beta", List.of(), kept.getCreatedAt(), kept.getUpdatedAt());
+        writeEncrypted(rewritten);
+        Files.setLastModifiedTime(keptFile, FileTime.from(Instant.now().plusSeconds(10)));
+        touchDirectory(20);
+
+        assertTrue(index.search("alpha", loader(session)).isEmpty());
+        assertEquals(1, index.search("beta", loader(session)).size());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testUpdateAddsNewlyEncryptedNote() throws Exception {
+        EncryptedSearchIndex index = new EncryptedSearchIndex(tempDir.toString());
+        index.unlock(session);
+        assertTrue(index.search("anything", loader(session)).isEmpty());
+
+        Note note = new Note("Fresh", "gamma ray", List.of());
+        Path file = writeEncrypted(note);
+        index.update(file, note);
+        int before = decrypted.get();
+
+        assertEquals(1, index.search("gamma", loader(session)).size());
+        assertEquals(before, decrypted.get());
+    }
+}
@@ -0,0 +1,80 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EncryptionSessionTest {
+
+    @Test
+    void testRoundTripMatchesNoteEncryption() throws Exception {
+        try (EncryptionSession session = EncryptionSession.unlock("secret")) {
+            String encrypted = session.encrypt("Hello, wörld");
+
+            assertEquals("Hello, wörld", session.decrypt(encrypted));
+            // Files written before sessions existed must still decrypt, and the other way round
+            assertEquals("Hello, wörld", NoteEncryption.decrypt(encrypted, "secret"));
+            assertEquals("legacy", session.decrypt(NoteEncryption.encrypt("legacy", "secret")));
+        }
+    }
+
+    @Test
+    void testWrongPasswordFails() throws Exception {
+        String encrypted = NoteEncryption.encrypt("QuickThought_Password_Test_1", "right");
+        try (EncryptionSession session = EncryptionSession.unlock("wrong")) {
+            assertThrows(Exception.class, () -> session.decrypt(encrypted));
+        }
+    }
+
+    @Test
+    void testDecryptAllKeepsOrderAndMarksFailures() throws Exception {
+        try (EncryptionSession session = EncryptionSession.unlock("secret")) {
+            List<String> encrypted = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                encrypted.add(session.encrypt("note " + i));
+            }
+            encrypted.set(42, "not base64 !");
+
+            List<String> decrypted = session.decryptAll(encrypted);
+
+            assertEquals(100, decrypted.size());
+            assertNull(decrypted.get(42));
+            assertEquals("note 0", decrypted.get(0));
+            assertEquals("note 99", decrypted.get(99));
+        }
+    }
+
+    @Test
+    void testClosedSessionRefusesWork() throws Exception {
+        EncryptionSession session = EncryptionSession.unlock("secret");
+        String encrypted = session.encrypt("x");
+        session.close();
+
+        assertTrue(session.isClosed());
+        assertThrows(IllegalStateException.class, () -> session.decrypt(encrypted));
+    }
+
+    @Test
+    void testCloseDropsTheCiphersOfEveryThread() throws Exception {
+        EncryptionSession session = EncryptionSession.unlock("secret");
+        List<String> encrypted = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            encrypted.add(session.encrypt("note " + i));
+        }
+        session.decryptAll(encrypted);
+        Thread worker = new Thread(() -> session.gcmCipher());
+        worker.start();
+        worker.join();
+        assertTrue(session.cipherCount() >= 3);
+        SecretKey key = session.key();
+
+        session.close();
+
+        assertEquals(0, session.cipherCount());
+        assertArrayEquals(new byte[32], key.getEncoded());
+        assertThrows(IllegalStateException.class, session::gcmCipher);
+    }
+}
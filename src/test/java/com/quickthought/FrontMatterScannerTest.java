@@ -0,0 +1,126 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrontMatterScannerTest {
+
+    @Test
+    void testScansSerializedHeader() {
+        String header = "id: 007713ce-3846-4635-9c60-bf4e89c96e70\n" +
+                "title: \"Say \\\"hi\\\"\"\n" +
+                "created: 2025-07-31T10:00:00\n" +
+                "updated: 2025-08-01T09:30:00\n" +
+                "tags: [java, computer science]\n";
+
+        FrontMatterScanner.FrontMatter frontMatter = FrontMatterScanner.scan(header);
+
+        assertNotNull(frontMatter);
+        assertEquals("007713ce-3846-4635-9c60-bf4e89c96e70", frontMatter.id);
+        assertEquals("Say \"hi\"", frontMatter.title);
+        assertEquals(List.of("java", "computer science"), frontMatter.tags);
+        assertEquals(LocalDateTime.of(2025, 7, 31, 10, 0), frontMatter.getCreated());
+        assertEquals(LocalDateTime.of(2025, 8, 1, 9, 30), frontMatter.getUpdated());
+    }
+
+    @Test
+    void testQuotedAndAlternativeFields() {
+        String header = "title: 'It''s here'\n" +
+                "created_at: '2025-07-31T10:00:00'\n" +
+                "modified: 2025-07-31T11:00:00Z\n" +
+                "tags: a,b\n";
+
+        FrontMatterScanner.FrontMatter frontMatter = FrontMatterScanner.scan(header);
+
+        assertNotNull(frontMatter);
+        assertEquals("It's here", frontMatter.title);
+        assertEquals("2025-07-31T10:00:00", frontMatter.getCreated());
+        assertEquals(LocalDateTime.of(2025, 7, 31, 11, 0), frontMatter.getUpdated());
+        assertEquals("a,b", frontMatter.tags);
+    }
+
+    @Test
+    void testFallsBackOutsideSchema() {
+        assertNull(FrontMatterScanner.scan("title: Note\nauthor: Someone\n"));
+        assertNull(FrontMatterScanner.scan("title: Note\ntags:\n  - a\n  - b\n"));
+        assertNull(FrontMatterScanner.scan("title: 42\n"));
+        assertNull(FrontMatterScanner.scan("title: true\n"));
+        assertNull(FrontMatterScanner.scan("title: \"tab\\bescape\"\n"));
+        assertNull(FrontMatterScanner.scan("title: Note\ncreated: 2025-07-31T10:00:00+02:00\n"));
+    }
+
+    @Test
+    void testParseUsesScannerAndFallbackConsistently() {
+        YAMLParse parser = new YAMLParse();
+        String own = "---\ntitle: Same\ncreated: 2025-07-31T10:00:00Z\ntags: [x]\n---\nbody";
+        String foreign = "---\ntitle: Same\ncreated: 2025-07-31T10:00:00Z\ntags: [x]\nauthor: Someone\n---\nbody";
+
+        Note scanned = parser.parse(own);
+        Note fallback = parser.parse(foreign);
+
+        assertEquals(scanned.getTitle(), fallback.getTitle());
+        assertEquals(scanned.getTags(), fallback.getTags());
+        assertEquals(scanned.getCreatedAt(), fallback.getCreatedAt());
+        assertEquals(scanned.getContent(), fallback.getContent());
+    }
+
+    @Test
+    void testSubMillisecondTimestampsAgreeWithFallback() {
+        YAMLParse parser = new YAMLParse();
+        String own = "---\ntitle: Same\ncreated: 2025-07-31T10:00:00.123456789\ntags: [x]\n---\nbody";
+        String foreign = "---\ntitle: Same\ncreated: 2025-07-31T10:00:00.123456789\ntags: [x]\nauthor: Someone\n---\nbody";
+
+        Note scanned = parser.parse(own);
+        Note fallback = parser.parse(foreign);
+
+        assertEquals(LocalDateTime.of(2025, 7, 31, 10, 0, 0, 123_000_000), scanned.getCreatedAt());
+        assertEquals(scanned.getCreatedAt(), fallback.getCreatedAt());
+    }
+
+    @Test
+    void testTimestampsSurviveRoundTrip() {
+        YAMLParse parser = new YAMLParse();
+        LocalDateTime created = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        LocalDateTime updated = LocalDateTime.of(2024, 6, 7, 8, 9, 10);
+        Note original = new Note(UUID.randomUUID(), "Dated", "body", List.of(), created, updated);
+
+        Note parsed = parser.parse(parser.serialize(original));
+
+        assertEquals(created, parsed.getCreatedAt());
+        assertEquals(updated, parsed.getUpdatedAt());
+    }
+
+    @Test
+    void testPlainStringsAgreeWithSnakeYaml() {
+        Resolver resolver = new Resolver();
+        List<String> samples = List.of("", "yes", "Off", "oN", "~", "null", "nil", "<<", "<", "!", "&a", ".inf",
+                "-.Inf", ".nan", "-.nan", "0", "-0", "007", "08", "0_", "0b1_0", "0b", "0x_fF", "0xg", "1_000", "+12",
+                "1.5", "1.", ".5", "._", ".", "1e5", "1e", "1.5E-3", "190:20:30", "190:60", "1:2:3.5", "0:30",
+                "2025-07-31", "2025-7-31", "2025-07-31T10:00:00", "2025-7-1 1:00:00.25 Z", "2025-07-31t10:00:00+02:00",
+                "2025-07-31 10:00:00 -5", "2025-07-31T10:00", "2025-07-31T10:00:00X", "computer science", "java");
+        for (String plain : samples) {
+            assertEquals(Tag.STR.equals(resolver.resolve(NodeId.scalar, plain, true)),
+                    FrontMatterScanner.isPlainString(plain), plain);
+        }
+
+        Random random = new Random(5);
+        String[] pieces = {"0", "1", "7", "9", "5", "12", "2025", "-", "+", ".", "_", ":", "e", "E", "b", "x", "f",
+            "T", " ", "Z", "inf", "nan", "a", "07-31"};
+        for (int round = 0; round < 20000; round++) {
+            StringBuilder plain = new StringBuilder();
+            for (int i = 0, length = 1 + random.nextInt(7); i < length; i++) {
+                plain.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertEquals(Tag.STR.equals(resolver.resolve(NodeId.scalar, plain.toString(), true)),
+                    FrontMatterScanner.isPlainString(plain.toString()), plain.toString());
+        }
+    }
+}
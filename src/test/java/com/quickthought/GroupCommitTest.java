@@ -0,0 +1,116 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupCommitTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWriteReplacesFileAtomically() throws Exception {
+        GroupCommit commit = new GroupCommit(0);
+        Path file = tempDir.resolve("note.md");
+
+        commit.write(file, "first".getBytes(StandardCharsets.UTF_8));
+        commit.write(file, "second".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("second", Files.readString(file));
+        assertFalse(Files.exists(tempDir.resolve("note.md.tmp")));
+        assertEquals(2, commit.getRounds());
+    }
+
+    @Test
+    void testConcurrentWritersShareSyncs() throws Exception {
+        // A long window so every writer joins the first leader's round or the one after it
+        GroupCommit commit = new GroupCommit(TimeUnit.MILLISECONDS.toNanos(200));
+        int writers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                Path file = tempDir.resolve(UUID.randomUUID() + ".md");
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    commit.write(file, "text".getBytes(StandardCharsets.UTF_8));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(commit.getRounds() <= 2, "rounds: " + commit.getRounds());
+    }
+
+    @Test
+    void testBatchSyncsOnceOnClose() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        MarkdownNoteStore store = (MarkdownNoteStore) noteManager.getStore();
+
+        GroupCommit.Batch batch = noteManager.beginBatch();
+        try {
+            for (int i = 0; i < 50; i++) {
+                noteManager.createNote("Batched " + i, "body", List.of());
+            }
+        } finally {
+            batch.close();
+        }
+
+        assertEquals(50, noteManager.getAllNotes().size());
+        assertEquals(1, store.getSyncRounds());
+    }
+
+    @Test
+    void testOpenBatchDoesNotDeferOtherThreads() throws Exception {
+        GroupCommit commit = new GroupCommit(0);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try (GroupCommit.Batch batch = commit.begin()) {
+            commit.write(tempDir.resolve("batched.md"), "later".getBytes(StandardCharsets.UTF_8));
+            assertEquals(0, commit.getRounds());
+
+            other.submit(() -> {
+                commit.write(tempDir.resolve("durable.md"), "now".getBytes(StandardCharsets.UTF_8));
+                return null;
+            }).get();
+            // Synced before the write returned, not left for the batch
+            assertEquals(1, commit.getRounds());
+
+            Function<String, Path> write = name -> {
+                try {
+                    commit.write(tempDir.resolve(name), "later".getBytes(StandardCharsets.UTF_8));
+                    return tempDir.resolve(name);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            other.submit(() -> batch.wrap(write).apply("wrapped.md")).get();
+            assertEquals(1, commit.getRounds());
+        } finally {
+            other.shutdown();
+        }
+        assertEquals(2, commit.getRounds());
+    }
+}
@@ -0,0 +1,75 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdPrefixIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String FIRST = "abc12345-0000-0000-0000-000000000001";
+    private static final String SECOND = "abc67890-0000-0000-0000-000000000002";
+    private static final String THIRD = "def00000-0000-0000-0000-000000000003";
+
+    private IdPrefixIndex buildWith(String... fileNames) throws Exception {
+        for (String fileName : fileNames) {
+            // The index must not depend on the contents, so leave the files unparseable
+            Files.writeString(tempDir.resolve(fileName), "not a note");
+        }
+        return IdPrefixIndex.build(tempDir);
+    }
+
+    @Test
+    void testUniquePrefix() throws Exception {
+        IdPrefixIndex index = buildWith(FIRST + ".md", SECOND + ".md", THIRD + ".md.enc");
+
+        assertEquals(List.of(FIRST + ".md"), index.find("abc1", 10));
+        assertEquals(List.of(THIRD + ".md.enc"), index.find("DEF", 10));
+        assertEquals(List.of(SECOND + ".md"), index.find(SECOND, 10));
+    }
+
+    @Test
+    void testAmbiguousPrefixReturnsAllMatches() throws Exception {
+        IdPrefixIndex index = buildWith(FIRST + ".md", SECOND + ".md", THIRD + ".md");
+
+        assertEquals(List.of(FIRST + ".md", SECOND + ".md"), index.find("abc", 10));
+        assertEquals(1, index.find("abc", 1).size());
+    }
+
+    @Test
+    void testNoMatch() throws Exception {
+        IdPrefixIndex index = buildWith(FIRST + ".md");
+
+        assertTrue(index.find("fff", 10).isEmpty());
+        assertTrue(index.find(FIRST + "0", 10).isEmpty());
+    }
+
+    @Test
+    void testPlainFileWinsOverEncryptedCopy() throws Exception {
+        IdPrefixIndex index = buildWith(FIRST + ".md", FIRST + ".md.enc", "notes.txt");
+
+        assertEquals(1, index.size());
+        assertEquals(List.of(FIRST + ".md"), index.find("abc", 10));
+    }
+
+    @Test
+    void testStaleAfterDirectoryChanges() throws Exception {
+        IdPrefixIndex index = buildWith(FIRST + ".md");
+        assertTrue(index.isCurrent());
+
+        Files.writeString(tempDir.resolve(SECOND + ".md"), "new");
+        // Some file systems only keep whole seconds, so move the mtime explicitly
+        Files.setLastModifiedTime(tempDir, FileTime.from(Instant.now().plusSeconds(5)));
+
+        assertFalse(index.isCurrent());
+        assertEquals(2, IdPrefixIndex.build(tempDir).find("abc", 10).size());
+    }
+}
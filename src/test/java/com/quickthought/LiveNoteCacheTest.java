@@ -0,0 +1,105 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveNoteCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LiveNoteCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final YAMLParse parser = new YAMLParse();
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    private void startCache() {
+        cache = new LiveNoteCache(tempDir, path -> path.toString().endsWith(".md"), path -> {
+            loads.incrementAndGet();
+            try {
+                return parser.parse(Files.readString(path));
+            } catch (Exception e) {
+                return null;
+            }
+        });
+        cache.start();
+    }
+
+    private Path writeNote(String title) throws Exception {
+        Note note = new Note(title, "content of " + title, List.of());
+        Path file = tempDir.resolve(note.getId() + ".md");
+        Files.writeString(file, parser.serialize(note));
+        return file;
+    }
+
+    @Test
+    void testLoadsOnceAndServesFromMemory() throws Exception {
+        writeNote("One");
+        writeNote("Two");
+        startCache();
+
+        assertEquals(2, cache.getNotes(path -> true).size());
+        assertEquals(2, cache.getNotes(path -> true).size());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testInvalidatedFilesAreReloaded() throws Exception {
+        startCache();
+        assertTrue(cache.getNotes(path -> true).isEmpty());
+
+        Path file = writeNote("Fresh");
+        cache.invalidate(file);
+
+        Note note = cache.getNote(file);
+        assertNotNull(note);
+        assertEquals("Fresh", note.getTitle());
+    }
+
+    @Test
+    void testPicksUpExternalChanges() throws Exception {
+        Path kept = writeNote("Kept");
+        Path removed = writeNote("Removed");
+        startCache();
+        assertEquals(2, cache.getNotes(path -> true).size());
+        Note keptBefore = cache.getNote(kept);
+
+        writeNote("Added");
+        Files.delete(removed);
+
+        List<Note> notes = List.of();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            notes = cache.getNotes(path -> true);
+            if (notes.size() == 2 && notes.stream().anyMatch(n -> n.getTitle().equals("Added"))) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        assertEquals(2, notes.size());
+        assertTrue(notes.stream().anyMatch(n -> n.getTitle().equals("Kept")));
+        assertTrue(notes.stream().anyMatch(n -> n.getTitle().equals("Added")));
+        // Unchanged files are not parsed again
+        assertSame(keptBefore, cache.getNote(kept));
+    }
+
+    @Test
+    void testMissingNoteIsNull() {
+        startCache();
+        assertNull(cache.getNote(Path.of(UUID.randomUUID() + ".md")));
+    }
+}
@@ -0,0 +1,87 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoteCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Note noteOfSize(int chars) {
+        return new Note("t", "x".repeat(chars), List.of());
+    }
+
+    @Test
+    void testHitRequiresSameFileAttributes() {
+        NoteCache cache = new NoteCache(1024 * 1024);
+        Note note = noteOfSize(10);
+        cache.put(Paths.get("a.md"), note, 100, 50);
+
+        assertSame(note, cache.get(Paths.get("a.md"), 100, 50));
+        assertNull(cache.get(Paths.get("a.md"), 101, 50));
+        assertNull(cache.get(Paths.get("a.md"), 100, 50));
+
+        NoteCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedWithinBudget() {
+        // Each entry weighs 2 * 1001 chars + overhead, so only two fit
+        NoteCache cache = new NoteCache(5000);
+        cache.put(Paths.get("a.md"), noteOfSize(1000), 1, 1);
+        cache.put(Paths.get("b.md"), noteOfSize(1000), 1, 1);
+        assertNotNull(cache.get(Paths.get("a.md"), 1, 1));
+
+        cache.put(Paths.get("c.md"), noteOfSize(1000), 1, 1);
+
+        assertNotNull(cache.get(Paths.get("a.md"), 1, 1));
+        assertNull(cache.get(Paths.get("b.md"), 1, 1));
+        assertNotNull(cache.get(Paths.get("c.md"), 1, 1));
+        assertEquals(1, cache.getStats().getEvictions());
+        assertTrue(cache.getStats().getBytes() <= 5000);
+    }
+
+    @Test
+    void testOversizedNotesAreNotCached() {
+        NoteCache cache = new NoteCache(100);
+        cache.put(Paths.get("big.md"), noteOfSize(1000), 1, 1);
+
+        assertEquals(0, cache.getStats().getEntries());
+    }
+
+    @Test
+    void testNoteManagerServesRepeatedReadsFromCache() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note created = manager.createNote("Hot", "read me often", List.of());
+
+        manager.getNote(created.getId());
+        manager.getNote(created.getId());
+        assertEquals(1, manager.getCacheStats().getHits());
+
+        Path file = tempDir.resolve(created.getId() + ".md");
+        Files.writeString(file, Files.readString(file).replace("read me often", "changed on disk"));
+
+        assertEquals("changed on disk", manager.getNote(created.getId()).getContent());
+    }
+
+    @Test
+    void testDeleteInvalidates() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note created = manager.createNote("Gone", "soon", List.of());
+        manager.getNote(created.getId());
+
+        manager.deleteNote(created.getId());
+
+        assertNull(manager.getNote(created.getId()));
+        assertEquals(0, manager.getCacheStats().getEntries());
+    }
+}
@@ -0,0 +1,121 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoteCatalogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSummariesMatchCreatedNotes() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Tabs\tand, commas", "Twelve chars", List.of("java", "cli"));
+
+        List<NoteSummary> summaries = new NoteManager(tempDir.toString()).getNoteSummaries();
+
+        assertEquals(1, summaries.size());
+        NoteSummary summary = summaries.get(0);
+        assertEquals(note.getId(), summary.getId());
+        assertEquals(note.getTitle(), summary.getTitle());
+        assertEquals(List.of("java", "cli"), summary.getTags());
+        assertEquals(12, summary.getContentLength());
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(NoteCatalog.CATALOG_FILE)));
+    }
+
+    @Test
+    void testPurgeLeavesNoTextOfDeletedNotes() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note secret = manager.createNote("Secret salary plan", "numbers", List.of("private"));
+        manager.createNote("Shopping", "milk", List.of());
+        manager.getNoteSummaries();
+        manager.findNotesByTitle("Shopping", false);
+        manager.searchNotes("milk", 0, 10);
+
+        manager.deleteNote(secret.getId());
+        manager.purgeDeletedNotes();
+
+        Path sidecars = tempDir.resolve(SidecarJournal.DIRECTORY);
+        for (String file : List.of(NoteCatalog.CATALOG_FILE, TitleIndex.INDEX_FILE, SearchIndex.INDEX_FILE)) {
+            String text = Files.readString(sidecars.resolve(file));
+            assertFalse(text.contains(secret.getId().toString()), file);
+            assertFalse(text.contains("alary"), file);
+        }
+        assertEquals(1, new NoteManager(tempDir.toString()).getNoteSummaries().size());
+        assertEquals(1, manager.findNotesByTitle("Shopping", false).size());
+    }
+
+    @Test
+    void testCatalogIsServedWithoutParsing() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        manager.createNote("Cached", "body", List.of());
+
+        NoteCatalog catalog = new NoteCatalog(tempDir.toString());
+        List<NoteSummary> summaries = catalog.getSummaries(path -> {
+            throw new AssertionError("catalogued note should not be parsed: " + path);
+        });
+
+        assertEquals(1, summaries.size());
+        assertEquals("Cached", summaries.get(0).getTitle());
+    }
+
+    @Test
+    void testChangedFilesAreReparsed() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Before", "body", List.of());
+        manager.getNoteSummaries();
+
+        Path file = tempDir.resolve(note.getId() + ".md");
+        String edited = Files.readString(file).replace("Before", "After edit");
+        Files.writeString(file, edited);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+
+        List<NoteSummary> summaries = new NoteManager(tempDir.toString()).getNoteSummaries();
+        assertEquals("After edit", summaries.get(0).getTitle());
+    }
+
+    @Test
+    void testDeletedNotesDisappear() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note kept = manager.createNote("Kept", "", List.of());
+        Note deleted = manager.createNote("Deleted", "", List.of());
+        Note removedByHand = manager.createNote("Removed by hand", "", List.of());
+
+        manager.deleteNote(deleted.getId());
+        Files.delete(tempDir.resolve(removedByHand.getId() + ".md"));
+
+        List<NoteSummary> summaries = new NoteManager(tempDir.toString()).getNoteSummaries();
+        assertEquals(1, summaries.size());
+        assertEquals(kept.getId(), summaries.get(0).getId());
+    }
+
+    @Test
+    void testFileGoneSinceListingIsSkipped() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note kept = manager.createNote("Kept", "body", List.of());
+        YAMLParse parser = new YAMLParse();
+
+        NoteCatalog catalog = new NoteCatalog(tempDir.toString());
+        List<NoteSummary> summaries = catalog.getSummaries(
+                List.of(tempDir.resolve(UUID.randomUUID() + ".md"), tempDir.resolve(kept.getId() + ".md")),
+                path -> {
+                    try {
+                        return parser.parseHeader(path);
+                    } catch (IOException e) {
+                        return null;
+                    }
+                });
+
+        assertEquals(1, summaries.size());
+        assertEquals(kept.getId(), summaries.get(0).getId());
+    }
+}
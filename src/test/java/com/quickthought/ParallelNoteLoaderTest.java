@@ -0,0 +1,67 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelNoteLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResultsKeepFileNameOrder() throws Exception {
+        for (int i = 99; i >= 0; i--) {
+            Files.writeString(tempDir.resolve(String.format("%03d.md", i)), "note " + i);
+        }
+        Files.writeString(tempDir.resolve("ignored.txt"), "not a note");
+
+        List<Path> files = ParallelNoteLoader.listFiles(tempDir, path -> path.toString().endsWith(".md"));
+        List<String> loaded = ParallelNoteLoader.load(files, path -> {
+            try {
+                Thread.sleep(path.getFileName().toString().hashCode() & 3);
+                return Files.readString(path);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("note " + i);
+        }
+        assertEquals(expected, loaded);
+    }
+
+    @Test
+    void testNullResultsAreDropped() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            Files.writeString(tempDir.resolve(i + ".md"), "");
+        }
+        List<Path> files = ParallelNoteLoader.listFiles(tempDir, path -> true);
+
+        List<Path> even = ParallelNoteLoader.load(files,
+                path -> path.getFileName().toString().matches("\\d*[02468]\\.md") ? path : null);
+
+        assertEquals(20, even.size());
+        assertEquals(files.stream().filter(even::contains).collect(Collectors.toList()), even);
+    }
+
+    @Test
+    void testLoaderExceptionsReachTheCaller() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            Files.writeString(tempDir.resolve(i + ".md"), "");
+        }
+        List<Path> files = ParallelNoteLoader.listFiles(tempDir, path -> true);
+
+        assertThrows(IllegalArgumentException.class, () -> ParallelNoteLoader.load(files, path -> {
+            throw new IllegalArgumentException("Invalid note format");
+        }));
+    }
+}
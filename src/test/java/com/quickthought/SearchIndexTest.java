@@ -0,0 +1,181 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSearchFindsCreatedNotes() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note groceries = manager.createNote("Shopping", "Buy milk and eggs", List.of());
+        manager.createNote("Meeting", "Discuss the roadmap", List.of());
+
+        List<Note> results = manager.searchNotes("milk");
+
+        assertEquals(1, results.size());
+        assertEquals(groceries.getId(), results.get(0).getId());
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(SearchIndex.INDEX_FILE)));
+    }
+
+    @Test
+    void testPartialTermsAndCaseInsensitivity() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        manager.createNote("Weekly Meeting", "Notes from the sync", List.of());
+
+        assertEquals(1, manager.searchNotes("MEET").size());
+        assertEquals(1, manager.searchNotes("weekly sync").size());
+        assertEquals(0, manager.searchNotes("weekly lunch").size());
+    }
+
+    @Test
+    void testIndexIsUpdatedIncrementally() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        manager.searchNotes("anything");  // builds the index file
+
+        Note note = manager.createNote("Ideas", "Quantum teapot", List.of());
+        assertEquals(1, new NoteManager(tempDir.toString()).searchNotes("teapot").size());
+
+        manager.deleteNote(note.getId());
+        assertTrue(new NoteManager(tempDir.toString()).searchNotes("teapot").isEmpty());
+    }
+
+    @Test
+    void testNotesAddedOutsideNoteManagerTriggerRebuild() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        manager.createNote("First", "alpha", List.of());
+        manager.searchNotes("alpha");
+
+        Thread.sleep(20);
+        UUID id = UUID.randomUUID();
+        Files.writeString(tempDir.resolve(id + ".md"),
+                "---\nid: " + id + "\ntitle: \"External\"\ntags: []\n---\nbeta content");
+
+        List<Note> results = new NoteManager(tempDir.toString()).searchNotes("beta");
+        assertEquals(1, results.size());
+        assertEquals(id, results.get(0).getId());
+    }
+
+    @Test
+    void testNotesEditedInPlaceAreReindexed() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Draft", "alpha", List.of());
+        assertEquals(1, manager.searchNotes("alpha").size());
+
+        Thread.sleep(20);
+        Path file = tempDir.resolve(note.getId() + ".md");
+        Files.writeString(file, Files.readString(file).replace("alpha", "gamma"));
+        // A later write must not make the edited note look indexed
+        manager.createNote("Other", "delta", List.of());
+
+        assertTrue(manager.searchNotes("alpha").isEmpty());
+        assertEquals(1, manager.searchNotes("gamma").size());
+    }
+
+    @Test
+    void testTokenize() {
+        assertEquals(List.of("hello", "world", "42"), SearchIndex.tokenize("Hello, World! 42"));
+        assertTrue(SearchIndex.tokenize("--- ...").isEmpty());
+    }
+
+    @Test
+    void testRankedByRelevanceWithTitleBoost() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note passing = manager.createNote("Groceries", "Remember the hamlet tickets " + "filler ".repeat(50), List.of());
+        Note inTitle = manager.createNote("Hamlet notes", "Thoughts on hamlet", List.of());
+        Note inContent = manager.createNote("Reading notes", "Thoughts on hamlet", List.of());
+        manager.createNote("Unrelated", "Macbeth", List.of());
+
+        SearchPage page = manager.searchNotes("hamlet", 0, 10);
+
+        assertEquals(3, page.getTotal());
+        assertEquals(List.of(inTitle.getId(), inContent.getId(), passing.getId()),
+                page.getNotes().stream().map(Note::getId).collect(Collectors.toList()));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void testPagesComeFromTopK() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        for (int i = 1; i <= 30; i++) {
+            manager.createNote("Note " + i, "topic " + "word ".repeat(i), List.of());
+        }
+
+        SearchPage first = manager.searchNotes("topic", 0, 10);
+        SearchPage second = new NoteManager(tempDir.toString()).searchNotes("topic", 10, 10);
+        SearchPage last = manager.searchNotes("topic", 25, 10);
+
+        assertEquals(30, first.getTotal());
+        assertEquals(10, first.getNotes().size());
+        assertTrue(first.hasMore());
+        // Shorter notes score higher for the same term count
+        assertEquals("Note 1", first.getNotes().get(0).getTitle());
+        assertEquals("Note 11", second.getNotes().get(0).getTitle());
+        assertEquals(5, last.getNotes().size());
+        assertFalse(last.hasMore());
+        assertEquals(0, manager.searchNotes("topic nothing", 0, 10).getTotal());
+    }
+
+    @Test
+    void testHandNamedFilesAreSearchedLikeListed() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Copied in", "hand named walrus", List.of());
+        manager.createNote("Other", "nothing", List.of());
+        Files.move(tempDir.resolve(note.getId() + ".md"), tempDir.resolve("My note.md"));
+
+        NoteManager reopened = new NoteManager(tempDir.toString());
+        assertEquals(2, reopened.getNoteSummaries().size());
+        assertEquals(2, reopened.getAllNotes().size());
+        assertEquals(List.of(note.getId()), reopened.searchNotes("walrus", 0, 10).getNotes().stream()
+                .map(Note::getId).collect(Collectors.toList()));
+        assertEquals(1, reopened.fuzzySearchNotes("walrsu", 2, 0, 10).getTotal());
+        assertEquals(1, reopened.regexSearchNotes("wal+rus", 0, 10).getNotes().size());
+        assertEquals(1, reopened.scanNotes("hand named").size());
+        assertEquals("Copied in", reopened.getNote(note.getId()).getTitle());
+    }
+
+    @Test
+    void testIndexWithoutTermCountsIsRebuilt() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Legacy", "old index", List.of());
+        Path index = tempDir.resolve(SidecarJournal.DIRECTORY).resolve(SearchIndex.INDEX_FILE);
+        Files.createDirectories(index.getParent());
+        Files.writeString(index, "A\t" + note.getId() + "\tlegacy old index\n");
+
+        assertEquals(1, new NoteManager(tempDir.toString()).searchNotes("legacy", 0, 5).getTotal());
+        assertTrue(Files.readString(index).contains("legacy:1:0"));
+    }
+
+    @Test
+    void testFuzzySearchToleratesTypos() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note exact = manager.createNote("Hamlet", "Prince of Denmark", List.of());
+        Note typo = manager.createNote("Reading list", "hamlett and macbeth", List.of());
+        manager.createNote("Other", "Omelette recipe", List.of());
+
+        SearchPage page = manager.fuzzySearchNotes("hamlett", 2, 0, 10);
+        assertEquals(2, page.getTotal());
+        assertEquals(typo.getId(), page.getNotes().get(0).getId());
+        assertEquals(0, manager.searchNotes("hamlett denmark", 0, 10).getTotal());
+        assertEquals(List.of(exact.getId()), manager.fuzzySearchNotes("hamlett denmrk", 2, 0, 10)
+                .getNotes().stream().map(Note::getId).collect(Collectors.toList()));
+
+        // Terms of notes added later are in the dictionary, those of deleted ones are not found
+        Note later = manager.createNote("Later", "othello", List.of());
+        assertEquals(1, manager.fuzzySearchNotes("othelo", 1, 0, 10).getTotal());
+        manager.deleteNote(later.getId());
+        assertEquals(0, manager.fuzzySearchNotes("othelo", 1, 0, 10).getTotal());
+        // Short terms allow fewer edits: "xy" is two away from "of", but only one is allowed
+        assertEquals(0, manager.fuzzySearchNotes("xy", 2, 0, 10).getTotal());
+    }
+}
@@ -0,0 +1,82 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testExactScanMatchesPunctuationAndSpaces() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note release = manager.createNote("Release v1.2", "Ship it, final answer", List.of());
+        manager.createNote("Other", "ship it final answer", List.of());
+        manager.createNote("Ümlaut", "Grüße", List.of());
+
+        assertEquals(List.of(release.getId()), ids(manager.scanNotes("IT, FINAL")));
+        assertEquals(List.of(release.getId()), ids(manager.scanNotes("v1.2")));
+        assertEquals(1, manager.scanNotes("üMLAUT").size());
+        assertEquals(1, manager.searchNotes(", ").size());
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(SearchSnapshot.DATA_FILE)));
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(SearchSnapshot.OFFSETS_FILE)));
+    }
+
+    @Test
+    void testSnapshotIsReusedAndFollowsChanges() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note kept = manager.createNote("Kept", "alpha; beta", List.of());
+        Note edited = manager.createNote("Edited", "alpha; gamma", List.of());
+        Note deleted = manager.createNote("Deleted", "alpha; delta", List.of());
+        assertEquals(3, manager.scanNotes("alpha;").size());
+
+        // A fresh snapshot only reads the files that changed since
+        SearchSnapshot snapshot = new SearchSnapshot(tempDir.toString());
+        List<Path> files = List.of(tempDir.resolve(kept.getId() + ".md"), tempDir.resolve(edited.getId() + ".md"));
+        Path editedFile = tempDir.resolve(edited.getId() + ".md");
+        Files.writeString(editedFile, Files.readString(editedFile).replace("alpha; gamma", "omega"));
+        Files.setLastModifiedTime(editedFile, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Files.delete(tempDir.resolve(deleted.getId() + ".md"));
+
+        List<UUID> found = snapshot.search(new CaseInsensitiveMatcher("ALPHA;"), files, path -> {
+            assertEquals(editedFile, path, "unchanged note should not be read");
+            return manager.loadNoteFromFile(path);
+        });
+        assertEquals(List.of(kept.getId()), found);
+        assertEquals(List.of(edited.getId()),
+                snapshot.search(new CaseInsensitiveMatcher("omega"), files, manager::loadNoteFromFile));
+    }
+
+    @Test
+    void testReplacedTextIsCompactedAway() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Big", "x".repeat(100_000), List.of());
+        Path file = tempDir.resolve(note.getId() + ".md");
+        SearchSnapshot snapshot = new SearchSnapshot(tempDir.toString());
+        assertEquals(0, snapshot.search(new CaseInsensitiveMatcher("y"), List.of(file), manager::loadNoteFromFile).size());
+
+        Files.writeString(file, Files.readString(file).replace("x".repeat(100_000), "yes"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        assertEquals(1, snapshot.search(new CaseInsensitiveMatcher("y"), List.of(file), manager::loadNoteFromFile).size());
+        assertEquals(Files.size(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(SearchSnapshot.DATA_FILE)), snapshot.getDataSize());
+        assertTrue(snapshot.getDataSize() < 100);
+
+        // Reopened from the offsets, still consistent
+        SearchSnapshot reopened = new SearchSnapshot(tempDir.toString());
+        assertEquals(List.of(note.getId()),
+                reopened.search(new CaseInsensitiveMatcher("BIG"), List.of(file), path -> null));
+    }
+
+    private static List<UUID> ids(List<Note> notes) {
+        return notes.stream().map(Note::getId).collect(Collectors.toList());
+    }
+}
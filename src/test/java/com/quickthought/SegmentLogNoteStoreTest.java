@@ -0,0 +1,197 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentLogNoteStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testPurgeRemovesDeletedText() throws Exception {
+        UUID kept = UUID.randomUUID();
+        UUID secret = UUID.randomUUID();
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            store.write(kept, bytes("kept"));
+            store.write(secret, bytes("secret salary plan"));
+            store.delete(secret);
+            store.purgeDeleted();
+
+            for (Path file : segmentFiles()) {
+                assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("salary"));
+            }
+            assertArrayEquals(bytes("kept"), store.read(kept));
+            store.write(secret, bytes("again"));
+        }
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            assertArrayEquals(bytes("kept"), store.read(kept));
+            assertArrayEquals(bytes("again"), store.read(secret));
+        }
+    }
+
+    @Test
+    void testWritesSurviveReopen() throws Exception {
+        UUID kept = UUID.randomUUID();
+        UUID replaced = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            store.write(kept, bytes("kept"));
+            store.write(replaced, bytes("old"));
+            store.write(deleted, bytes("gone soon"));
+            store.write(replaced, bytes("new"));
+            assertTrue(store.delete(deleted));
+            assertFalse(store.delete(deleted));
+
+            assertArrayEquals(bytes("new"), store.read(replaced));
+            assertNull(store.read(deleted));
+        }
+
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            assertArrayEquals(bytes("kept"), store.read(kept));
+            assertArrayEquals(bytes("new"), store.read(replaced));
+            assertFalse(store.contains(deleted));
+            assertEquals(2, store.list().size());
+        }
+    }
+
+    @Test
+    void testTornRecordIsDroppedOnOpen() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            store.write(first, bytes("complete"));
+            store.write(second, bytes("cut off by a crash"));
+        }
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            assertArrayEquals(bytes("complete"), store.read(first));
+            assertFalse(store.contains(second));
+            // Appends continue after the last good record
+            store.write(second, bytes("again"));
+        }
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir)) {
+            assertArrayEquals(bytes("again"), store.read(second));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLiveNotesAndDropsDeadOnes() throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir, 512)) {
+            for (int i = 0; i < 20; i++) {
+                ids.add(UUID.randomUUID());
+            }
+            for (int round = 0; round < 5; round++) {
+                for (UUID id : ids) {
+                    store.write(id, bytes(id + " round " + round));
+                }
+            }
+            for (UUID id : ids.subList(0, 5)) {
+                store.delete(id);
+            }
+            store.compact();
+
+            // The background compactor may have run already; either way the 15 live records
+            // (under 100 bytes each) end up in a few files next to the active one
+            assertTrue(store.segmentCount() <= 6, "segments: " + store.segmentCount());
+            assertEquals(15, store.list().size());
+            for (UUID id : ids.subList(5, 20)) {
+                assertArrayEquals(bytes(id + " round 4"), store.read(id));
+            }
+        }
+
+        // Tombstones are gone from the compacted files, the deleted notes must stay deleted
+        try (SegmentLogNoteStore store = new SegmentLogNoteStore(tempDir, 512)) {
+            assertEquals(15, store.list().size());
+            for (UUID id : ids.subList(0, 5)) {
+                assertFalse(store.contains(id));
+            }
+            assertArrayEquals(bytes(ids.get(19) + " round 4"), store.read(ids.get(19)));
+        }
+    }
+
+    @Test
+    void testNoteManagerMigratesBetweenStores() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        Note note = noteManager.createNote("Migrated", "travels between stores", List.of("move"));
+        noteManager.createNote("Other", "stays too", List.of());
+
+        assertEquals(2, noteManager.migrateStore(SegmentLogNoteStore.NAME));
+        assertFalse(noteManager.hasFlatNoteFiles());
+        assertFalse(Files.exists(tempDir.resolve(note.getId() + ".md")));
+        assertEquals("travels between stores", noteManager.getNote(note.getId()).getContent());
+        Note added = noteManager.createNote("Added", "while in segments", List.of("move"));
+        noteManager.close();
+
+        // The marker makes the next session open the segment store
+        NoteManager reopened = new NoteManager(tempDir.toString());
+        assertEquals(SegmentLogNoteStore.NAME, reopened.getStore().getName());
+        assertEquals(3, reopened.getAllNotes().size());
+        assertEquals(1, reopened.searchNotes("travels").size());
+        assertEquals(2, reopened.findNotesByTags(TagIndex.Query.parse("move", null, null)).size());
+
+        assertEquals(3, reopened.migrateStore(MarkdownNoteStore.NAME));
+        assertTrue(Files.exists(tempDir.resolve(added.getId() + ".md")));
+        assertEquals("while in segments", reopened.getNote(added.getId()).getContent());
+        assertTrue(reopened.getStore().isFlat());
+        reopened.close();
+    }
+
+    @Test
+    void testHandNamedNotesMigrateByTheirFrontMatterId() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        Note note = noteManager.createNote("Groceries", "oat milk and lentils", List.of());
+        noteManager.createNote("Other", "named after its id", List.of());
+        Path handNamed = tempDir.resolve("Groceries.md");
+        Files.move(tempDir.resolve(note.getId() + ".md"), handNamed);
+
+        assertEquals(2, noteManager.migrateStore(SegmentLogNoteStore.NAME));
+        assertFalse(Files.exists(handNamed));
+        assertEquals("oat milk and lentils", noteManager.getNote(note.getId()).getContent());
+        assertEquals(1, noteManager.searchNotes("lentils").size());
+        noteManager.close();
+    }
+
+    @Test
+    void testMigrationRefusesNotesWithoutId() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        Note note = noteManager.createNote("Kept", "still in markdown", List.of());
+        Path scratch = tempDir.resolve("Scratch.md");
+        Files.write(scratch, bytes("just some text"));
+
+        Exception e = assertThrows(java.io.IOException.class,
+                () -> noteManager.migrateStore(SegmentLogNoteStore.NAME));
+        assertTrue(e.getMessage().contains("Scratch.md"));
+        assertEquals(MarkdownNoteStore.NAME, noteManager.getStore().getName());
+        assertTrue(Files.exists(tempDir.resolve(note.getId() + ".md")));
+        assertTrue(Files.exists(scratch));
+        noteManager.close();
+    }
+}
@@ -0,0 +1,127 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedNoteStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testNotesAreFannedOutByIdPrefix() throws Exception {
+        ShardedNoteStore store = new ShardedNoteStore(tempDir);
+        UUID id = UUID.fromString("abcdef12-0000-4000-8000-000000000001");
+
+        store.write(id, bytes("hello"));
+
+        Path expected = tempDir.resolve("ab").resolve("cd").resolve(id + ".md");
+        assertEquals(expected, store.fileOf(id));
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(expected));
+        assertTrue(store.contains(id));
+        assertTrue(store.delete(id));
+        assertFalse(store.contains(id));
+        assertNull(store.read(id));
+    }
+
+    @Test
+    void testListingWalksAllShardsInIdOrder() throws Exception {
+        ShardedNoteStore store = new ShardedNoteStore(tempDir);
+        List<UUID> ids = new ArrayList<>();
+        // Enough notes for the parallel walk
+        for (int i = 0; i < 60; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            store.write(id, bytes("note " + i));
+        }
+        ids.sort((a, b) -> a.toString().compareTo(b.toString()));
+
+        assertEquals(ids, store.list());
+        assertEquals(60, store.files().size());
+        store.clear();
+        assertTrue(store.list().isEmpty());
+    }
+
+    @Test
+    void testFlatLeftoversAreReadAndMovedOnWrite() throws Exception {
+        ShardedNoteStore store = new ShardedNoteStore(tempDir);
+        UUID id = UUID.randomUUID();
+        Path flat = tempDir.resolve(id + ".md");
+        Files.write(flat, bytes("flat"));
+
+        assertEquals(flat, store.fileOf(id));
+        assertEquals(List.of(id), store.list());
+
+        store.write(id, bytes("sharded"));
+
+        assertFalse(Files.exists(flat));
+        assertArrayEquals(bytes("sharded"), store.read(id));
+        assertEquals(List.of(id), store.list());
+    }
+
+    @Test
+    void testNoteManagerMigratesFlatDirectory() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            notes.add(noteManager.createNote("Note " + i, "body " + i, List.of("shard")));
+        }
+
+        assertEquals(20, noteManager.migrateStore(ShardedNoteStore.NAME));
+        assertFalse(noteManager.hasFlatNoteFiles());
+        Note first = notes.get(0);
+        assertFalse(Files.exists(tempDir.resolve(first.getId() + ".md")));
+        assertEquals("body 0", noteManager.getNote(first.getId()).getContent());
+        assertEquals(20, noteManager.getNoteSummaries().size());
+        assertTrue(noteManager.deleteNote(first.getId()));
+        assertNull(noteManager.getNote(first.getId()));
+        Note added = noteManager.createNote("Added", "while sharded", List.of("shard"));
+        noteManager.close();
+
+        NoteManager reopened = new NoteManager(tempDir.toString());
+        assertEquals(ShardedNoteStore.NAME, reopened.getStore().getName());
+        assertEquals(20, reopened.getAllNotes().size());
+        assertEquals(1, reopened.searchNotes("sharded").size());
+        assertEquals(20, reopened.findNotesByTags(TagIndex.Query.parse("shard", null, null)).size());
+
+        assertEquals(20, reopened.migrateStore(MarkdownNoteStore.NAME));
+        assertTrue(reopened.getStore().isFlat());
+        assertEquals("while sharded", reopened.getNote(added.getId()).getContent());
+        assertEquals(20, reopened.getAllNotes().size());
+        String shard = added.getId().toString().substring(0, 2);
+        assertFalse(Files.exists(tempDir.resolve(shard)));
+        reopened.close();
+    }
+
+    @Test
+    void testHandNamedFilesAreListedLikeInTheFlatStore() throws Exception {
+        ShardedNoteStore store = new ShardedNoteStore(tempDir);
+        UUID id = UUID.fromString("abcdef12-0000-4000-8000-000000000001");
+        store.write(id, bytes("note"));
+        Path inShard = tempDir.resolve("ab").resolve("cd").resolve("readme.md");
+        Files.writeString(inShard, "---\ntitle: Readme\n---\n");
+        Path flat = tempDir.resolve("Groceries.md");
+        Files.writeString(flat, "---\ntitle: Groceries\n---\nmilk");
+
+        assertEquals(List.of(id), store.list());
+        assertTrue(store.files().containsAll(List.of(inShard, flat, store.fileOf(id))));
+        assertEquals(3, store.files().size());
+
+        store.clear();
+        assertEquals(List.of(), store.list());
+        assertTrue(Files.exists(inShard));
+        assertTrue(Files.exists(flat));
+    }
+}
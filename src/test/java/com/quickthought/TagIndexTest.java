@@ -0,0 +1,97 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static NoteSummary summary(String title, String... tags) {
+        return new NoteSummary(UUID.randomUUID(), title, List.of(tags), null, null, 0, 0, 0);
+    }
+
+    private static List<String> titles(List<NoteSummary> summaries) {
+        return summaries.stream().map(NoteSummary::getTitle).sorted().collect(Collectors.toList());
+    }
+
+    private final List<NoteSummary> corpus = new ArrayList<>(List.of(
+            summary("report", "work", "urgent"),
+            summary("old report", "work", "urgent", "archived"),
+            summary("meeting", "Work"),
+            summary("birthday", "personal", "urgent"),
+            summary("untagged")));
+
+    private List<NoteSummary> query(TagIndex index, String all, String any, String none) {
+        Supplier<List<NoteSummary>> supplier = () -> corpus;
+        return index.query(TagIndex.Query.parse(all, any, none), supplier);
+    }
+
+    @Test
+    void testAndOrNot() {
+        TagIndex index = new TagIndex(tempDir.toString());
+
+        assertEquals(List.of("report"), titles(query(index, "work,urgent", null, "archived")));
+        assertEquals(List.of("meeting", "old report", "report"), titles(query(index, "WORK", null, null)));
+        assertEquals(List.of("birthday", "meeting", "old report", "report"),
+                titles(query(index, null, "work,personal", null)));
+        assertEquals(List.of("meeting", "untagged"), titles(query(index, null, null, "urgent, archived ")));
+        assertTrue(query(index, "work,missing", null, null).isEmpty());
+    }
+
+    @Test
+    void testQueryMatchesAgreesWithIndex() {
+        TagIndex index = new TagIndex(tempDir.toString());
+        TagIndex.Query query = TagIndex.Query.parse("urgent", "work,personal", "archived");
+
+        List<String> expected = corpus.stream()
+                .filter(summary -> query.matches(summary.getTags()))
+                .map(NoteSummary::getTitle)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(expected, titles(index.query(query, () -> corpus)));
+        assertEquals(List.of("birthday", "report"), expected);
+    }
+
+    @Test
+    void testIncrementalUpdatesReuseOrdinals() {
+        TagIndex index = new TagIndex(tempDir.toString());
+        assertEquals(5, query(index, null, null, null).size());
+
+        NoteSummary report = corpus.get(0);
+        index.removeNote(report.getId());
+        index.addNote(new NoteSummary(report.getId(), "report", List.of("work", "done"), null, null, 0, 0, 0));
+        index.addNote(summary("new", "urgent"));
+
+        assertEquals(6, index.size());
+        assertEquals(List.of("report"), titles(query(index, "done", null, null)));
+        assertEquals(List.of("birthday", "new", "old report"), titles(query(index, "urgent", null, null)));
+    }
+
+    @Test
+    void testNoteManagerKeepsIndexInSync() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note work = manager.createNote("Work", "a", List.of("work", "urgent"));
+        manager.createNote("Home", "b", List.of("home"));
+
+        TagIndex.Query urgent = TagIndex.Query.parse("urgent", null, null);
+        assertEquals(List.of("Work"), titles(manager.findNotesByTags(urgent)));
+
+        manager.createNote("Urgent home", "c", List.of("home", "urgent"));
+        assertEquals(List.of("Urgent home", "Work"), titles(manager.findNotesByTags(urgent)));
+
+        manager.deleteNote(work.getId());
+        assertEquals(List.of("Urgent home"), titles(manager.findNotesByTags(urgent)));
+        assertEquals(List.of("Home"), titles(manager.findNotesByTags(TagIndex.Query.parse("home", null, "urgent"))));
+    }
+}
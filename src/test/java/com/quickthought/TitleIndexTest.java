@@ -0,0 +1,121 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TitleIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static NoteSummary summary(String title) {
+        return new NoteSummary(UUID.randomUUID(), title, List.of(), null, null, 0, 0, 0);
+    }
+
+    @Test
+    void testDuplicateTitlesAreKept() {
+        NoteSummary first = summary("Groceries");
+        NoteSummary second = summary("Groceries");
+        TitleIndex index = new TitleIndex(tempDir.toString());
+
+        List<UUID> ids = index.find("Groceries", () -> List.of(first, second, summary("Other")));
+
+        assertEquals(2, ids.size());
+        assertTrue(ids.containsAll(List.of(first.getId(), second.getId())));
+        assertTrue(index.find("groceries", List::of).isEmpty());
+    }
+
+    @Test
+    void testCaseInsensitiveAndPrefixLookups() {
+        NoteSummary hamlet = summary("Hamlet");
+        NoteSummary hamburg = summary("Hamburg trip");
+        NoteSummary other = summary("Othello");
+        Supplier<List<NoteSummary>> corpus = () -> List.of(hamlet, hamburg, other);
+        TitleIndex index = new TitleIndex(tempDir.toString());
+
+        assertEquals(List.of(hamlet.getId()), index.findIgnoreCase("HAMLET", corpus));
+        assertEquals(2, index.findByPrefix("ham", 10, corpus).size());
+        assertEquals(1, index.findByPrefix("ham", 1, corpus).size());
+        assertEquals(List.of(other.getId()), index.findByPrefix("OTH", 10, corpus));
+        assertTrue(index.findByPrefix("x", 10, corpus).isEmpty());
+    }
+
+    @Test
+    void testPersistsAcrossInstances() {
+        NoteSummary note = summary("Tab\tand, comma");
+        new TitleIndex(tempDir.toString()).find("anything", () -> List.of(note));
+
+        AtomicInteger rebuilds = new AtomicInteger();
+        TitleIndex reopened = new TitleIndex(tempDir.toString());
+        List<UUID> ids = reopened.find("Tab\tand, comma", () -> {
+            rebuilds.incrementAndGet();
+            return List.of();
+        });
+
+        assertEquals(List.of(note.getId()), ids);
+        assertEquals(0, rebuilds.get());
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(TitleIndex.INDEX_FILE)));
+    }
+
+    @Test
+    void testRebuildingOneIndexKeepsTheOthersCurrent() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        manager.createNote("Plan", "foo bar", List.of());
+        manager.findNotesByTitle("Plan", false);
+        manager.searchNotes("foo", 0, 10);
+        Path sidecars = tempDir.resolve(SidecarJournal.DIRECTORY);
+        Object titles = Files.readAttributes(sidecars.resolve(TitleIndex.INDEX_FILE), BasicFileAttributes.class).fileKey();
+        Object terms = Files.readAttributes(sidecars.resolve(SearchIndex.INDEX_FILE), BasicFileAttributes.class).fileKey();
+
+        // Each first use writes a fresh sidecar file; none of that may make the others stale
+        manager.regexSearchNotes("fo+", 0, 10);
+        manager.scanNotes("foo");
+        manager.findNotesByTitle("Plan", false);
+        manager.searchNotes("foo", 0, 10);
+
+        assertEquals(titles, Files.readAttributes(sidecars.resolve(TitleIndex.INDEX_FILE), BasicFileAttributes.class).fileKey());
+        assertEquals(terms, Files.readAttributes(sidecars.resolve(SearchIndex.INDEX_FILE), BasicFileAttributes.class).fileKey());
+    }
+
+    @Test
+    void testUpdatesFollowNoteManagerWrites() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note first = manager.createNote("Plan", "a", List.of());
+        assertEquals(1, manager.findNotesByTitle("Plan", false).size());
+
+        Note second = manager.createNote("Plan", "b", List.of());
+        List<Note> both = manager.findNotesByTitle("plan", true);
+        assertEquals(2, both.size());
+        assertEquals(first.getId(), both.get(0).getId());
+
+        manager.deleteNote(first.getId());
+        List<Note> remaining = manager.findNotesByTitle("Plan", false);
+        assertEquals(1, remaining.size());
+        assertEquals(second.getId(), remaining.get(0).getId());
+        assertEquals(1, manager.findNotesByTitlePrefix("PL", 10).size());
+    }
+
+    @Test
+    void testRenamedInPlaceIsNotReturned() throws Exception {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note note = manager.createNote("Before", "body", List.of());
+        manager.findNotesByTitle("Before", false);
+
+        // Edit the title without going through NoteManager, as nano would
+        Path file = tempDir.resolve(note.getId() + ".md");
+        Files.writeString(file, Files.readString(file).replace("Before", "After"));
+
+        assertTrue(manager.findNotesByTitle("Before", false).isEmpty());
+        manager.reindexNote(note.getId());
+        assertEquals(1, manager.findNotesByTitle("After", false).size());
+    }
+}
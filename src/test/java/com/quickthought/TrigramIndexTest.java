@@ -0,0 +1,79 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRegexSearchFindsMatches() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note color = manager.createNote("Paint", "The color is red", List.of());
+        Note colour = manager.createNote("Paint, again", "The colour is blue", List.of());
+        manager.createNote("Other", "Nothing to see", List.of());
+
+        SearchPage page = manager.regexSearchNotes("colou?r", 0, 10);
+        assertEquals(Set.of(color.getId(), colour.getId()), Set.copyOf(ids(page.getNotes())));
+        assertTrue(Files.exists(tempDir.resolve(SidecarJournal.DIRECTORY).resolve(TrigramIndex.INDEX_FILE)));
+
+        assertEquals(List.of(colour.getId()), ids(manager.regexSearchNotes("(?i)COLOUR\\s+is", 0, 10).getNotes()));
+        assertEquals(0, manager.regexSearchNotes("COLOUR", 0, 10).getTotal());
+        // Nothing the index can require, every note is matched
+        assertEquals(3, manager.regexSearchNotes("^\\w", 0, 10).getTotal());
+        assertEquals(1, manager.regexSearchNotes("e$", 0, 1).getNotes().size());
+        assertThrows(PatternSyntaxException.class, () -> manager.regexSearchNotes("colo(r", 0, 10));
+    }
+
+    @Test
+    void testCandidatesNarrowedByTrigrams() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note hamlet = manager.createNote("Hamlet", "to be or not to be", List.of());
+        Note lear = manager.createNote("Lear", "nothing will come of nothing", List.of());
+        TrigramIndex index = new TrigramIndex(tempDir.toString());
+
+        assertEquals(Set.of(hamlet.getId()), index.candidates(TrigramQuery.fromRegex("not to"), manager::getAllNotes));
+        assertEquals(Set.of(hamlet.getId(), lear.getId()),
+                index.candidates(TrigramQuery.fromRegex("not"), manager::getAllNotes));
+        // Candidates only: "n.t" cannot be narrowed, "nothing (will|shall)" needs all of both literals
+        assertNull(index.candidates(TrigramQuery.fromRegex("n.t"), manager::getAllNotes));
+        assertEquals(Set.of(lear.getId()),
+                index.candidates(TrigramQuery.fromRegex("nothing (will|shall)"), manager::getAllNotes));
+        assertEquals(Set.of(), index.candidates(TrigramQuery.fromRegex("macbeth"), manager::getAllNotes));
+    }
+
+    @Test
+    void testIndexFollowsChanges() {
+        NoteManager manager = new NoteManager(tempDir.toString());
+        Note first = manager.createNote("First", "alpha", List.of());
+        assertEquals(1, manager.regexSearchNotes("alpha", 0, 10).getTotal());
+
+        Note second = manager.createNote("Second", "alphabet", List.of());
+        first.setContent("omega");
+        manager.saveNotes(List.of(first));
+        assertEquals(List.of(second.getId()), ids(manager.regexSearchNotes("alpha", 0, 10).getNotes()));
+        assertEquals(List.of(first.getId()), ids(manager.regexSearchNotes("omega", 0, 10).getNotes()));
+
+        manager.deleteNote(second.getId());
+        assertEquals(0, manager.regexSearchNotes("alpha", 0, 10).getTotal());
+
+        // Reloaded from the journal by a fresh manager
+        NoteManager reopened = new NoteManager(tempDir.toString());
+        assertEquals(List.of(first.getId()), ids(reopened.regexSearchNotes("ome[g]a", 0, 10).getNotes()));
+    }
+
+    private static List<UUID> ids(List<Note> notes) {
+        return notes.stream().map(Note::getId).collect(Collectors.toList());
+    }
+}
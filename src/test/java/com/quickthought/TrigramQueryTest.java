@@ -0,0 +1,85 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramQueryTest {
+
+    @Test
+    void testLiteralsAndAlternatives() {
+        assertEquals("(\"hel\" AND \"ell\" AND \"llo\")", TrigramQuery.fromRegex("hello").toString());
+        assertEquals(TrigramQuery.fromRegex("hello"), TrigramQuery.fromRegex("HeLLo"));
+        assertEquals("((\"col\" AND \"olo\" AND \"lor\") OR (\"col\" AND \"olo\" AND \"lou\" AND \"our\"))",
+                TrigramQuery.fromRegex("colou?r").toString());
+        assertEquals(TrigramQuery.fromRegex("cat|dog"), TrigramQuery.fromRegex("(?:c)at|d[o]g"));
+        assertEquals(TrigramQuery.fromRegex("abc"), TrigramQuery.fromRegex("\\babc\\d*"));
+        assertEquals(TrigramQuery.fromRegex("abcxyz"), TrigramQuery.fromRegex("\\Qabc\\Exyz"));
+    }
+
+    @Test
+    void testNothingRequired() {
+        for (String regex : List.of("a.*b", "ab", "x|hello", "(abc)?", "[a-z]+", "(a)\\1", "(?x) hello", ".")) {
+            assertEquals(TrigramQuery.ALL, TrigramQuery.fromRegex(regex), regex);
+        }
+        // Required parts around an unknown middle are kept
+        assertEquals(TrigramQuery.and(List.of(TrigramQuery.of("start"), TrigramQuery.of("end"))),
+                TrigramQuery.fromRegex("start.*end"));
+    }
+
+    @Test
+    void testEveryMatchSatisfiesTheQuery() {
+        Random random = new Random(11);
+        String[] pieces = {"a", "b", "c", "A", "ab", "abc", "bca", ".", "[ab]", "[^c]", "\\w", "?", "*", "+",
+            "{2}", "{1,3}", "|", "(", ")", "(?:", "(?i)", "\\d", "x", "\\.", "^", "$"};
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0, length = 1 + random.nextInt(8); i < length; i++) {
+                regex.append(pieces[random.nextInt(pieces.length)]);
+            }
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex.toString());
+            } catch (RuntimeException e) {
+                continue;
+            }
+            TrigramQuery query = TrigramQuery.fromRegex(regex.toString());
+            for (int t = 0; t < 20; t++) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0, length = random.nextInt(12); i < length; i++) {
+                    text.append("abcAB.x1"
+                            .charAt(random.nextInt(8)));
+                }
+                if (pattern.matcher(text).find()) {
+                    assertTrue(satisfies(query, trigrams(text.toString())), regex + " on " + text);
+                }
+            }
+        }
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(TrigramQuery.pack(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)));
+        }
+        return trigrams;
+    }
+
+    private static boolean satisfies(TrigramQuery query, Set<Long> trigrams) {
+        switch (query.op) {
+            case TRIGRAM:
+                return trigrams.contains(query.trigram);
+            case AND:
+                return query.operands.stream().allMatch(operand -> satisfies(operand, trigrams));
+            case OR:
+                return query.operands.stream().anyMatch(operand -> satisfies(operand, trigrams));
+            default:
+                return true;
+        }
+    }
+}
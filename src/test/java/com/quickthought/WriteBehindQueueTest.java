@@ -0,0 +1,127 @@
+package com.quickthought;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindQueueTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testQueuedNotesAreReadableAndWrittenOnClose() throws Exception {
+        NoteManager noteManager = new NoteManager(tempDir.toString());
+        noteManager.enableWriteBehind(8);
+
+        List<Note> created = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Note note = noteManager.createNote("Queued " + i, "body " + i, List.of("queued"));
+            created.add(note);
+            // Read-your-writes, whether or not the writer got to it yet
+            assertEquals("body " + i, noteManager.getNote(note.getId()).getContent());
+        }
+
+        assertEquals(100, noteManager.getAllNotes().size());
+        assertEquals(1, noteManager.searchNotes("body 42").size());
+        assertEquals(100, noteManager.findNotesByTags(TagIndex.Query.parse("queued", null, null)).size());
+
+        Note last = noteManager.createNote("Last", "written on close", List.of());
+        noteManager.close();
+        assertTrue(Files.exists(tempDir.resolve(last.getId() + ".md")));
+        assertEquals(101, new NoteManager(tempDir.toString()).getAllNotes().size());
+    }
+
+    @Test
+    void testFullQueueBlocksUntilWriterCatchesUp() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Note> written = new CopyOnWriteArrayList<>();
+        WriteBehindQueue queue = new WriteBehindQueue(2, notes -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAll(notes);
+            return Map.of();
+        });
+
+        // One note held by the stalled writer, two fill the queue, the fourth has to wait
+        queue.submit(new Note("Note 0", "", List.of()));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        queue.submit(new Note("Note 1", "", List.of()));
+        queue.submit(new Note("Note 2", "", List.of()));
+        Note blocked = new Note("Blocked", "", List.of());
+        CompletableFuture<Void> submit = CompletableFuture.runAsync(() -> queue.submit(blocked));
+        Thread.sleep(100);
+        assertFalse(submit.isDone());
+        assertSame(blocked, queue.getPending(blocked.getId()));
+
+        release.countDown();
+        submit.get(5, TimeUnit.SECONDS);
+        queue.close();
+
+        assertEquals(4, written.size());
+        assertEquals(0, queue.size());
+        assertNull(queue.getPending(blocked.getId()));
+        assertThrows(IllegalStateException.class, () -> queue.submit(new Note("Late", "", List.of())));
+    }
+
+    @Test
+    void testFailedNotesAreRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Note> written = new CopyOnWriteArrayList<>();
+        WriteBehindQueue queue = new WriteBehindQueue(4, notes -> {
+            if (attempts.incrementAndGet() == 1) {
+                return Map.of(notes.get(0).getId(), "disk full");
+            }
+            written.addAll(notes);
+            return Map.of();
+        });
+
+        Note note = new Note("Retried", "", List.of());
+        queue.submit(note);
+        queue.flush();
+        // Not written yet, but not dropped either
+        assertSame(note, queue.getPending(note.getId()));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        queue.close();
+        assertEquals(List.of(note), written);
+        assertNull(queue.getPending(note.getId()));
+    }
+
+    @Test
+    void testCloseReportsNotesThatCannotBeWritten() {
+        Note note = new Note("Lost", "", List.of());
+        WriteBehindQueue queue = new WriteBehindQueue(4, notes -> {
+            Map<UUID, String> failures = new HashMap<>();
+            notes.forEach(failed -> failures.put(failed.getId(), "read-only"));
+            return failures;
+        });
+
+        queue.submit(note);
+        IOException error = assertThrows(IOException.class, queue::close);
+        assertTrue(error.getMessage().contains(note.getId().toString()));
+        assertSame(note, queue.getPending(note.getId()));
+    }
+}
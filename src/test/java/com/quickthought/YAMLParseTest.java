@@ -1,6 +1,10 @@
 package com.quickthought;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -26,4 +30,65 @@ public class YAMLParseTest {
         assertEquals(original.getContent(), parsed.getContent());
         assertEquals(original.getTags(), parsed.getTags());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseHeaderMatchesFullParse(@TempDir Path tempDir) throws Exception {
+        YAMLParse handler = new YAMLParse();
+        Note original = new Note(UUID.randomUUID(), "Header Only", "Body that is never read.",
+                List.of("fast"), LocalDateTime.now(), LocalDateTime.now());
+        Path file = tempDir.resolve(original.getId() + ".md");
+        Files.writeString(file, handler.serialize(original));
+
+        NoteSummary summary = handler.parseHeader(file);
+
+        assertEquals(original.getId(), summary.getId());
+        assertEquals(original.getTitle(), summary.getTitle());
+        assertEquals(original.getTags(), summary.getTags());
+        assertEquals(original.getContent().length(), summary.getContentLength());
+    }
+
+    @Test
+    void testParseHeaderMeasuresBodyLikeFullParse(@TempDir Path tempDir) throws Exception {
+        YAMLParse handler = new YAMLParse();
+        Path file = tempDir.resolve("hand-written.md");
+        String padding = " \n".repeat(300);
+        Files.writeString(file, "---\ntitle: Padded\n---  \n\n" + padding + "Grüße, 世界 \uD83D\uDE00\n" + padding);
+
+        Note parsed = handler.parse(Files.readString(file));
+        NoteSummary summary = handler.parseHeader(file);
+
+        assertEquals(parsed.getContent().length(), summary.getContentLength());
+        assertEquals(NoteSummary.of(parsed, 0, 0).getContentLength(), summary.getContentLength());
+        assertEquals(12, summary.getContentLength());
+    }
+
+    @Test
+    void testParseHeaderOfLargeNote() throws Exception {
+        NoteSummary summary = new YAMLParse().parseHeader(Paths.get("test-notes", "shakespeare-hamlet.md"));
+
+        assertEquals("Players' Meeting - The Danish Tragedy Project", summary.getTitle());
+        assertEquals(List.of("plays", "tragedy", "ghosts", "Denmark", "revenge"), summary.getTags());
+    }
+
+    @Test
+    void testParseHeaderRejectsMissingDelimiter(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("broken.md");
+        Files.writeString(file, "---\ntitle: Never closed\nbody");
+
+        assertThrows(IllegalArgumentException.class, () -> new YAMLParse().parseHeader(file));
+    }
+
+    @Test
+    void testFrontMatterLength() {
+        byte[] note = "\n---\ntitle: T\n---\nbody".getBytes();
+        assertEquals(18, YAMLParse.frontMatterLength(note, note.length, true));
+
+        byte[] headerOnly = "---\ntitle: T\n---".getBytes();
+        assertEquals(headerOnly.length, YAMLParse.frontMatterLength(headerOnly, headerOnly.length, true));
+        // The closing line might continue past the bytes read so far
+        assertEquals(-1, YAMLParse.frontMatterLength(headerOnly, headerOnly.length, false));
+
+        byte[] noHeader = "text\n---\n".getBytes();
+        assertEquals(-1, YAMLParse.frontMatterLength(noHeader, noHeader.length, true));
+    }
+}